@@ -0,0 +1,301 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders a fixed corpus of reference scenes end to end on 1 to N worker
+ * threads, and reports how each one scales
+ * <p>
+ * For every scene and thread count the best of several renders is reported
+ * as megapixels and iterations per second, along with the speedup and
+ * parallel efficiency over one thread and the peak heap in use. Thread counts
+ * are the powers of two up to N, and N itself.
+ * <p>
+ * Every render is hashed, and the hash has to match the golden hash of its
+ * scene, whatever the thread count. A baseline of this machine's throughput
+ * can also be kept, which renders may not fall too far below. Any mismatch
+ * or slowdown fails the run with a nonzero exit status
+ */
+public final class Benchmark
+{
+	/** Width of every scene, which is rendered at 16:9 */
+	private static final int WIDTH = 960;
+	private static final int HEIGHT = WIDTH*9/16;
+	private static final String DEFAULT_GOLDEN = "benchmark-golden.properties";
+	/** Fraction of its baseline throughput that a render may lose before it fails */
+	private static final double DEFAULT_TOLERANCE = 0.15;
+
+	private static final Scene[] SCENES = {
+		new Scene("default", "-0.75", "0", 0, 2, 85),
+		new Scene("seahorse", "-0.7436438870371587", "0.1318259042053119", 10, 2, 1000),
+		new Scene("deep", "-0.743643887037158704752191506114774", "0.131825904205311970493132056385139", 44, 2, 3000),
+		new Scene("interior", "-0.15", "0", 2, 2, 2000),
+		new Scene("fractional", "0", "0", 0, 2.5, 200),
+	};
+
+	/** One of the reference views, given as it would be on the command line */
+	private static final class Scene
+	{
+		final String name;
+		final View view;
+		final Palette palette;
+
+		Scene(String name, String re, String im, double zoomMag, double exponent, int maxIteration)
+		{
+			this.name = name;
+			view = new View(DDComplex.parse(re, im), Math.pow(2, zoomMag), WIDTH, HEIGHT, exponent, 2, maxIteration);
+			palette = new Palette(1f, 0f, maxIteration);
+		}
+	}
+
+	/** The best of the renders of a scene at one thread count */
+	private static final class Run
+	{
+		long nanos = Long.MAX_VALUE;
+		long iterations, peakHeap;
+		String hash;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int repeats = 3;
+		double tolerance = DEFAULT_TOLERANCE;
+		File golden = new File(DEFAULT_GOLDEN), baseline = null;
+		boolean update = false;
+
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "-t":
+				maxThreads = Integer.parseInt(value(args, ++i));
+				if(maxThreads <= 0)
+					throw new IllegalArgumentException("Invalid Thread Count: " + maxThreads);
+				break;
+			case "-r":
+				repeats = Integer.parseInt(value(args, ++i));
+				if(repeats <= 0)
+					throw new IllegalArgumentException("Invalid Repeat Count: " + repeats);
+				break;
+			case "-g":
+				golden = new File(value(args, ++i));
+				break;
+			case "-b":
+				baseline = new File(value(args, ++i));
+				break;
+			case "-tol":
+				tolerance = Double.parseDouble(value(args, ++i))/100;
+				if(!(tolerance >= 0 && tolerance < 1))
+					throw new IllegalArgumentException("Invalid Tolerance: " + args[i]);
+				break;
+			case "-u":
+				update = true;
+				break;
+			default:
+				System.out.println("Usage: Benchmark [-t maxThreads] [-r repeats] [-g goldenFile] [-b baselineFile] [-tol percent] [-u]" + System.lineSeparator()
+						+ "\t-t  \tThe most worker threads to render on, by default one per processor" + System.lineSeparator()
+						+ "\t-r  \tThe number of renders to take the best of, by default 3" + System.lineSeparator()
+						+ "\t-g  \tThe file of golden image hashes, by default " + DEFAULT_GOLDEN + System.lineSeparator()
+						+ "\t-b  \tThe file of this machine's throughput, which is recorded if it does not exist" + System.lineSeparator()
+						+ "\t-tol\tThe percentage of its baseline throughput a render may lose, by default 15" + System.lineSeparator()
+						+ "\t-u  \tRecord the hashes and throughput of this run instead of checking them");
+				return;
+			}
+		}
+
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for(int t = 1; t < maxThreads; t *= 2)
+			threadCounts.add(t);
+		threadCounts.add(maxThreads);
+
+		Properties hashes = load(golden, update);
+		Properties throughput = baseline == null ? null : load(baseline, true);
+		boolean recordBaseline = throughput != null && (update || throughput.isEmpty());
+		List<String> failures = new ArrayList<String>();
+
+		System.out.println("Warming Up...");
+		render(SCENES[0], maxThreads);
+
+		System.out.println(String.format("%-12s %7s %10s %8s %9s %8s %10s %10s",
+				"Scene", "Threads", "Time (ms)", "Mpix/s", "Giter/s", "Speedup", "Efficiency", "Heap (MB)"));
+		for(Scene scene : SCENES)
+		{
+			Run single = null;
+			for(int threads : threadCounts)
+			{
+				Run run = new Run();
+				for(int r = 0; r < repeats; r++)
+				{
+					Run attempt = render(scene, threads);
+					if(run.hash != null && !run.hash.equals(attempt.hash))
+						failures.add(scene.name + " differs between renders on " + threads + " threads");
+					if(attempt.nanos < run.nanos)
+						run.nanos = attempt.nanos;
+					run.hash = attempt.hash;
+					run.iterations = attempt.iterations;
+					run.peakHeap = Math.max(run.peakHeap, attempt.peakHeap);
+				}
+				if(single == null)
+					single = run;
+
+				double seconds = run.nanos/1e9;
+				double mpps = (double)WIDTH*HEIGHT/seconds/1e6;
+				double speedup = (double)single.nanos/run.nanos;
+				System.out.println(String.format("%-12s %7d %10.1f %8.2f %9.3f %8.2f %9.0f%% %10.1f",
+						scene.name, threads, run.nanos/1e6, mpps, run.iterations/seconds/1e9,
+						speedup, 100*speedup/threads, run.peakHeap/1048576.0));
+
+				String hashKey = scene.name + ".hash";
+				if(update)
+					hashes.setProperty(hashKey, run.hash);
+				else if(hashes.getProperty(hashKey) == null)
+					failures.add(scene.name + " has no golden hash, record one with -u");
+				else if(!hashes.getProperty(hashKey).equals(run.hash))
+					failures.add(scene.name + " on " + threads + " threads does not match its golden hash: " + run.hash);
+
+				if(throughput != null)
+				{
+					String rateKey = scene.name + "." + threads + ".mpps";
+					if(recordBaseline)
+						throughput.setProperty(rateKey, String.valueOf(mpps));
+					else if(throughput.getProperty(rateKey) != null)
+					{
+						double expected = Double.parseDouble(throughput.getProperty(rateKey));
+						if(mpps < expected*(1 - tolerance))
+							failures.add(String.format("%s on %d threads ran at %.2f Mpix/s, below its baseline of %.2f",
+									scene.name, threads, mpps, expected));
+					}
+				}
+			}
+		}
+
+		if(update)
+			store(hashes, golden, "Golden image hashes of the benchmark scenes");
+		if(recordBaseline)
+			store(throughput, baseline, "Benchmark throughput of " + System.getProperty("os.arch")
+					+ " with " + Runtime.getRuntime().availableProcessors() + " processors");
+
+		if(failures.isEmpty())
+		{
+			System.out.println("PASS");
+			return;
+		}
+		for(String f : failures)
+			System.out.println("FAIL: " + f);
+		System.exit(1);
+	}
+
+	private static String value(String[] args, int i)
+	{
+		if(i >= args.length)
+			throw new IllegalArgumentException("Missing value for " + args[i-1]);
+		return args[i];
+	}
+
+	/**
+	 * Renders a scene on a new engine with the given number of workers
+	 *
+	 * @return	The time, iteration count, peak heap and hash of the render
+	 */
+	private static Run render(Scene scene, int threads) throws Exception
+	{
+		final int maxIteration = scene.view.getMaxIteration();
+		final LongAdder iterations = new LongAdder();
+		TileListener counter = new TileListener() {
+			@Override
+			public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+			{
+				long sum = 0;
+				for(int i = 0; i < tile.getArea(); i++)
+					sum += Math.min(Math.max((int)smooth[i], 0), maxIteration);
+				iterations.add(sum);
+			}
+		};
+
+		RenderEngine engine = new RenderEngine(threads);
+		try {
+			System.gc();
+			List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+			for(MemoryPoolMXBean pool : pools)
+				pool.resetPeakUsage();
+
+			long start = System.nanoTime();
+			BufferedImage img = engine.submit(new RenderRequest(Formula.MANDELBROT, scene.view, scene.palette), counter).get();
+			Run run = new Run();
+			run.nanos = System.nanoTime() - start;
+
+			for(MemoryPoolMXBean pool : pools)
+				if(pool.getType() == MemoryType.HEAP)
+					run.peakHeap += pool.getPeakUsage().getUsed();
+			run.iterations = iterations.sum();
+			run.hash = hash(img);
+			return run;
+		}finally
+		{
+			engine.shutdown();
+		}
+	}
+
+	/** @return	The SHA-256 of the pixels of an image, in hexadecimal */
+	private static String hash(BufferedImage img) throws NoSuchAlgorithmException
+	{
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		int[] row = new int[img.getWidth()];
+		byte[] bytes = new byte[4*row.length];
+		for(int y = 0; y < img.getHeight(); y++)
+		{
+			img.getRGB(0, y, row.length, 1, row, 0, row.length);
+			for(int x = 0; x < row.length; x++)
+			{
+				bytes[4*x] = (byte)(row[x] >>> 24);
+				bytes[4*x + 1] = (byte)(row[x] >>> 16);
+				bytes[4*x + 2] = (byte)(row[x] >>> 8);
+				bytes[4*x + 3] = (byte)row[x];
+			}
+			digest.update(bytes);
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	private static Properties load(File file, boolean mayBeMissing) throws IOException
+	{
+		Properties props = new Properties();
+		if(!file.exists())
+		{
+			if(mayBeMissing)
+				return props;
+			throw new IOException("No golden hashes at " + file.getAbsolutePath() + ", record them with -u");
+		}
+		try(InputStream in = new FileInputStream(file))
+		{
+			props.load(in);
+		}
+		return props;
+	}
+
+	private static void store(Properties props, File file, String comment) throws IOException
+	{
+		try(OutputStream out = new FileOutputStream(file))
+		{
+			props.store(out, comment);
+		}
+		System.out.println("Recorded " + file.getAbsolutePath());
+	}
+}
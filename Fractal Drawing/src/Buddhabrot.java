@@ -0,0 +1,436 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Renders the orbit density of <i>z</i>&nbsp;=&nbsp;<i>z</i><sup>exp</sup>&nbsp;+&nbsp;<i>c</i>,
+ * starting from <i>z</i>&nbsp;=&nbsp;0: the Buddhabrot, or with one iteration
+ * limit per color channel, the Nebulabrot
+ * <p>
+ * Points <i>c</i> are drawn at random, and every orbit that escapes is traced
+ * again and counted into each pixel of the view it passes through. Each
+ * thread counts into its own primitive buffers, so the scattered writes never
+ * contend, and the buffers are only summed as the image is tone mapped. The
+ * rare counts that could overflow those buffers are moved into one buffer of
+ * longs that every thread shares, a stripe of pixels at a time.
+ * Samples are drawn in fixed batches that each have their own seed, so the
+ * result does not depend on the number of threads.
+ * <p>
+ * Points are importance sampled from a grid of escape times over the disc
+ * that orbits can start in. Cells that the set covers, along with their
+ * neighbours, are never drawn from since their points do not escape, and
+ * cells on the boundary of the set, whose orbits are the long ones, are drawn
+ * more often than those far outside. An orbit counts for less the more often
+ * its cell is drawn, so the density stays unbiased
+ */
+public final class Buddhabrot
+{
+	/** Samples in each batch, which is drawn from one seed */
+	private static final int BATCH = 1 << 14;
+	/** Cells along each side of the importance grid */
+	private static final int GRID = 512;
+	/** How much more often cells on the boundary are drawn than cells that escape quickly */
+	private static final int BOUNDARY = 16;
+	/** How much more often cells that escape slowly are drawn than cells that escape quickly */
+	private static final int SLOW = 4;
+	/** Number of stripes of pixels that the shared counts are locked by */
+	private static final int STRIPES = 64;
+
+	private final View view;
+	private final int[] limits;
+	private final long samples, seed;
+	private final AtomicLong nextBatch = new AtomicLong();
+	/** Set when the render is interrupted, to stop the workers within a sample */
+	private volatile boolean stopped;
+	/** The locks of the stripes of {@link #spilled} */
+	private final Object[] stripes = new Object[STRIPES];
+	/** The counts moved out of the threads' buffers, created by the first spill. Guarded by this */
+	private long[][] spilled;
+
+	/**
+	 * Creates a density render of a view, whose exponent and bailout are those
+	 * of the equation, and whose maximum iteration is the highest limit
+	 *
+	 * @param view		The view to count orbits into
+	 * @param samples	The number of points to draw
+	 * @param limits	The iteration limit of each channel, one for a gray image or
+	 * 					three for red, green and blue. An orbit is counted in every
+	 * 					channel whose limit is at least its escape time
+	 * @param seed		The seed of the random points
+	 * @throws IllegalArgumentException If the sample count is not positive, or the limits are invalid
+	 */
+	public Buddhabrot(View view, long samples, int[] limits, long seed)
+	{
+		if(samples <= 0)
+			throw new IllegalArgumentException("Invalid Sample Count: " + samples);
+		if(limits.length != 1 && limits.length != 3)
+			throw new IllegalArgumentException("Need one or three iteration limits, not " + limits.length);
+		for(int l : limits)
+			if(l <= 0 || l > view.getMaxIteration())
+				throw new IllegalArgumentException("Invalid Iteration Limit: " + l);
+
+		this.view = view;
+		this.limits = limits.clone();
+		this.samples = samples;
+		this.seed = seed;
+		for(int s = 0; s < STRIPES; s++)
+			stripes[s] = new Object();
+	}
+
+	/**
+	 * Draws every sample on the given number of threads, and tone maps the
+	 * counts logarithmically into an image. Fewer threads are used if their
+	 * buffers, along with the shared buffer that their counts spill into,
+	 * would not fit in half of the heap
+	 *
+	 * @param threads	The number of threads to draw samples on
+	 * @return			The density image
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public BufferedImage render(int threads) throws InterruptedException
+	{
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid Thread Count: " + threads);
+		long pixels = (long)limits.length*view.getWidth()*view.getHeight();
+		threads = (int)Math.max(1, Math.min(threads, (Runtime.getRuntime().maxMemory()/2 - 8*pixels)/(4*pixels)));
+
+		final Sampler sampler = new Sampler(importance());
+		final Counter[] counters = new Counter[threads];
+		Thread[] workers = new Thread[threads];
+		for(int i = 0; i < threads; i++)
+		{
+			final Counter counter = counters[i] = new Counter(i);
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					counter.run(sampler);
+				}
+			}, "Density Worker " + (i+1));
+			workers[i].start();
+		}
+		try {
+			for(Thread w : workers)
+				w.join();
+		}catch(InterruptedException e)
+		{
+			// Wait for the workers to stop, so that none of them outlives the render
+			stopped = true;
+			for(Thread w : workers)
+				for(;;)
+				{
+					try {
+						w.join();
+						break;
+					}catch(InterruptedException again)
+					{
+					}
+				}
+			throw e;
+		}
+		return toneMap(counters);
+	}
+
+	/**
+	 * Evaluates the escape time at every corner of the importance grid, in
+	 * parallel by rows, with {@code maxIteration} marking corners that stay bounded
+	 */
+	private int[] importance()
+	{
+		final double bail = view.getBailout();
+		final int maxIteration = view.getMaxIteration();
+		final int[] corners = new int[(GRID + 1)*(GRID + 1)];
+		IntStream.rangeClosed(0, GRID).parallel().forEach(j -> {
+			double[] orbit = new double[0];
+			double ci = bail - 2*bail*j/GRID;
+			for(int i = 0; i <= GRID; i++)
+			{
+				int n = trace(-bail + 2*bail*i/GRID, ci, orbit, false);
+				corners[j*(GRID + 1) + i] = n < 0 ? maxIteration : n;
+			}
+		});
+		return corners;
+	}
+
+	/**
+	 * Iterates the orbit of a point, storing every point of it in {@code orbit}
+	 * if {@code record} is set
+	 *
+	 * @return	The number of iterations the orbit took to escape, or -1 if it stays bounded
+	 */
+	private int trace(double cr, double ci, double[] orbit, boolean record)
+	{
+		final double p = view.getExponent(), bail2 = view.getBailout()*view.getBailout();
+		final int maxIteration = view.getMaxIteration();
+		final int n = Formula.integerExponent(p);
+
+		if(n == 2)
+		{
+			// Points in the main cardioid and the period two bulb never escape
+			double q = (cr - 0.25)*(cr - 0.25) + ci*ci;
+			if(q*(q + cr - 0.25) <= 0.25*ci*ci || (cr + 1)*(cr + 1) + ci*ci <= 0.0625)
+				return -1;
+		}
+
+		double zr = 0.0, zi = 0.0, t, pr, pi, mag, th;
+		int iterations = 0;
+		for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+		{
+			if(n == 2)
+			{
+				t = zr*zr - zi*zi + cr;
+				zi = 2.0*zr*zi + ci;
+				zr = t;
+			}else if(n > 2)
+			{
+				pr = zr;
+				pi = zi;
+				for(int k = 1; k < n; k++)
+				{
+					t = pr*zr - pi*zi;
+					pi = pr*zi + pi*zr;
+					pr = t;
+				}
+				zr = pr + cr;
+				zi = pi + ci;
+			}else if(zr == 0.0 && zi == 0.0)
+			{
+				zr = cr;
+				zi = ci;
+			}else
+			{
+				mag = Math.exp(p*0.5*Math.log(zr*zr + zi*zi));
+				th = p*Math.atan2(zi, zr);
+				t = mag*Math.cos(th);
+				zi = mag*Math.sin(th);
+				zr = (t != t ? 0.0 : t) + cr;
+				zi = (zi != zi ? 0.0 : zi) + ci;
+			}
+			if(record)
+			{
+				orbit[2*iterations] = zr;
+				orbit[2*iterations + 1] = zi;
+			}
+		}
+		return zr*zr + zi*zi < bail2 ? -1 : iterations;
+	}
+
+	/** Sums the buffers of every thread, and maps the sums onto a logarithmic scale per channel */
+	private BufferedImage toneMap(final Counter[] counters)
+	{
+		final int w = view.getWidth(), h = view.getHeight();
+		final int channels = limits.length;
+
+		final long[] max = new long[channels];
+		for(int c = 0; c < channels; c++)
+		{
+			final int ch = c;
+			max[c] = IntStream.range(0, h).parallel().mapToLong(y -> {
+				long m = 0;
+				for(int i = y*w; i < (y + 1)*w; i++)
+					m = Math.max(m, sum(counters, ch, i));
+				return m;
+			}).max().getAsLong();
+		}
+
+		final double[] scale = new double[channels];
+		for(int c = 0; c < channels; c++)
+			scale[c] = max[c] == 0 ? 0.0 : 255.0/Math.log1p(max[c]);
+
+		final BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		IntStream.range(0, h).parallel().forEach(y -> {
+			int[] row = new int[w];
+			int[] v = new int[3];
+			for(int x = 0; x < w; x++)
+			{
+				for(int c = 0; c < channels; c++)
+					v[c] = (int)Math.round(Math.log1p(sum(counters, c, y*w + x))*scale[c]);
+				if(channels == 1)
+					v[1] = v[2] = v[0];
+				row[x] = 0xFF000000 | v[0] << 16 | v[1] << 8 | v[2];
+			}
+			img.getRaster().setDataElements(0, y, w, 1, row);
+		});
+		return img;
+	}
+
+	/** Sums a count over every thread, once they have all finished */
+	private long sum(Counter[] counters, int channel, int i)
+	{
+		long s = spilled == null ? 0 : spilled[channel][i];
+		for(Counter c : counters)
+			s += c.counts[channel][i];
+		return s;
+	}
+
+	/** Gives the shared counts, creating them on the first spill */
+	private synchronized long[][] spilled()
+	{
+		if(spilled == null)
+			spilled = new long[limits.length][view.getWidth()*view.getHeight()];
+		return spilled;
+	}
+
+	/**
+	 * Draws starting points from the cells of the importance grid, in
+	 * proportion to their weights
+	 */
+	private final class Sampler
+	{
+		private final int[] cells;
+		private final int[] weights;
+		private final long[] cumulative;
+
+		Sampler(int[] corners)
+		{
+			final int maxIteration = view.getMaxIteration();
+			final int slow = Math.max(8, maxIteration/64);
+			int[] cells = new int[GRID*GRID];
+			int[] weights = new int[GRID*GRID];
+			long[] cumulative = new long[GRID*GRID];
+			int count = 0;
+			long total = 0;
+
+			for(int j = 0; j < GRID; j++)
+				for(int i = 0; i < GRID; i++)
+				{
+					// The corners of this cell and of its neighbours
+					int bounded = 0, escaped = 0, longest = 0, e;
+					for(int b = Math.max(0, j - 1); b <= Math.min(GRID, j + 2); b++)
+						for(int a = Math.max(0, i - 1); a <= Math.min(GRID, i + 2); a++)
+						{
+							e = corners[b*(GRID + 1) + a];
+							if(e >= maxIteration)
+								bounded++;
+							else
+							{
+								escaped++;
+								longest = Math.max(longest, e);
+							}
+						}
+					if(escaped == 0)
+						continue;
+
+					int weight = bounded > 0 ? BOUNDARY : longest >= slow ? SLOW : 1;
+					total += weight;
+					cells[count] = j*GRID + i;
+					weights[count] = weight;
+					cumulative[count] = total;
+					count++;
+				}
+
+			this.cells = Arrays.copyOf(cells, count);
+			this.weights = Arrays.copyOf(weights, count);
+			this.cumulative = Arrays.copyOf(cumulative, count);
+		}
+
+		/**
+		 * Draws a point into {@code c}
+		 *
+		 * @return	How many times the point counts, which is inverse to the weight of its cell
+		 */
+		int draw(SplittableRandom random, double[] c)
+		{
+			long r = random.nextLong(cumulative[cumulative.length - 1]);
+			int lo = 0, hi = cumulative.length - 1, mid;
+			while(lo < hi)
+			{
+				mid = (lo + hi) >>> 1;
+				if(cumulative[mid] > r)
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+
+			double bail = view.getBailout(), size = 2*bail/GRID;
+			int cell = cells[lo];
+			c[0] = -bail + (cell % GRID + random.nextDouble())*size;
+			c[1] = bail - (cell / GRID + random.nextDouble())*size;
+			return BOUNDARY/weights[lo];
+		}
+	}
+
+	/**
+	 * The counts of one thread. Counts are kept in ints, and are moved into
+	 * the shared longs whenever another orbit could overflow them
+	 */
+	private final class Counter
+	{
+		private final int[][] counts;
+		/** An upper bound on every count, since the last spill */
+		private long added;
+		/** The stripe this counter starts its spills from, so that threads that spill together rarely meet */
+		private final int firstStripe;
+
+		Counter(int index)
+		{
+			counts = new int[limits.length][view.getWidth()*view.getHeight()];
+			firstStripe = index % STRIPES;
+		}
+
+		void run(Sampler sampler)
+		{
+			final int w = view.getWidth(), h = view.getHeight();
+			final double xMin = view.getXMin(), yMin = view.getYMin();
+			final int cropX = view.getCropX(), cropY = view.getCropY();
+			final double xInv = 1.0/view.getXScale(), yInv = 1.0/view.getYScale();
+			final long batches = (samples + BATCH - 1)/BATCH;
+			final double[] orbit = new double[2*view.getMaxIteration()];
+			final double[] c = new double[2];
+			int weight, n, x, y, i;
+			long batch;
+
+			while(!stopped && (batch = nextBatch.getAndIncrement()) < batches)
+			{
+				SplittableRandom random = new SplittableRandom(seed + batch*0x9E3779B97F4A7C15L);
+				long end = Math.min(samples, (batch + 1)*BATCH);
+				for(long s = batch*BATCH; s < end && !stopped; s++)
+				{
+					weight = sampler.draw(random, c);
+					n = trace(c[0], c[1], orbit, true);
+					if(n < 0)
+						continue;
+
+					if(added + (long)weight*n > Integer.MAX_VALUE)
+						spill();
+					added += (long)weight*n;
+
+					for(int k = 0; k < n; k++)
+					{
+						x = (int)Math.floor((orbit[2*k] - xMin)*xInv + 0.5) - cropX;
+						y = (int)Math.floor((orbit[2*k + 1] - yMin)*yInv + 0.5) - cropY;
+						if(x < 0 || y < 0 || x >= w || y >= h)
+							continue;
+						i = y*w + x;
+						for(int ch = 0; ch < counts.length; ch++)
+							if(n <= limits[ch])
+								counts[ch][i] += weight;
+					}
+				}
+			}
+		}
+
+		private void spill()
+		{
+			long[][] shared = spilled();
+			int length = counts[0].length;
+			for(int k = 0; k < STRIPES; k++)
+			{
+				int s = (firstStripe + k) % STRIPES;
+				int from = (int)((long)length*s/STRIPES), to = (int)((long)length*(s + 1)/STRIPES);
+				synchronized(stripes[s])
+				{
+					for(int ch = 0; ch < counts.length; ch++)
+						for(int i = from; i < to; i++)
+						{
+							shared[ch][i] += counts[ch][i];
+							counts[ch][i] = 0;
+						}
+				}
+			}
+			added = 0;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * A directory that the completed tiles of a render are saved to as it runs,
+ * so that a render that dies can be resumed without redoing them
+ * <p>
+ * The parameters of the render are kept in {@value #PARAMETERS}. Tiles are
+ * deflated as they complete, on the thread that completed them, and are
+ * written out together as a new segment file every so often. Every file is
+ * written under a temporary name, forced to disk and then renamed into place,
+ * so a checkpoint never holds a partly written file however the process ends
+ */
+public final class Checkpoint implements Closeable, TileListener
+{
+	/** Name of the file holding the parameters of the render */
+	public static final String PARAMETERS = "render.properties";
+	/** Default time between segment writes, in milliseconds */
+	public static final long DEFAULT_INTERVAL = 30000;
+
+	private static final int MAGIC = 0x4652434B;
+	private static final String SEGMENT = "segment-";
+	private static final String SEGMENT_SUFFIX = ".bin";
+	/** Buffered bytes that cause a segment to be written before the interval is up */
+	private static final int MAX_BUFFERED = 32 << 20;
+
+	private final File dir;
+	private final Set<Tile> restored;
+	/** Number of the first segment written by this process */
+	private final int firstSegment;
+	private final Object segmentLock = new Object();
+	private volatile long interval = DEFAULT_INTERVAL;
+
+	/** Guarded by this */
+	private List<Tile> tiles = new ArrayList<Tile>();
+	/** Guarded by this */
+	private List<byte[]> blocks = new ArrayList<byte[]>();
+	/** Guarded by this */
+	private long buffered, lastWrite = System.currentTimeMillis();
+	/** Guarded by this */
+	private boolean closed;
+	/** Guarded by the segment lock */
+	private int nextSegment;
+
+	private Checkpoint(File dir, Set<Tile> restored, int nextSegment)
+	{
+		this.dir = dir;
+		this.restored = Collections.unmodifiableSet(restored);
+		this.firstSegment = nextSegment;
+		this.nextSegment = nextSegment;
+	}
+
+	/**
+	 * Opens a checkpoint directory for a render
+	 *
+	 * @param dir		The checkpoint directory, which is created if it does not exist
+	 * @param formula	The formula of the render
+	 * @param view		The view of the render
+	 * @param precision	The precision tier of the render
+	 * @param resume	Whether to keep the tiles already in the directory. Otherwise
+	 * 					any checkpoint in the directory is discarded
+	 * @return			The open checkpoint
+	 * @throws IOException If the directory cannot be read or written, or when
+	 * 					resuming, if it holds a checkpoint of a different render
+	 */
+	public static Checkpoint open(File dir, Formula formula, View view, Precision precision, boolean resume)
+			throws IOException
+	{
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create checkpoint directory: " + dir);
+
+		Properties params = parameters(formula, view, precision);
+		Set<Tile> restored = new HashSet<Tile>();
+		int next = 0;
+		if(resume)
+		{
+			Properties saved = new Properties();
+			File file = new File(dir, PARAMETERS);
+			if(!file.isFile())
+				throw new IOException("No checkpoint to resume in " + dir);
+			try(InputStream in = new FileInputStream(file)) {
+				saved.load(in);
+			}
+			if(!saved.equals(params))
+				throw new IOException("Checkpoint in " + dir + " is of a different render");
+
+			for(File s : segments(dir))
+			{
+				next = Math.max(next, segmentNumber(s) + 1);
+				for(Tile t : readSegment(s, view, null))
+					restored.add(t);
+			}
+		}else
+		{
+			for(File s : segments(dir))
+				Files.delete(s.toPath());
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			params.store(bytes, "Fractal render checkpoint");
+			writeAtomically(new File(dir, PARAMETERS), bytes.toByteArray());
+		}
+		return new Checkpoint(dir, restored, next);
+	}
+
+	/**
+	 * Sets the time between segment writes. Tiles completed within that time
+	 * are lost if the render dies
+	 *
+	 * @param time	The interval
+	 * @param unit	The unit of {@code time}
+	 */
+	public void setInterval(long time, TimeUnit unit)
+	{
+		if(time < 0)
+			throw new IllegalArgumentException("Invalid Checkpoint Interval: " + time);
+		interval = unit.toMillis(time);
+	}
+
+	/** @return	The tiles that were already in the checkpoint when it was resumed */
+	public Set<Tile> getRestoredTiles()
+	{
+		return restored;
+	}
+
+	/**
+	 * Reads back the tiles that were already in the checkpoint when it was
+	 * resumed, one segment at a time
+	 *
+	 * @param view		The view of the render
+	 * @param listener	The listener to give each tile to, with no job and no colors
+	 * @throws IOException If a segment cannot be read
+	 */
+	public void restore(View view, TileListener listener) throws IOException
+	{
+		for(File s : segments(dir))
+			if(segmentNumber(s) < firstSegment)
+				readSegment(s, view, listener);
+	}
+
+	/**
+	 * Saves a completed tile with the next segment. Writes the segment if
+	 * the interval is up, in which case a failure to write it is reported and
+	 * its tiles are kept for the next attempt
+	 *
+	 * @param tile		The tile, in pixel coordinates of the view
+	 * @param smooth	The row-major smooth iteration values of the tile
+	 * @throws IllegalStateException If the checkpoint has been closed
+	 */
+	public void record(Tile tile, float[] smooth)
+	{
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		byte[] block;
+		try {
+			block = IterationArchive.encode(smooth, tile.getArea(), deflater);
+		}finally
+		{
+			deflater.end();
+		}
+
+		synchronized(this)
+		{
+			if(closed)
+				throw new IllegalStateException("Checkpoint is closed");
+			tiles.add(tile);
+			blocks.add(block);
+			buffered += block.length;
+			if(buffered < MAX_BUFFERED && System.currentTimeMillis() - lastWrite < interval)
+				return;
+		}
+
+		try {
+			write(false);
+		}catch(IOException e)
+		{
+			System.out.println("Warning: Unable to write checkpoint, retrying with the next segment - " + e.getMessage());
+		}
+	}
+
+	/** Saves a completed tile of a render job */
+	@Override
+	public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+	{
+		record(tile, smooth);
+	}
+
+	/**
+	 * Writes every tile that has been recorded since the last segment as a new segment
+	 *
+	 * @throws IOException If the segment cannot be written, in which case its tiles are kept
+	 */
+	public void flush() throws IOException
+	{
+		write(true);
+	}
+
+	/** Writes a segment, unless {@code force} is not set and another thread has just written one */
+	private void write(boolean force) throws IOException
+	{
+		synchronized(segmentLock)
+		{
+			List<Tile> t;
+			List<byte[]> b;
+			synchronized(this)
+			{
+				long now = System.currentTimeMillis();
+				if(!force && buffered < MAX_BUFFERED && now - lastWrite < interval)
+					return;
+				lastWrite = now;
+				if(tiles.isEmpty())
+					return;
+				t = tiles;
+				b = blocks;
+				tiles = new ArrayList<Tile>();
+				blocks = new ArrayList<byte[]>();
+				buffered = 0;
+			}
+
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeInt(MAGIC);
+				out.writeInt(t.size());
+				for(int i = 0; i < t.size(); i++)
+				{
+					Tile tile = t.get(i);
+					out.writeInt(tile.getX());
+					out.writeInt(tile.getY());
+					out.writeInt(tile.getWidth());
+					out.writeInt(tile.getHeight());
+					out.writeInt(b.get(i).length);
+					out.write(b.get(i));
+				}
+				writeAtomically(new File(dir, String.format(SEGMENT + "%06d" + SEGMENT_SUFFIX, nextSegment)),
+						bytes.toByteArray());
+				nextSegment++;
+			}catch(IOException e)
+			{
+				synchronized(this)
+				{
+					tiles.addAll(t);
+					blocks.addAll(b);
+					for(byte[] block : b)
+						buffered += block.length;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the last segment. The checkpoint is kept, see {@link #delete()}
+	 *
+	 * @throws IOException If the last segment cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		synchronized(this)
+		{
+			if(closed)
+				return;
+			closed = true;
+		}
+		flush();
+	}
+
+	/**
+	 * Closes the checkpoint and deletes its files, once the render it
+	 * protects has been saved
+	 *
+	 * @throws IOException If a file cannot be deleted
+	 */
+	public void delete() throws IOException
+	{
+		synchronized(this)
+		{
+			closed = true;
+			tiles.clear();
+			blocks.clear();
+		}
+		synchronized(segmentLock)
+		{
+			for(File s : segments(dir))
+				Files.delete(s.toPath());
+			Files.deleteIfExists(new File(dir, PARAMETERS).toPath());
+			String[] left = dir.list();
+			if(left != null && left.length == 0)
+				Files.delete(dir.toPath());
+		}
+	}
+
+	private static Properties parameters(Formula formula, View view, Precision precision)
+	{
+		DDComplex c = view.getCenter();
+		Properties p = new Properties();
+		p.setProperty("formula", formula.getSpec());
+		p.setProperty("precision", precision.name());
+		p.setProperty("center", c.Re() + "," + c.ReLo() + "," + c.Im() + "," + c.ImLo());
+		p.setProperty("zoom", String.valueOf(view.getZoom()));
+		p.setProperty("width", String.valueOf(view.getWidth()));
+		p.setProperty("height", String.valueOf(view.getHeight()));
+		p.setProperty("aspect", String.valueOf(view.getAspect()));
+		p.setProperty("frame", view.getFrame().getWidth() + "x" + view.getFrame().getHeight()
+				+ "+" + view.getCropX() + "+" + view.getCropY());
+		p.setProperty("exponent", String.valueOf(view.getExponent()));
+		p.setProperty("bailout", String.valueOf(view.getBailout()));
+		p.setProperty("maxIteration", String.valueOf(view.getMaxIteration()));
+		return p;
+	}
+
+	/** @return	The segment files of a checkpoint directory, in the order they were written */
+	private static File[] segments(File dir) throws IOException
+	{
+		File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT) && name.endsWith(SEGMENT_SUFFIX));
+		if(files == null)
+			throw new IOException("Cannot list checkpoint directory: " + dir);
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static int segmentNumber(File segment)
+	{
+		String name = segment.getName();
+		return Integer.parseInt(name.substring(SEGMENT.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Reads the tiles of a segment, and gives their values to a listener if there is one
+	 *
+	 * @return	The tiles of the segment
+	 */
+	private static List<Tile> readSegment(File segment, View view, TileListener listener) throws IOException
+	{
+		List<Tile> read = new ArrayList<Tile>();
+		try(DataInputStream in = new DataInputStream(Files.newInputStream(segment.toPath()))) {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a checkpoint segment: " + segment);
+			int count = in.readInt();
+			for(int i = 0; i < count; i++)
+			{
+				int x = in.readInt(), y = in.readInt(), w = in.readInt(), h = in.readInt();
+				if(x < 0 || y < 0 || w <= 0 || h <= 0 || x > view.getWidth() - w || y > view.getHeight() - h)
+					throw new IOException("Invalid tile in " + segment + ": " + x + "," + y + " " + w + "x" + h);
+				Tile t = new Tile(x, y, w, h);
+				byte[] block = new byte[in.readInt()];
+				in.readFully(block);
+				read.add(t);
+
+				if(listener == null)
+					continue;
+				float[] smooth = new float[t.getArea()];
+				try {
+					IterationArchive.decode(ByteBuffer.wrap(block), smooth);
+				}catch(DataFormatException e)
+				{
+					throw new IOException("Corrupt tile in " + segment + ": " + e.getMessage(), e);
+				}
+				listener.tileCompleted(null, t, smooth, null);
+			}
+		}catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		return read;
+	}
+
+	/** Writes a file under a temporary name, forces it to disk and renames it into place */
+	private static void writeAtomically(File file, byte[] data) throws IOException
+	{
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			while(buf.hasRemaining())
+				channel.write(buf);
+			channel.force(true);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
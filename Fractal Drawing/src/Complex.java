@@ -139,6 +139,9 @@ public class Complex
 	 */
 	public Complex pow(Complex power)
 	{
+		if(power.b == 0.0)
+			return pow(power.a);
+
 		double logThis = 0.5*Math.log(a*a + b*b);
 		double th = arg();
 		double mag = Math.exp(power.a*logThis - power.b*th);
@@ -147,6 +150,45 @@ public class Complex
 		return new Complex(mag*Math.cos(th), mag*Math.sin(th));
 	}
 
+	/**
+	 * Return the value of this object raised to a real power, as a complex number
+	 * <p>
+	 * Only the magnitude is raised and the angle scaled, which skips the
+	 * cross terms that a complex power needs and the exponent object.
+	 * Zero raised to any power is zero, as it always has been for
+	 * {@link #pow(Complex)}
+	 * 
+	 * @param power	The real number to raise this object to the power of
+	 * @return		this<sup>power</sup>
+	 */
+	public Complex pow(double power)
+	{
+		if(a == 0.0 && b == 0.0)
+			return new Complex();
+
+		double logThis = 0.5*Math.log(a*a + b*b);
+		double mag = Math.exp(power*logThis);
+		// The zero term of the complex path decides the sign of a zero angle
+		double th = 0.0*logThis + power*arg();
+
+		return new Complex(mag*Math.cos(th), mag*Math.sin(th));
+	}
+
+	/**
+	 * Gives the principal square root of this complex number
+	 * 
+	 * @return	&radic;this
+	 */
+	public Complex sqrt()
+	{
+		double t = Math.sqrt(0.5*(Math.abs(a) + Math.hypot(a, b)));
+		if(t == 0.0)
+			return new Complex();
+		if(a >= 0.0)
+			return new Complex(t, b/(2*t));
+		return new Complex(Math.abs(b)/(2*t), Math.copySign(t, b));
+	}
+
 	/**
 	 * Gives the sine of this complex number, treating this number
 	 * as a complex angle
@@ -160,7 +202,8 @@ public class Complex
 	 */
 	public Complex sin()
 	{
-		return new Complex(Math.sin(a)*Math.cosh(b), Math.cos(a)*Math.sinh(b));
+		double sh = Math.sinh(b);
+		return new Complex(Math.sin(a)*cosh(sh), Math.cos(a)*sh);
 	}
 
 	/**
@@ -176,7 +219,8 @@ public class Complex
 	 */
 	public Complex cos()
 	{
-		return new Complex(Math.cos(a)*Math.cosh(b), -Math.sin(a)*Math.sinh(b));
+		double sh = Math.sinh(b);
+		return new Complex(Math.cos(a)*cosh(sh), -Math.sin(a)*sh);
 	}
 
 	/**
@@ -192,8 +236,9 @@ public class Complex
 	 */
 	public Complex tan()
 	{
-		double mul = 1.0 / (Math.cos(2*a) + Math.cosh(2*b));
-		return new Complex(mul * Math.sin(2*a), mul * Math.sinh(2*b));
+		double s = Math.sin(a), c = Math.cos(a), sh = Math.sinh(b);
+		double mul = 1.0 / (c*c + sh*sh);
+		return new Complex(mul * s*c, mul * sh*cosh(sh));
 	}
 
 	/**
@@ -209,8 +254,9 @@ public class Complex
 	 */
 	public Complex csc()
 	{
-		double mul = 2.0 / (Math.cosh(b*2) - Math.cos(a*2));
-		return new Complex(Math.cosh(b)*Math.sin(a)*mul, -Math.cos(a)*Math.sinh(b)*mul);
+		double s = Math.sin(a), sh = Math.sinh(b);
+		double mul = 1.0 / (s*s + sh*sh);
+		return new Complex(cosh(sh)*s*mul, -Math.cos(a)*sh*mul);
 	}
 
 	/**
@@ -226,8 +272,9 @@ public class Complex
 	 */
 	public Complex sec()
 	{
-		double mul = 2.0 / (Math.cos(a*2) + Math.cosh(b*2));
-		return new Complex(Math.cos(a)*Math.cosh(b)*mul, Math.sin(a)*Math.sinh(b)*mul);
+		double c = Math.cos(a), sh = Math.sinh(b);
+		double mul = 1.0 / (c*c + sh*sh);
+		return new Complex(c*cosh(sh)*mul, Math.sin(a)*sh*mul);
 	}
 
 	/**
@@ -243,8 +290,9 @@ public class Complex
 	 */
 	public Complex cot()
 	{
-		double mul = 1.0 / (Math.cosh(2*b) - Math.cos(2*a));
-		return new Complex(mul * Math.sin(2*a), -mul * Math.sinh(2*b));
+		double s = Math.sin(a), sh = Math.sinh(b);
+		double mul = 1.0 / (s*s + sh*sh);
+		return new Complex(mul * s*Math.cos(a), -mul * sh*cosh(sh));
 	}
 
 	/**
@@ -259,17 +307,7 @@ public class Complex
 	 */
 	public Complex arcsin()
 	{
-		double a, b;
-		a = 1 - (this.a*this.a - this.b*this.b);
-		b = -2*this.a*this.b;
-
-		double r = Math.pow(a*a + b*b, 0.25);
-		double t = Math.atan2(b, a) / 2.0;
-
-		a = Math.cos(t)*r - this.b;
-		b = Math.sin(t)*r + this.a;
-
-		return new Complex(Math.atan2(b, a), -0.5*Math.log(a*a + b*b));
+		return logOfRoot(-b, a, 1 - (a*a - b*b), -2*a*b, true);
 	}
 
 	/**
@@ -284,17 +322,7 @@ public class Complex
 	 */
 	public Complex arccos()
 	{
-		double a, b;
-		a = this.a*this.a - this.b*this.b - 1;
-		b = 2*this.a*this.b;
-
-		double r = Math.pow(a*a + b*b, 0.25);
-		double t = Math.atan2(b, a) / 2.0;
-
-		a = r*Math.cos(t) + this.a;
-		b = r*Math.sin(t) + this.b;
-
-		return new Complex(Math.atan2(b, a), -0.5*Math.log(a*a + b*b));
+		return logOfRoot(a, b, a*a - b*b - 1, 2*a*b, true);
 	}
 
 	/**
@@ -308,13 +336,18 @@ public class Complex
 	 * @return	<i>arctan</i>(this)
 	 */
 	public Complex arctan()
+	{
+		return arctan(a, b);
+	}
+
+	private static Complex arctan(double a, double b)
 	{
 		double r1 = a*a + 1 - 2*b + b*b;
 		double r2 = a*a + 1 + 2*b + b*b;
 		double t1 = Math.atan2(1-b, -a);
 		double t2 = Math.atan2(1+b,  a);
 
-		return new Complex((t1 - t2) / 2.0, (Math.log(r1) - Math.log(r2)) / 4.0);
+		return new Complex((t1 - t2) / 2.0, Math.log(r1 / r2) / 4.0);
 	}
 
 	/**
@@ -329,7 +362,8 @@ public class Complex
 	 */
 	public Complex arccsc()
 	{
-		return getReciprocal().arcsin();
+		double m = 1.0 / (a*a + b*b), x = a*m, y = -b*m;
+		return logOfRoot(-y, x, 1 - (x*x - y*y), -2*x*y, true);
 	}
 
 	/**
@@ -344,7 +378,8 @@ public class Complex
 	 */
 	public Complex arcsec()
 	{
-		return getReciprocal().arccos();
+		double m = 1.0 / (a*a + b*b), x = a*m, y = -b*m;
+		return logOfRoot(x, y, x*x - y*y - 1, 2*x*y, true);
 	}
 
 	/**
@@ -359,7 +394,8 @@ public class Complex
 	 */
 	public Complex arccot()
 	{
-		return getReciprocal().arctan();
+		double m = 1.0 / (a*a + b*b);
+		return arctan(a*m, -b*m);
 	}
 
 	/**
@@ -375,7 +411,8 @@ public class Complex
 	 */
 	public Complex sinh()
 	{
-		return new Complex(Math.sinh(a)*Math.cos(b), Math.cosh(a)*Math.sin(b));
+		double sh = Math.sinh(a);
+		return new Complex(sh*Math.cos(b), cosh(sh)*Math.sin(b));
 	}
 
 	/**
@@ -391,7 +428,8 @@ public class Complex
 	 */
 	public Complex cosh()
 	{
-		return new Complex(Math.cosh(a)*Math.cos(b), Math.sinh(a)*Math.sin(b));
+		double sh = Math.sinh(a);
+		return new Complex(cosh(sh)*Math.cos(b), sh*Math.sin(b));
 	}
 
 	/**
@@ -407,8 +445,9 @@ public class Complex
 	 */
 	public Complex tanh()
 	{
-		double mul = 1.0 / (Math.cosh(2*a) + Math.cos(2*b));
-		return new Complex(mul * Math.sinh(2*a), mul * Math.sin(2*b));
+		double sh = Math.sinh(a), c = Math.cos(b);
+		double mul = 1.0 / (sh*sh + c*c);
+		return new Complex(mul * sh*cosh(sh), mul * Math.sin(b)*c);
 	}
 
 	/**
@@ -424,8 +463,9 @@ public class Complex
 	 */
 	public Complex csch()
 	{
-		double mul = 2.0 / (Math.cosh(2*a) - Math.cos(2*b));
-		return new Complex(mul * Math.sinh(a)*Math.cos(b), -mul * Math.sin(b)*Math.cosh(a));
+		double sh = Math.sinh(a), s = Math.sin(b);
+		double mul = 1.0 / (sh*sh + s*s);
+		return new Complex(mul * sh*Math.cos(b), -mul * s*cosh(sh));
 	}
 
 	/**
@@ -441,8 +481,9 @@ public class Complex
 	 */
 	public Complex sech()
 	{
-		double mul = 2.0 / (Math.cosh(2*a) + Math.cos(2*b));
-		return new Complex(mul * Math.cosh(a)*Math.cos(b), -mul * Math.sinh(a)*Math.sin(b));
+		double sh = Math.sinh(a), c = Math.cos(b);
+		double mul = 1.0 / (sh*sh + c*c);
+		return new Complex(mul * cosh(sh)*c, -mul * sh*Math.sin(b));
 	}
 
 	/**
@@ -458,8 +499,9 @@ public class Complex
 	 */
 	public Complex coth()
 	{
-		double mul = 1.0 / (Math.cosh(2*a) - Math.cos(2*b));
-		return new Complex(mul * Math.sinh(2*a), -mul * Math.sin(2*b));
+		double sh = Math.sinh(a), s = Math.sin(b);
+		double mul = 1.0 / (sh*sh + s*s);
+		return new Complex(mul * sh*cosh(sh), -mul * s*Math.cos(b));
 	}
 
 	/**
@@ -475,17 +517,7 @@ public class Complex
 	 */
 	public Complex arcsinh()
 	{
-		double a, b;
-		a = this.a*this.a - this.b*this.b + 1;
-		b = 2*this.a*this.b;
-
-		double r = Math.pow(a*a + b*b, 0.25);
-		double t = Math.atan2(b, a) / 2.0;
-
-		a = this.a + r*Math.cos(t);
-		b = this.b + r*Math.sin(t);
-
-		return new Complex(0.5 * Math.log(a*a + b*b), Math.atan2(b, a));
+		return logOfRoot(a, b, a*a - b*b + 1, 2*a*b, false);
 	}
 
 	/**
@@ -501,17 +533,7 @@ public class Complex
 	 */
 	public Complex arccosh()
 	{
-		double a, b;
-		a = this.a*this.a - this.b*this.b + 1;
-		b = 2*this.a*this.b;
-
-		double r = Math.pow(a*a + b*b, 0.25);
-		double t = Math.atan2(b, a) / 2.0;
-
-		a = this.a + r*Math.cos(t);
-		b = this.b + r*Math.sin(t);
-
-		return new Complex(0.5 * Math.log(a*a + b*b), Math.atan2(b, a));
+		return logOfRoot(a, b, a*a - b*b - 1, 2*a*b, false);
 	}
 
 	/**
@@ -526,13 +548,18 @@ public class Complex
 	 * @return	<i>arctanh</i>(this)
 	 */
 	public Complex arctanh()
+	{
+		return arctanh(a, b);
+	}
+
+	private static Complex arctanh(double a, double b)
 	{
 		double r1 = a*a + 2*a + 1 + b*b;
 		double r2 = a*a - 2*a + 1 + b*b;
 		double t1 = Math.atan2(b, 1 + a);
 		double t2 = Math.atan2(b, 1 - a);
 
-		return new Complex((Math.log(r1) - Math.log(r2)) / 4.0, (t1 - t2) / 2.0);
+		return new Complex(Math.log(r1 / r2) / 4.0, (t1 - t2) / 2.0);
 	}
 
 	/**
@@ -548,7 +575,8 @@ public class Complex
 	 */
 	public Complex arccsch()
 	{
-		return getReciprocal().arcsinh();
+		double m = 1.0 / (a*a + b*b), x = a*m, y = -b*m;
+		return logOfRoot(x, y, x*x - y*y + 1, 2*x*y, false);
 	}
 
 	/**
@@ -564,7 +592,8 @@ public class Complex
 	 */
 	public Complex arcsech()
 	{
-		return getReciprocal().arccosh();
+		double m = 1.0 / (a*a + b*b), x = a*m, y = -b*m;
+		return logOfRoot(x, y, x*x - y*y - 1, 2*x*y, false);
 	}
 
 	/**
@@ -580,7 +609,47 @@ public class Complex
 	 */
 	public Complex arccoth()
 	{
-		return getReciprocal().arctanh();
+		double m = 1.0 / (a*a + b*b);
+		return arctanh(a*m, -b*m);
+	}
+
+	/**
+	 * Gives log<sub><i>e</i></sub>(p&nbsp;+&nbsp;&radic;q), or -<i>i</i> times it if
+	 * {@code rotate} is set, which every inverse trigonometric and hyperbolic
+	 * function other than the arc tangents reduces to
+	 * <p>
+	 * The principal square root is taken in closed form, so this costs one
+	 * square root and a hypotenuse, a logarithm and an arc tangent
+	 */
+	private static Complex logOfRoot(double pr, double pi, double qr, double qi, boolean rotate)
+	{
+		double t = Math.sqrt(0.5*(Math.abs(qr) + Math.hypot(qr, qi)));
+		if(t != 0.0)
+		{
+			if(qr >= 0.0)
+			{
+				pr += t;
+				pi += qi/(2*t);
+			}else
+			{
+				pr += Math.abs(qi)/(2*t);
+				pi += Math.copySign(t, qi);
+			}
+		}
+
+		double re = 0.5*Math.log(pr*pr + pi*pi);
+		double im = Math.atan2(pi, pr);
+		if(rotate)
+			return new Complex(im, -re);
+		return new Complex(re, im);
+	}
+
+	/** Gives cosh(x) from sinh(x), which saves evaluating a second exponential */
+	private static double cosh(double sinh)
+	{
+		if(Math.abs(sinh) > 1e150)
+			return Math.abs(sinh);
+		return Math.sqrt(1.0 + sinh*sinh);
 	}
 
 	/**
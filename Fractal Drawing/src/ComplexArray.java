@@ -0,0 +1,285 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A fixed length array of complex numbers, stored as one primitive array of
+ * real parts and one of imaginary parts
+ * <p>
+ * Unlike {@link Complex}, the elements of this array are changed in place.
+ * The bulk operations work over a range of indices with straight loops over
+ * the two arrays, which the JIT is able to unroll and vectorize, and none of
+ * them allocate. The transcendental operations still call into {@link Math}
+ * for every element, but save the object traffic of doing the same with
+ * {@link Complex}.
+ * <p>
+ * The bulk operations do not replace NaN with 0 the way the constructor of
+ * {@link Complex} does, the elements are only scrubbed when they are read
+ * back with {@link #get(int)}
+ */
+public class ComplexArray
+{
+	private final double[] re, im;
+
+	/**
+	 * Creates an array of {@code length} complex numbers, all 0
+	 *
+	 * @param length	The number of elements
+	 * @throws NegativeArraySizeException If {@code length} is negative
+	 */
+	public ComplexArray(int length)
+	{
+		re = new double[length];
+		im = new double[length];
+	}
+
+	/**
+	 * Creates an array holding a copy of the given real and imaginary parts
+	 *
+	 * @param real		The real parts
+	 * @param imaginary	The imaginary parts
+	 * @throws IllegalArgumentException If the arrays are not the same length
+	 */
+	public ComplexArray(double[] real, double[] imaginary)
+	{
+		if(real.length != imaginary.length)
+			throw new IllegalArgumentException("Real and imaginary parts differ in length: "
+					+ real.length + " and " + imaginary.length);
+		re = real.clone();
+		im = imaginary.clone();
+	}
+
+	/** @return	The number of elements in this array */
+	public int length()
+	{
+		return re.length;
+	}
+
+	/**
+	 * Gives the element at {@code index}
+	 *
+	 * @param index	The index of the element
+	 * @return		The element, as a complex number
+	 */
+	public Complex get(int index)
+	{
+		return new Complex(re[index], im[index]);
+	}
+
+	/** @return	The real part of the element at {@code index} */
+	public double Re(int index)
+	{
+		return re[index];
+	}
+
+	/** @return	The imaginary part of the element at {@code index} */
+	public double Im(int index)
+	{
+		return im[index];
+	}
+
+	/**
+	 * Sets the element at {@code index} to the complex number <i>z</i>
+	 *
+	 * @param index	The index of the element
+	 * @param z		The new value of the element
+	 */
+	public void set(int index, Complex z)
+	{
+		re[index] = z.Re();
+		im[index] = z.Im();
+	}
+
+	/**
+	 * Sets the element at {@code index} to {@code real}&nbsp;+&nbsp;<i>i</i>{@code imaginary}
+	 *
+	 * @param index		The index of the element
+	 * @param real		The real part of the new value
+	 * @param imaginary	The imaginary part of the new value
+	 */
+	public void set(int index, double real, double imaginary)
+	{
+		re[index] = real;
+		im[index] = imaginary;
+	}
+
+	/**
+	 * Sets every element in the range to the same complex number
+	 *
+	 * @param from		The first index of the range
+	 * @param to		One past the last index of the range
+	 * @param real		The real part of the new value
+	 * @param imaginary	The imaginary part of the new value
+	 */
+	public void fill(int from, int to, double real, double imaginary)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		Arrays.fill(re, from, to, real);
+		Arrays.fill(im, from, to, imaginary);
+	}
+
+	/**
+	 * Adds the elements of <i>z</i> to the elements of this array
+	 * with the same indices, over the given range
+	 *
+	 * @param z		The array to add to this array
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void add(ComplexArray z, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, Math.min(re.length, z.re.length));
+		final double[] zr = z.re, zi = z.im;
+		for(int i = from; i < to; i++)
+		{
+			re[i] += zr[i];
+			im[i] += zi[i];
+		}
+	}
+
+	/**
+	 * Adds {@code real}&nbsp;+&nbsp;<i>i</i>{@code imaginary} to every element in the range
+	 *
+	 * @param real		The real part of the number to add
+	 * @param imaginary	The imaginary part of the number to add
+	 * @param from		The first index of the range
+	 * @param to		One past the last index of the range
+	 */
+	public void add(double real, double imaginary, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		for(int i = from; i < to; i++)
+		{
+			re[i] += real;
+			im[i] += imaginary;
+		}
+	}
+
+	/**
+	 * Multiplies the elements of this array by the elements of <i>z</i>
+	 * with the same indices, over the given range
+	 *
+	 * @param z		The array to multiply this array by
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void multiply(ComplexArray z, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, Math.min(re.length, z.re.length));
+		final double[] zr = z.re, zi = z.im;
+		double a, b;
+		for(int i = from; i < to; i++)
+		{
+			a = re[i];
+			b = im[i];
+			re[i] = a*zr[i] - b*zi[i];
+			im[i] = a*zi[i] + b*zr[i];
+		}
+	}
+
+	/**
+	 * Multiplies every element in the range by {@code real}&nbsp;+&nbsp;<i>i</i>{@code imaginary}
+	 *
+	 * @param real		The real part of the number to multiply by
+	 * @param imaginary	The imaginary part of the number to multiply by
+	 * @param from		The first index of the range
+	 * @param to		One past the last index of the range
+	 */
+	public void multiply(double real, double imaginary, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		double a, b;
+		for(int i = from; i < to; i++)
+		{
+			a = re[i];
+			b = im[i];
+			re[i] = a*real - b*imaginary;
+			im[i] = a*imaginary + b*real;
+		}
+	}
+
+	/**
+	 * Squares every element in the range
+	 *
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void square(int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		double a, b;
+		for(int i = from; i < to; i++)
+		{
+			a = re[i];
+			b = im[i];
+			re[i] = a*a - b*b;
+			im[i] = 2*a*b;
+		}
+	}
+
+	/**
+	 * Raises every element in the range to a real power, the same as
+	 * {@link Complex#pow(double)}
+	 *
+	 * @param power	The real number to raise the elements to the power of
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void pow(double power, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		double a, b, logThis, mag, th;
+		for(int i = from; i < to; i++)
+		{
+			a = re[i];
+			b = im[i];
+			if(a == 0.0 && b == 0.0)
+			{
+				re[i] = 0.0;
+				im[i] = 0.0;
+				continue;
+			}
+			logThis = 0.5*Math.log(a*a + b*b);
+			mag = Math.exp(power*logThis);
+			// The zero term of the complex path decides the sign of a zero angle
+			th = 0.0*logThis + power*Math.atan2(b, a);
+			re[i] = mag*Math.cos(th);
+			im[i] = mag*Math.sin(th);
+		}
+	}
+
+	/**
+	 * Sets every element in the range to <i>e</i> raised to that element,
+	 * the same as {@link Complex#exp()}
+	 *
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void exp(int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, re.length);
+		double mag, b;
+		for(int i = from; i < to; i++)
+		{
+			mag = Math.exp(re[i]);
+			b = im[i];
+			re[i] = mag*Math.cos(b);
+			im[i] = mag*Math.sin(b);
+		}
+	}
+
+	/**
+	 * Writes the squared magnitude of every element in the range to {@code out}
+	 * at the same index, which is cheaper than {@link Complex#abs()} and enough
+	 * to compare against a squared bailout
+	 *
+	 * @param out	The array to hold the squared magnitudes
+	 * @param from	The first index of the range
+	 * @param to	One past the last index of the range
+	 */
+	public void abs2(double[] out, int from, int to)
+	{
+		Objects.checkFromToIndex(from, to, Math.min(re.length, out.length));
+		for(int i = from; i < to; i++)
+			out[i] = re[i]*re[i] + im[i]*im[i];
+	}
+}
@@ -0,0 +1,270 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A complex number whose rectangular arguments are each stored as an
+ * unevaluated sum of two doubles, a <i>double-double</i>, which carries
+ * about 106 bits of mantissa
+ * <p>
+ * Sums and products are formed with error-free transforms, so the low
+ * word of each argument holds exactly the rounding error that a plain
+ * double would have lost. This is enough to resolve pixels at zooms well
+ * past the limit of {@link Complex}, at a small constant cost over double
+ * arithmetic rather than the cost of an arbitrary precision type
+ */
+public class DDComplex
+{
+	private final double reHi, reLo, imHi, imLo;
+
+	public static final DDComplex ZERO = new DDComplex(0.0, 0.0);
+
+	/**
+	 * Creates a new double-double complex number from the rectangular points
+	 * ({@code real},&nbsp;{@code imaginary})
+	 *
+	 * @param real		The real coefficient of a complex number
+	 * @param imaginary	The imaginary coefficient of a complex number
+	 */
+	public DDComplex(double real, double imaginary)
+	{
+		this(real, 0.0, imaginary, 0.0);
+	}
+
+	/**
+	 * Creates a new double-double complex number from the high and low
+	 * words of each rectangular argument
+	 *
+	 * @param reHi	The leading double of the real coefficient
+	 * @param reLo	The trailing double of the real coefficient
+	 * @param imHi	The leading double of the imaginary coefficient
+	 * @param imLo	The trailing double of the imaginary coefficient
+	 */
+	public DDComplex(double reHi, double reLo, double imHi, double imLo)
+	{
+		if(reHi != reHi || reLo != reLo) reHi = reLo = 0.0;
+		if(imHi != imHi || imLo != imLo) imHi = imLo = 0.0;
+
+		double s = reHi + reLo;
+		this.reLo = quickTwoSumError(reHi, reLo, s);
+		this.reHi = s;
+		s = imHi + imLo;
+		this.imLo = quickTwoSumError(imHi, imLo, s);
+		this.imHi = s;
+	}
+
+	/**
+	 * Parses the decimal strings {@code real} and {@code imaginary} to the
+	 * full precision of a double-double
+	 *
+	 * @param real		The real coefficient, as a decimal string
+	 * @param imaginary	The imaginary coefficient, as a decimal string
+	 * @return			The complex number closest to the given strings
+	 * @throws NumberFormatException If either string is not a number
+	 */
+	public static DDComplex parse(String real, String imaginary)
+	{
+		double[] re = parseReal(real);
+		double[] im = parseReal(imaginary);
+		return new DDComplex(re[0], re[1], im[0], im[1]);
+	}
+
+	private static double[] parseReal(String s)
+	{
+		s = s.trim();
+		BigDecimal value;
+		try {
+			value = new BigDecimal(s);
+		}catch(NumberFormatException e)
+		{
+			// Forms such as hexadecimal floating point only parse as a double
+			return new double[] {Double.parseDouble(s), 0.0};
+		}
+		return split(value);
+	}
+
+	/** Rounds a decimal to the closest double-double, as its high and low parts */
+	private static double[] split(BigDecimal value)
+	{
+		double hi = value.doubleValue();
+		double lo = value.subtract(new BigDecimal(hi)).doubleValue();
+		return new double[] {hi, lo};
+	}
+
+	/**
+	 * Gives the rounding error of {@code s}&nbsp;=&nbsp;{@code a}&nbsp;+&nbsp;{@code b},
+	 * for any two doubles
+	 */
+	static double twoSumError(double a, double b, double s)
+	{
+		double bb = s - a;
+		return (a - (s - bb)) + (b - bb);
+	}
+
+	/**
+	 * Gives the rounding error of {@code s}&nbsp;=&nbsp;{@code a}&nbsp;+&nbsp;{@code b},
+	 * when |{@code a}|&nbsp;&ge;&nbsp;|{@code b}|
+	 */
+	static double quickTwoSumError(double a, double b, double s)
+	{
+		return b - (s - a);
+	}
+
+	/**
+	 * Gives the rounding error of {@code p}&nbsp;=&nbsp;{@code a}&times;{@code b}
+	 */
+	static double twoProdError(double a, double b, double p)
+	{
+		return Math.fma(a, b, -p);
+	}
+
+	/**
+	 * Adds the complex number <i>z</i> to this complex number
+	 *
+	 * @param z	The complex number to add to this object
+	 * @return	{@code this}&nbsp;+&nbsp;z
+	 */
+	public DDComplex add(DDComplex z)
+	{
+		double s = reHi + z.reHi;
+		double e = twoSumError(reHi, z.reHi, s) + reLo + z.reLo;
+		double t = imHi + z.imHi;
+		double f = twoSumError(imHi, z.imHi, t) + imLo + z.imLo;
+		return new DDComplex(s, e, t, f);
+	}
+
+	/**
+	 * Adds this complex number with the negative of the complex number <i>z</i>
+	 *
+	 * @param z	The complex number to subtract from this object
+	 * @return	{@code this}&nbsp;-&nbsp;z
+	 */
+	public DDComplex subtract(DDComplex z)
+	{
+		return add(z.negate());
+	}
+
+	/**
+	 * Gives the additive inverse of this complex number
+	 *
+	 * @return	-{@code this}
+	 */
+	public DDComplex negate()
+	{
+		return new DDComplex(-reHi, -reLo, -imHi, -imLo);
+	}
+
+	/**
+	 * Multiplies this complex number by the complex number <i>z</i>
+	 *
+	 * @param z	The complex number to multiply with this object
+	 * @return	{@code this}&times;z
+	 */
+	public DDComplex multiply(DDComplex z)
+	{
+		double[] ac = product(reHi, reLo, z.reHi, z.reLo);
+		double[] bd = product(imHi, imLo, z.imHi, z.imLo);
+		double[] ad = product(reHi, reLo, z.imHi, z.imLo);
+		double[] bc = product(imHi, imLo, z.reHi, z.reLo);
+
+		DDComplex x = new DDComplex(ac[0], ac[1], ad[0], ad[1]);
+		return x.add(new DDComplex(-bd[0], -bd[1], bc[0], bc[1]));
+	}
+
+	/**
+	 * Squares this complex number
+	 * <p>
+	 * Equivalent to (<code>this&times;this</code>), with one fewer product
+	 *
+	 * @return	{@code this}<sup>2</sup>
+	 */
+	public DDComplex square()
+	{
+		double[] aa = product(reHi, reLo, reHi, reLo);
+		double[] bb = product(imHi, imLo, imHi, imLo);
+		double[] ab = product(reHi, reLo, imHi, imLo);
+
+		DDComplex x = new DDComplex(aa[0], aa[1], 2*ab[0], 2*ab[1]);
+		return x.add(new DDComplex(-bb[0], -bb[1], 0.0, 0.0));
+	}
+
+	private static double[] product(double ah, double al, double bh, double bl)
+	{
+		double p = ah*bh;
+		double e = twoProdError(ah, bh, p) + (ah*bl + al*bh);
+		double hi = p + e;
+		return new double[] {hi, quickTwoSumError(p, e, hi)};
+	}
+
+	/**
+	 * Gives the real part of this complex number, rounded to a double
+	 *
+	 * @return	The real part of this complex number
+	 */
+	public double Re()
+	{
+		return reHi;
+	}
+
+	/**
+	 * Gives the imaginary part of this complex number, rounded to a double
+	 *
+	 * @return	The imaginary part of this complex number
+	 */
+	public double Im()
+	{
+		return imHi;
+	}
+
+	/** @return	The trailing double of the real part of this complex number */
+	public double ReLo()
+	{
+		return reLo;
+	}
+
+	/** @return	The trailing double of the imaginary part of this complex number */
+	public double ImLo()
+	{
+		return imLo;
+	}
+
+	/**
+	 * Rounds this complex number to a {@link Complex}
+	 *
+	 * @return	The closest double precision complex number
+	 */
+	public Complex toComplex()
+	{
+		return new Complex(reHi, imHi);
+	}
+
+	/**
+	 * Gives the decimal form of this number as "(a,b)", with enough digits
+	 * to hold the full precision of both arguments
+	 */
+	@Override
+	public String toString()
+	{
+		return "(" + toDecimal(reHi, reLo) + "," + toDecimal(imHi, imLo) + ")";
+	}
+
+	/**
+	 * Gives the shortest decimal form of {@code hi}&nbsp;+&nbsp;{@code lo} that
+	 * parses back to the same pair, so that a parsed number prints as it was
+	 * written
+	 */
+	static String toDecimal(double hi, double lo)
+	{
+		if(lo == 0.0)
+			return String.valueOf(hi);
+		BigDecimal value = new BigDecimal(hi).add(new BigDecimal(lo));
+		for(int digits = 1; digits < value.precision(); digits++)
+		{
+			BigDecimal rounded = value.round(new MathContext(digits));
+			double[] parts = split(rounded);
+			if(parts[0] == hi && parts[1] == lo)
+				return rounded.stripTrailingZeros().toString();
+		}
+		// The exact sum always parses back to the pair
+		return value.stripTrailingZeros().toString();
+	}
+}
@@ -0,0 +1,149 @@
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * Shrinks images by exact area averaging, each output pixel being the mean of
+ * the source pixels it covers, weighted by how much of each it covers
+ * <p>
+ * The filter is separable, every output row sums the source rows under it one
+ * column span at a time. Output rows are independent of each other and are
+ * computed in parallel on the common pool, reading the source a row at a time
+ * through a {@link RowSource}
+ */
+public final class Downscaler
+{
+	private Downscaler() {}
+
+	/**
+	 * Scales an image down to fit within a width and height, keeping its aspect ratio
+	 *
+	 * @param src		The image to scale
+	 * @param maxWidth	The largest width of the result
+	 * @param maxHeight	The largest height of the result
+	 * @return			The scaled image, or an unscaled copy if the image already fits
+	 * @throws IllegalArgumentException If either bound is not positive
+	 */
+	public static BufferedImage fit(BufferedImage src, int maxWidth, int maxHeight)
+	{
+		return fit(RowSource.of(src), maxWidth, maxHeight);
+	}
+
+	/**
+	 * Scales an image that is read a row at a time down to fit within a width
+	 * and height, keeping its aspect ratio
+	 *
+	 * @see #fit(BufferedImage, int, int)
+	 */
+	public static BufferedImage fit(RowSource src, int maxWidth, int maxHeight)
+	{
+		if(maxWidth <= 0 || maxHeight <= 0)
+			throw new IllegalArgumentException("Invalid Size: " + maxWidth + "x" + maxHeight);
+		double scale = Math.min(1.0, Math.min((double)maxWidth/src.getWidth(), (double)maxHeight/src.getHeight()));
+		return downscale(src, Math.max(1, (int)Math.round(src.getWidth()*scale)),
+				Math.max(1, (int)Math.round(src.getHeight()*scale)));
+	}
+
+	/**
+	 * Scales an image down to an exact size
+	 *
+	 * @param src		The image to scale
+	 * @param width		The width of the result, no larger than the width of the image
+	 * @param height	The height of the result, no larger than the height of the image
+	 * @return			The scaled image
+	 * @throws IllegalArgumentException If the size is not positive or is larger than the image
+	 */
+	public static BufferedImage downscale(BufferedImage src, int width, int height)
+	{
+		return downscale(RowSource.of(src), width, height);
+	}
+
+	/**
+	 * Scales an image that is read a row at a time down to an exact size.
+	 * Each source row is read once for every output row that it falls under
+	 *
+	 * @see #downscale(BufferedImage, int, int)
+	 */
+	public static BufferedImage downscale(RowSource src, int width, int height)
+	{
+		final int sw = src.getWidth(), sh = src.getHeight();
+		if(width <= 0 || height <= 0 || width > sw || height > sh)
+			throw new IllegalArgumentException("Cannot scale a " + sw + "x" + sh + " image to " + width + "x" + height);
+
+		final boolean alpha = src.hasAlpha();
+		final BufferedImage dst = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+		// Column spans and weights are the same for every row
+		final double sx = (double)sw/width, sy = (double)sh/height;
+		final int[] xStart = new int[width + 1];
+		final float[] xLeft = new float[width], xRight = new float[width];
+		for(int x = 0; x < width; x++)
+		{
+			double l = x*sx, r = (x + 1)*sx;
+			xStart[x] = (int)l;
+			xLeft[x] = (float)(Math.min(r, xStart[x] + 1) - l);
+			xRight[x] = (float)(r - Math.max(l, Math.ceil(r) - 1));
+		}
+
+		final float norm = (float)(1.0/(sx*sy));
+		IntStream.range(0, height).parallel().forEach(y -> {
+			int[] row = new int[sw];
+			int[] out = new int[width];
+			float[] acc = new float[width*4];
+
+			double t = y*sy, b = (y + 1)*sy;
+			int y0 = (int)t, y1 = Math.min(sh, (int)Math.ceil(b));
+			for(int sy0 = y0; sy0 < y1; sy0++)
+			{
+				float wy = (float)(Math.min(b, sy0 + 1) - Math.max(t, sy0));
+				src.readRow(sy0, row);
+				accumulate(row, xStart, xLeft, xRight, sx, wy, acc);
+			}
+
+			int a, r, g, bl;
+			for(int x = 0; x < width; x++)
+			{
+				a = alpha ? clamp(acc[4*x]*norm) : 0xFF;
+				r = clamp(acc[4*x + 1]*norm);
+				g = clamp(acc[4*x + 2]*norm);
+				bl = clamp(acc[4*x + 3]*norm);
+				out[x] = a << 24 | r << 16 | g << 8 | bl;
+			}
+			dst.getRaster().setDataElements(0, y, width, 1, out);
+		});
+
+		return dst;
+	}
+
+	/** Adds one source row, weighted by {@code wy}, into the channel sums of every output column */
+	private static void accumulate(int[] row, int[] xStart, float[] xLeft, float[] xRight, double sx, float wy, float[] acc)
+	{
+		int width = xLeft.length, sw = row.length;
+		for(int x = 0; x < width; x++)
+		{
+			double r = (x + 1)*sx;
+			int first = xStart[x], last = Math.min(sw - 1, (int)Math.ceil(r) - 1);
+			float a = 0, red = 0, g = 0, b = 0, w;
+			int p;
+			for(int i = first; i <= last; i++)
+			{
+				w = i == first ? xLeft[x] : i == last ? xRight[x] : 1f;
+				p = row[i];
+				a += w*(p >>> 24);
+				red += w*((p >> 16) & 0xFF);
+				g += w*((p >> 8) & 0xFF);
+				b += w*(p & 0xFF);
+			}
+			acc[4*x] += wy*a;
+			acc[4*x + 1] += wy*red;
+			acc[4*x + 2] += wy*g;
+			acc[4*x + 3] += wy*b;
+		}
+	}
+
+	private static int clamp(float v)
+	{
+		int i = Math.round(v);
+		return i < 0 ? 0 : i > 255 ? 255 : i;
+	}
+}
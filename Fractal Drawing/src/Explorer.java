@@ -0,0 +1,327 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+/**
+ * An interactive window that renders a formula and lets the view be dragged
+ * to pan and scrolled to zoom
+ * <p>
+ * The smooth iteration values of the view are kept alongside the image. A pan
+ * shifts both by whole pixels and only renders the strips that were exposed.
+ * A zoom shows the old image rescaled about the cursor straight away and
+ * renders the new view in the background, from the cursor outward. Either one
+ * cancels whatever the previous render still had left to do
+ */
+public final class Explorer
+{
+	/** Edge length of the tiles that are rendered */
+	private static final int TILE = 64;
+	/** Factor the zoom changes by for each notch of the mouse wheel */
+	private static final double WHEEL_ZOOM = Math.sqrt(2);
+
+	private final RenderEngine engine;
+	private final Formula formula;
+	private final double exponent, bailout;
+	private final float colorFactor, colorConstant;
+	private final int fixedIterations;
+	private final int width, height;
+
+	private final JFrame frame;
+	private final JComponent canvas;
+
+	/** Guarded by this */
+	private View view;
+	/** Guarded by this */
+	private Palette palette;
+	/** The smooth iteration values of the view, NaN where not yet rendered, guarded by this */
+	private float[] smooth;
+	/** Guarded by this */
+	private BufferedImage img;
+	/** Guarded by this */
+	private RenderJob job;
+	/** Counts changes of view, so that tiles of a superseded render are dropped, guarded by this */
+	private int generation;
+
+	/** Offset of the image while it is being dragged, only touched on the event thread */
+	private int dragX, dragY, offsetX, offsetY;
+
+	/**
+	 * Creates an explorer window, which is not shown until {@link #show()} is called
+	 *
+	 * @param engine			The engine to render on
+	 * @param formula			The formula to render
+	 * @param center			The center of the first view
+	 * @param zoom				The zoom of the first view
+	 * @param width				The width of the view, in pixels
+	 * @param height			The height of the view, in pixels
+	 * @param exponent			The exponent of the generation equation
+	 * @param bailout			The bailout value
+	 * @param colorFactor		The hue scale of the palette
+	 * @param colorConstant		The hue shift of the palette
+	 * @param maxIteration		The maximum iteration, or 0 to pick one for each zoom
+	 */
+	public Explorer(RenderEngine engine, Formula formula, DDComplex center, double zoom, int width, int height,
+			double exponent, double bailout, float colorFactor, float colorConstant, int maxIteration)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid Size: " + width + "x" + height);
+		this.engine = engine;
+		this.formula = formula;
+		this.exponent = exponent;
+		this.bailout = bailout;
+		this.colorFactor = colorFactor;
+		this.colorConstant = colorConstant;
+		this.fixedIterations = maxIteration;
+		this.width = width;
+		this.height = height;
+
+		setView(center, zoom);
+		smooth = new float[width*height];
+		Arrays.fill(smooth, Float.NaN);
+		img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		canvas = new Canvas();
+		canvas.setPreferredSize(new Dimension(width, height));
+		Mouse mouse = new Mouse();
+		canvas.addMouseListener(mouse);
+		canvas.addMouseMotionListener(mouse);
+		canvas.addMouseWheelListener(mouse);
+
+		frame = new JFrame();
+		frame.setContentPane(canvas);
+		frame.pack();
+		frame.setLocationRelativeTo(null);
+		frame.setResizable(false);
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e)
+			{
+				synchronized(Explorer.this)
+				{
+					generation++;
+					if(job != null)
+						job.cancel(false);
+				}
+			}
+		});
+	}
+
+	/** Shows the window and starts rendering the first view */
+	public void show()
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run()
+			{
+				frame.setVisible(true);
+				synchronized(Explorer.this)
+				{
+					renderMissing(width/2, height/2);
+				}
+			}
+		});
+	}
+
+	/** @return	The view currently shown */
+	public synchronized View getView()
+	{
+		return view;
+	}
+
+	/** Replaces the view and palette, with the lock held. The pixels are square, as in a saved image */
+	private void setView(DDComplex center, double zoom)
+	{
+		int maxIteration = fixedIterations > 0 ? fixedIterations : Fractal.defaultMaxIteration(zoom);
+		view = new View(center, zoom, (double)width/height, width, height, exponent, bailout, maxIteration);
+		palette = new Palette(colorFactor, colorConstant, maxIteration);
+		generation++;
+		if(job != null)
+			job.cancel(false);
+		job = null;
+	}
+
+	/**
+	 * Moves the view by a whole number of pixels, keeping every value and
+	 * color that is still inside it. The zoom, and so the iteration limit
+	 * and palette, stay the same, so the kept pixels need no recoloring
+	 *
+	 * @param dx	The distance the image moves right
+	 * @param dy	The distance the image moves down
+	 */
+	private synchronized void pan(int dx, int dy)
+	{
+		if(dx == 0 && dy == 0)
+			return;
+
+		DDComplex center = view.getCenter().subtract(new DDComplex(dx*view.getXScale(), dy*view.getYScale()));
+		setView(center, view.getZoom());
+
+		float[] shifted = new float[width*height];
+		Arrays.fill(shifted, Float.NaN);
+		int x0 = Math.max(0, dx), x1 = Math.min(width, width + dx);
+		for(int y = Math.max(0, dy); y < Math.min(height, height + dy) && x0 < x1; y++)
+			System.arraycopy(smooth, (y - dy)*width + x0 - dx, shifted, y*width + x0, x1 - x0);
+		smooth = shifted;
+
+		BufferedImage moved = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics g = moved.getGraphics();
+		g.drawImage(img, dx, dy, null);
+		g.dispose();
+		img = moved;
+
+		renderMissing(width/2, height/2);
+	}
+
+	/**
+	 * Zooms the view about a pixel, which stays where it is on screen
+	 *
+	 * @param factor	The factor to multiply the zoom by
+	 * @param mx		The column to zoom about
+	 * @param my		The row to zoom about
+	 */
+	private synchronized void zoom(double factor, int mx, int my)
+	{
+		// The pixel spacing shrinks by the zoom factor, move the center so the pixel under the cursor stays put
+		double shift = 1.0 - 1.0/factor;
+		DDComplex center = view.getCenter().add(new DDComplex((mx - width/2.0)*view.getXScale()*shift,
+				(my - height/2.0)*view.getYScale()*shift));
+		setView(center, view.getZoom()*factor);
+
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaled.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.translate(mx, my);
+		g.scale(factor, factor);
+		g.translate(-mx, -my);
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		img = scaled;
+
+		Arrays.fill(smooth, Float.NaN);
+		renderMissing(mx, my);
+	}
+
+	/**
+	 * Submits every part of the view that has no values yet, nearest to the
+	 * given pixel first, with the lock held
+	 */
+	private void renderMissing(final int fx, final int fy)
+	{
+		List<Tile> tiles = new ArrayList<Tile>();
+		for(Tile t : Tile.grid(width, height, TILE))
+		{
+			int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+			for(int y = t.getY(); y < t.getY() + t.getHeight(); y++)
+				for(int x = t.getX(); x < t.getX() + t.getWidth(); x++)
+					if(smooth[y*width + x] != smooth[y*width + x])
+					{
+						minX = Math.min(minX, x);
+						maxX = Math.max(maxX, x);
+						minY = Math.min(minY, y);
+						maxY = Math.max(maxY, y);
+					}
+			if(maxX >= 0)
+				tiles.add(new Tile(minX, minY, maxX - minX + 1, maxY - minY + 1));
+		}
+		if(tiles.isEmpty())
+			return;
+
+		Collections.sort(tiles, new Comparator<Tile>() {
+			@Override
+			public int compare(Tile a, Tile b)
+			{
+				return Double.compare(distance(a, fx, fy), distance(b, fx, fy));
+			}
+		});
+
+		final int gen = generation;
+		job = engine.submit(new RenderRequest(formula, view, palette, view.selectPrecision(true), tiles, 0, Long.MAX_VALUE),
+				new TileListener() {
+			@Override
+			public void tileCompleted(RenderJob job, Tile tile, float[] values, int[] argb)
+			{
+				synchronized(Explorer.this)
+				{
+					if(gen != generation)
+						return;
+					for(int y = 0; y < tile.getHeight(); y++)
+						System.arraycopy(values, y*tile.getWidth(), smooth, (tile.getY() + y)*width + tile.getX(), tile.getWidth());
+					img.setRGB(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), argb, 0, tile.getWidth());
+				}
+				canvas.repaint(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight());
+			}
+		});
+		canvas.repaint();
+	}
+
+	private static double distance(Tile t, int x, int y)
+	{
+		return Math.hypot(t.getX() + t.getWidth()/2.0 - x, t.getY() + t.getHeight()/2.0 - y);
+	}
+
+	private final class Canvas extends JComponent
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void paintComponent(Graphics g)
+		{
+			g.setColor(Color.BLACK);
+			g.fillRect(0, 0, getWidth(), getHeight());
+			synchronized(Explorer.this)
+			{
+				g.drawImage(img, offsetX, offsetY, null);
+			}
+		}
+	}
+
+	private final class Mouse extends MouseAdapter
+	{
+		@Override
+		public void mousePressed(MouseEvent e)
+		{
+			dragX = e.getX();
+			dragY = e.getY();
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e)
+		{
+			offsetX = e.getX() - dragX;
+			offsetY = e.getY() - dragY;
+			canvas.repaint();
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e)
+		{
+			int dx = offsetX, dy = offsetY;
+			offsetX = offsetY = 0;
+			pan(dx, dy);
+		}
+
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e)
+		{
+			zoom(Math.pow(WHEEL_ZOOM, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+		}
+	}
+}
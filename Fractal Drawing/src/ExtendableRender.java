@@ -0,0 +1,179 @@
+import java.util.stream.IntStream;
+
+/**
+ * A render whose iteration limit can be raised after the fact, at the cost of
+ * only the extra iterations of the pixels that had not escaped
+ * <p>
+ * Pixels that reach the limit keep the <i>z</i> their orbit stopped at, so
+ * raising the limit continues just those orbits from where they were instead
+ * of iterating every pixel again from the start. Pixels that escaped are done
+ * for good, and hold no state. Orbits are iterated in double precision, in
+ * parallel on the common pool, and continuing them gives exactly the values
+ * that the double kernel gives at the higher limit
+ *
+ * @see Formula#continueOrbits(View, int[], double[], double[], int[], float[], int, int)
+ */
+public final class ExtendableRender
+{
+	/** Number of pixels each parallel task iterates */
+	private static final int CHUNK = 4096;
+
+	private final Formula formula;
+	private View view;
+	private float[] smooth;
+
+	/** The orbits of the pixels that have not escaped */
+	private Orbits orbits;
+
+	/**
+	 * @param formula	The formula to render, which must be able to continue its orbits
+	 * @param view		The view to render, whose maximum iteration is the first limit
+	 * @throws IllegalArgumentException If the formula cannot continue its orbits, the
+	 * 									view needs more than double precision or is cropped
+	 */
+	public ExtendableRender(Formula formula, View view)
+	{
+		if(!formula.canContinue(view))
+			throw new IllegalArgumentException("Cannot extend the iterations of " + formula.getName());
+		if(view.isCropped())
+			throw new IllegalArgumentException("Cannot extend the iterations of a cropped view");
+		if(view.selectPrecision() == Precision.EXTENDED)
+			throw new IllegalArgumentException("Cannot extend the iterations of a view that needs extended precision");
+		this.formula = formula;
+		this.view = view;
+	}
+
+	/**
+	 * Iterates every pixel of the view up to its maximum iteration
+	 *
+	 * @return	The row-major smooth iteration values of the view
+	 */
+	public float[] render()
+	{
+		final int width = view.getWidth(), height = view.getHeight();
+		final int rows = Math.max(1, CHUNK/width);
+		smooth = new float[width*height];
+
+		Orbits[] bands = IntStream.range(0, (height + rows - 1)/rows).parallel().mapToObj(b -> {
+			int first = b*rows*width, count = Math.min(rows, height - b*rows)*width;
+			Orbits band = new Orbits(count);
+			for(int k = 0; k < count; k++)
+				band.pixels[k] = first + k;
+			return band.iterate();
+		}).toArray(Orbits[]::new);
+		orbits = join(bands);
+		return smooth;
+	}
+
+	/**
+	 * Raises the iteration limit, continuing the orbits of the pixels that
+	 * had not escaped
+	 *
+	 * @param maxIteration	The new maximum iteration
+	 * @return				The row-major smooth iteration values of the view at the new limit
+	 * @throws IllegalArgumentException If the limit is not above the current one
+	 * @throws IllegalStateException If the view has not been rendered yet
+	 */
+	public float[] extend(int maxIteration)
+	{
+		if(smooth == null)
+			throw new IllegalStateException("Nothing rendered to extend");
+		if(maxIteration <= view.getMaxIteration())
+			throw new IllegalArgumentException("Invalid Iteration Limit: " + maxIteration
+					+ ", must be above " + view.getMaxIteration());
+
+		view = view.withMaxIteration(maxIteration);
+		final Orbits all = orbits;
+		Orbits[] chunks = IntStream.range(0, (all.count + CHUNK - 1)/CHUNK).parallel().mapToObj(c ->
+				all.slice(c*CHUNK, Math.min(all.count, (c + 1)*CHUNK)).iterate()).toArray(Orbits[]::new);
+		orbits = join(chunks);
+		return smooth;
+	}
+
+	/** @return	The view as last rendered, with the current iteration limit */
+	public View getView()
+	{
+		return view;
+	}
+
+	/** @return	The number of pixels that have not escaped at the current limit */
+	public int getUnresolved()
+	{
+		return orbits.count;
+	}
+
+	/** Joins sets of orbits back into one, in order */
+	private Orbits join(Orbits[] parts)
+	{
+		int total = 0;
+		for(Orbits o : parts)
+			total += o.count;
+		Orbits all = new Orbits(total);
+		int at = 0;
+		for(Orbits o : parts)
+		{
+			System.arraycopy(o.pixels, 0, all.pixels, at, o.count);
+			System.arraycopy(o.zr, 0, all.zr, at, o.count);
+			System.arraycopy(o.zi, 0, all.zi, at, o.count);
+			System.arraycopy(o.iterations, 0, all.iterations, at, o.count);
+			at += o.count;
+		}
+		return all;
+	}
+
+	/** The orbits of a set of pixels, in the order of their row-major indices */
+	private final class Orbits
+	{
+		final int[] pixels;
+		final double[] zr, zi;
+		final int[] iterations;
+		final int count;
+
+		Orbits(int count)
+		{
+			pixels = new int[count];
+			zr = new double[count];
+			zi = new double[count];
+			iterations = new int[count];
+			this.count = count;
+		}
+
+		/**
+		 * Continues every orbit up to the limit of the view, storing the smooth
+		 * values of the pixels
+		 *
+		 * @return	The orbits that still have not escaped
+		 */
+		Orbits iterate()
+		{
+			float[] out = new float[count];
+			formula.continueOrbits(view, pixels, zr, zi, iterations, out, 0, count);
+
+			double bail2 = view.getBailout()*view.getBailout();
+			int kept = 0;
+			for(int k = 0; k < count; k++)
+			{
+				smooth[pixels[k]] = out[k];
+				if(zr[k]*zr[k] + zi[k]*zi[k] < bail2)
+				{
+					pixels[kept] = pixels[k];
+					zr[kept] = zr[k];
+					zi[kept] = zi[k];
+					iterations[kept] = iterations[k];
+					kept++;
+				}
+			}
+			return slice(0, kept);
+		}
+
+		Orbits slice(int from, int to)
+		{
+			Orbits s = new Orbits(to - from);
+			System.arraycopy(pixels, from, s.pixels, 0, s.count);
+			System.arraycopy(zr, from, s.zr, 0, s.count);
+			System.arraycopy(zi, from, s.zi, 0, s.count);
+			System.arraycopy(iterations, from, s.iterations, 0, s.count);
+			return s;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+
+/**
+ * An escape-time formula that can be rendered by {@link Fractal}
+ * <p>
+ * Every formula supplies its own complete kernel that iterates a whole block
+ * of pixels on primitives, so the only call through this class is one per
+ * block. The loop inside each kernel only ever sees one formula, which keeps
+ * it as tight as a hand written loop no matter how many formulas exist.
+ * <p>
+ * A formula has to give a double precision kernel. The float and extended
+ * kernels are optional, and fall back to the double kernel when a formula
+ * does not have them
+ */
+public abstract class Formula
+{
+	/** <i>z</i>&nbsp;=&nbsp;<i>z</i><sup>exp</sup>&nbsp;+&nbsp;<i>z</i><sub>0</sub> */
+	public static final Formula MANDELBROT = new Mandelbrot();
+
+	/**
+	 * Gives the name of this formula, used to name the output image
+	 *
+	 * @return	The name of this formula
+	 */
+	public abstract String getName();
+
+	/**
+	 * Gives the specification that {@link #forName(String)} turns back into
+	 * this formula, used to recreate it in another process
+	 *
+	 * @return	The specification of this formula
+	 */
+	public abstract String getSpec();
+
+	/**
+	 * Fills {@code out} with the row-major smooth iteration values of the block of
+	 * {@code w}&times;{@code h} pixels whose top left pixel is ({@code x0},&nbsp;{@code y0}),
+	 * using the kernel for the given precision tier
+	 * <p>
+	 * The kernels are always given the frame of the view, with the block moved
+	 * to where it lies in the frame, so a cropped view gives exactly the values
+	 * of the same pixels of its frame
+	 *
+	 * @param precision	The precision tier to iterate in
+	 * @param view		The view that the pixel coordinates are relative to
+	 * @param x0		The leftmost column of the block
+	 * @param y0		The topmost row of the block
+	 * @param w			The width of the block
+	 * @param h			The height of the block
+	 * @param out		The array to hold the w&times;h smooth iteration values
+	 */
+	public final void iterate(Precision precision, View view, int x0, int y0, int w, int h, float[] out)
+	{
+		x0 += view.getCropX();
+		y0 += view.getCropY();
+		view = view.getFrame();
+		switch(precision)
+		{
+		case FLOAT:
+			iterateFloat(view, x0, y0, w, h, out);
+			break;
+		case EXTENDED:
+			if(hasExtendedKernel(view))
+				iterateExtended(view, x0, y0, w, h, out);
+			else
+				iterateDouble(view, x0, y0, w, h, out);
+			break;
+		default:
+			iterateDouble(view, x0, y0, w, h, out);
+			break;
+		}
+	}
+
+	/** The double precision kernel, see {@link #iterate(Precision, View, int, int, int, int, float[])} */
+	protected abstract void iterateDouble(View view, int x0, int y0, int w, int h, float[] out);
+
+	/** The single precision kernel, which is the double kernel unless overridden */
+	protected void iterateFloat(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		iterateDouble(view, x0, y0, w, h, out);
+	}
+
+	/**
+	 * Whether this formula has an extended precision kernel for the given view
+	 *
+	 * @param view	The view to be rendered
+	 * @return		{@code true} if {@link #iterateExtended(View, int, int, int, int, float[])} is available
+	 */
+	public boolean hasExtendedKernel(View view)
+	{
+		return false;
+	}
+
+	/** The extended precision kernel, only used when {@link #hasExtendedKernel(View)} is {@code true} */
+	protected void iterateExtended(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		iterateDouble(view, x0, y0, w, h, out);
+	}
+
+	/**
+	 * Whether this formula can stop its orbits at the iteration limit and
+	 * continue them later
+	 *
+	 * @param view	The view to be rendered
+	 * @return		{@code true} if {@link #continueOrbits(View, int[], double[], double[], int[], float[], int, int)} is available
+	 */
+	public boolean canContinue(View view)
+	{
+		return false;
+	}
+
+	/**
+	 * Iterates the orbits of pixels {@code from} to {@code to} of the given
+	 * arrays in double precision, each from the <i>z</i> and iteration count it
+	 * stopped at, until it escapes or reaches the maximum iteration of the
+	 * view. The state each orbit stops in is left in the arrays. An orbit with
+	 * no iterations done starts where the formula starts, whatever its <i>z</i>.
+	 * <p>
+	 * Continuing an orbit gives exactly the value that the double kernel
+	 * gives for the same pixel with the higher limit
+	 *
+	 * @param view			The view that the pixels are in, whose maximum iteration to stop at
+	 * @param pixels		The row-major index of each pixel in the view
+	 * @param zr			The real part of <i>z</i> of each orbit
+	 * @param zi			The imaginary part of <i>z</i> of each orbit
+	 * @param iterations	The number of iterations each orbit has done
+	 * @param out			The array to hold the smooth iteration value of each pixel
+	 * @param from			The first pixel to iterate
+	 * @param to			The pixel after the last one to iterate
+	 * @throws UnsupportedOperationException If {@link #canContinue(View)} is {@code false}
+	 */
+	public void continueOrbits(View view, int[] pixels, double[] zr, double[] zi, int[] iterations,
+			float[] out, int from, int to)
+	{
+		throw new UnsupportedOperationException(getName() + " cannot continue its orbits");
+	}
+
+	/**
+	 * Gives this formula with interior detection, which stops iterating an
+	 * orbit once it has shrunk the derivative of the orbit and returned
+	 * exactly to an earlier point, and gives its pixel the value of one that
+	 * never escapes. Only whole number exponents are checked
+	 *
+	 * @param threshold	The magnitude of the derivative below which an orbit is checked for a cycle
+	 * @param interval	The number of iterations between checks of the derivative
+	 * @return			The formula with interior detection
+	 * @throws IllegalArgumentException If this formula has no interior detection
+	 */
+	public Formula withInteriorDetection(double threshold, int interval)
+	{
+		throw new IllegalArgumentException("No interior detection for " + getName());
+	}
+
+	/**
+	 * Gives the exponent as an integer if it is a whole number that can be
+	 * raised by repeated multiplication, or 0 otherwise
+	 *
+	 * @param exp	The exponent of the generation equation
+	 * @return		The integer exponent, or 0
+	 */
+	protected static int integerExponent(double exp)
+	{
+		if(exp >= 2 && exp <= 64 && exp == Math.rint(exp))
+			return (int)exp;
+		return 0;
+	}
+
+	/**
+	 * Gives |(<i>z</i>&nbsp;-&nbsp;<i>z</i><sub>0</sub>)<sup>1/exp</sup>|, which is 0 when the
+	 * difference is 0, the same as {@link Complex#pow(Complex)} gives
+	 */
+	protected static double smoothMagnitude(double dr, double di, double inv)
+	{
+		double r = Math.hypot(dr, di);
+		if(r == 0.0 || r != r)
+			return 0.0;
+		return Math.pow(r, inv);
+	}
+
+	/**
+	 * Gives the formula that a command line specification names
+	 * <ul>
+	 * <li>{@code mandelbrot}
+	 * <li>{@code mandelbrot:interior=threshold,interval} - with {@linkplain #withInteriorDetection(double, int) interior detection}
+	 * <li>{@code julia:re,im} - the Julia set of the constant re&nbsp;+&nbsp;<i>i</i>im
+	 * <li>{@code burningship}
+	 * <li>{@code tricorn}
+	 * <li>{@code poly:a,b,c,...} - the polynomial a<i>z</i><sup>n</sup>&nbsp;+&nbsp;b<i>z</i><sup>n-1</sup>&nbsp;+&nbsp;...&nbsp;+&nbsp;<i>z</i><sub>0</sub>,
+	 * with coefficients from the highest power down
+	 * </ul>
+	 *
+	 * @param spec	The formula specification
+	 * @return		The named formula
+	 * @throws IllegalArgumentException If the specification is not a valid formula
+	 */
+	public static Formula forName(String spec)
+	{
+		return parse(spec, true);
+	}
+
+	/**
+	 * Checks that a specification names a formula, as {@link #forName(String)}
+	 * would, without generating a kernel for it
+	 *
+	 * @param spec	The formula specification
+	 * @throws IllegalArgumentException If the specification is not a valid formula
+	 */
+	public static void validate(String spec)
+	{
+		parse(spec, false);
+	}
+
+	/**
+	 * Parses a formula specification, generating the kernel of a polynomial
+	 * only if {@code compile} is set and using its looping kernel otherwise
+	 */
+	private static Formula parse(String spec, boolean compile)
+	{
+		String name = spec.trim().toLowerCase();
+		String params = null;
+		int colon = name.indexOf(':');
+		if(colon >= 0)
+		{
+			params = name.substring(colon + 1);
+			name = name.substring(0, colon);
+		}
+
+		try {
+			switch(name)
+			{
+			case "mandelbrot":
+				if(params == null)
+					return MANDELBROT;
+				if(params.startsWith("interior="))
+				{
+					double[] check = parseList(params.substring("interior=".length()));
+					if(check.length == 2 && check[1] == Math.rint(check[1]))
+						return MANDELBROT.withInteriorDetection(check[0], (int)check[1]);
+				}
+				break;
+			case "burningship":
+				if(params == null)
+					return new BurningShip();
+				break;
+			case "tricorn":
+				if(params == null)
+					return new Tricorn();
+				break;
+			case "julia":
+				double[] c = parseList(params);
+				if(c.length == 2)
+					return new Julia(c[0], c[1]);
+				break;
+			case "poly":
+				return compile ? Polynomial.compile(parseList(params)) : new Polynomial(parseList(params));
+			}
+		}catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid Formula Parameters: " + spec, e);
+		}
+		throw new IllegalArgumentException("Invalid Formula: " + spec);
+	}
+
+	private static double[] parseList(String params)
+	{
+		if(params == null)
+			throw new NumberFormatException("No parameters");
+		String[] parts = params.split(",");
+		double[] values = new double[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			values[i] = Double.parseDouble(parts[i].trim());
+			if(Double.isInfinite(values[i]) || Double.isNaN(values[i]))
+				throw new NumberFormatException("Invalid Parameter: " + parts[i]);
+		}
+		return values;
+	}
+}
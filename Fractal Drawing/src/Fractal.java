@@ -1,25 +1,24 @@
-import java.awt.Color;
-import java.awt.Image;
-import java.awt.event.WindowEvent;
-import java.awt.event.WindowListener;
+import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
-import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JPanel;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.Deflater;
 
 public class Fractal
 {
@@ -37,7 +36,7 @@ public class Fractal
 	private static final String ls = System.lineSeparator();
 
 	static {
-		int numTags = 11;
+		int numTags = 36;
 		HashMap<String,String> desc = new HashMap<String,String>(numTags);
 		HashMap<String,String> help = new HashMap<String,String>(numTags);
 		HashMap<String,String> def = new HashMap<String,String>(numTags);
@@ -122,6 +121,7 @@ public class Fractal
 				+ "\t        \tLarge values (i.e. 16) are unable to be processed" + ls
 				+ "\t        \tA value of 1 will output a 1920x1080 image, the default size" + ls
 				+ "\t        \tA value of 2 will output a 3840x2160 image, a 2K image" + ls
+				+ "\t        \tScales the size set with -sz, and the crop is taken after scaling" + ls
 				+ "\t        \tThe run time is related to the square of the resolution factor" + ls);
 
 		tag = "-t";
@@ -141,6 +141,243 @@ public class Fractal
 				+ "\t        \tMust be an existing folder" + ls
 				+ "\t        \tCannot be a file path name, existing or otherwise" + ls);
 
+		tag = "-f";
+		tags.add(tag);
+		def.put(tag, "mandelbrot");
+		desc.put(tag, "\t-f      \tSpecify the formula to generate" + ls);
+		help.put(tag, "\t-f [val] use: \tSpecify which escape-time formula to generate" + ls
+				+ "\t        \tmandelbrot       \tz = z^e + z0, the default" + ls
+				+ "\t        \tjulia:re,im      \tz = z^e + (re + im*i), starting from z = z0" + ls
+				+ "\t        \tburningship      \tz = (|Re(z)| + |Im(z)|*i)^e + z0" + ls
+				+ "\t        \ttricorn          \tz = conj(z)^e + z0" + ls
+				+ "\t        \tpoly:a,b,...     \tz = a*z^n + b*z^(n-1) + ... + z0" + ls
+				+ "\t        \t                 \tReal coefficients from the highest power down" + ls
+				+ "\t        \t                 \tThe exponent is ignored for polynomials" + ls);
+
+		tag = "-tl";
+		tags.add(tag);
+		def.put(tag, "0");
+		desc.put(tag, "\t-tl     \tSpecify a time limit for the generation, in seconds" + ls);
+		help.put(tag, "\t-tl [val] use:\tSpecify the time limit, in seconds, to generate the image within" + ls
+				+ "\t        \tMust be a positive decimal number" + ls
+				+ "\t        \tA coarse preview is generated first, then tiles are refined" + ls
+				+ "\t        \tto full quality, most detailed first, until the limit is reached" + ls
+				+ "\t        \tThe coarse preview is always completed, even past the limit" + ls);
+
+		tag = "-a";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-a      \tSpecify that the raw iteration values should be archived" + ls);
+		help.put(tag, "\t-a       use: \tFlag that indicates to the program that the smooth iteration" + ls
+				+ "\t        \tvalues should be saved next to the image, as a .fraw archive" + ls
+				+ "\t        \tThe archive can be recolored or cropped later without rendering again" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-pc";
+		tags.add(tag);
+		def.put(tag, "-1");
+		desc.put(tag, "\t-pc     \tSpecify the compression level of the output image" + ls);
+		help.put(tag, "\t-pc [val] use:\tSpecify the deflate level to compress the PNG output with" + ls
+				+ "\t        \tMust be an integer from 0 to 9" + ls
+				+ "\t        \t0 stores the image uncompressed, 9 gives the smallest file" + ls
+				+ "\t        \tThe image is compressed on every core" + ls);
+
+		tag = "-hl";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-hl     \tSpecify that the image should not be displayed" + ls);
+		help.put(tag, "\t-hl      use: \tFlag that indicates to the program that it is running headless" + ls
+				+ "\t        \tNo window is opened and AWT and Swing are never initialised" + ls
+				+ "\t        \tThis is the default when no display is available" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-th";
+		tags.add(tag);
+		def.put(tag, "0");
+		desc.put(tag, "\t-th     \tSpecify the width of a thumbnail to save with the image" + ls);
+		help.put(tag, "\t-th [val] use:\tSpecify the width, in pixels, of a thumbnail to save next to the image" + ls
+				+ "\t        \tMust be a positive integer no larger than the image width" + ls
+				+ "\t        \tThe height follows from the aspect ratio of the image" + ls);
+
+		tag = "-ex";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-ex     \tSpecify that the fractal should be explored interactively" + ls);
+		help.put(tag, "\t-ex      use: \tFlag that opens an interactive window instead of saving an image" + ls
+				+ "\t        \tDrag to pan the view, and scroll to zoom in or out about the cursor" + ls
+				+ "\t        \tThe other arguments give the starting view and the window size" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-co";
+		tags.add(tag);
+		def.put(tag, "-1");
+		desc.put(tag, "\t-co     \tSpecify a port to hand tiles out to worker processes on" + ls);
+		help.put(tag, "\t-co [val] use:\tSpecify the port to coordinate a distributed render on" + ls
+				+ "\t        \tThe tiles of the image are rendered by workers started with -wk," + ls
+				+ "\t        \twhich may connect and leave at any time while the render runs" + ls
+				+ "\t        \tMust be an integer from 0 to 65535, where 0 picks any free port" + ls);
+
+		tag = "-wk";
+		tags.add(tag);
+		def.put(tag, "");
+		desc.put(tag, "\t-wk     \tSpecify a coordinator to render tiles for" + ls);
+		help.put(tag, "\t-wk [host:port] use:\tRun as a worker for the coordinator at host:port" + ls
+				+ "\t        \tThe coordinator gives the view, so every other argument is ignored" + ls
+				+ "\t        \tThe worker waits up to " + Fractal.WORKER_PATIENCE + " seconds for the coordinator to start" + ls);
+
+		tag = "-ck";
+		tags.add(tag);
+		def.put(tag, "");
+		desc.put(tag, "\t-ck     \tSpecify a directory to checkpoint completed tiles to" + ls);
+		help.put(tag, "\t-ck [dir] use:\tSpecify a directory that completed tiles are saved to as the render runs," + ls
+				+ "\t        \tso that a render that dies can be continued with -rs" + ls
+				+ "\t        \tAny checkpoint already in the directory is discarded unless -rs is given" + ls
+				+ "\t        \tThe checkpoint is deleted once the image has been saved" + ls
+				+ "\t        \tCannot be combined with a time limit" + ls);
+
+		tag = "-rs";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-rs     \tSpecify that the render should resume from its checkpoint" + ls);
+		help.put(tag, "\t-rs      use: \tFlag that resumes the render from the checkpoint given with -ck," + ls
+				+ "\t        \tskipping the tiles that it already holds" + ls
+				+ "\t        \tThe other arguments must describe the same render as the checkpoint" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-bb";
+		tags.add(tag);
+		def.put(tag, "0");
+		desc.put(tag, "\t-bb     \tSpecify the number of orbits to trace for a Buddhabrot" + ls);
+		help.put(tag, "\t-bb [val] use:\tRender the density of escaping orbits, the Buddhabrot, instead of" + ls
+				+ "\t        \tescape times, by tracing the orbits of this many random points" + ls
+				+ "\t        \tMust be a positive integer, and billions give the smoothest images" + ls
+				+ "\t        \tOnly the Mandelbrot formula is supported, at any exponent" + ls
+				+ "\t        \tCannot be combined with a time limit, archive, checkpoint or coordinator" + ls);
+
+		tag = "-nb";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-nb     \tSpecify that a Buddhabrot should be colored as a Nebulabrot" + ls);
+		help.put(tag, "\t-nb      use: \tFlag that colors a Buddhabrot as a Nebulabrot, which counts orbits" + ls
+				+ "\t        \tinto red, green and blue with iteration limits of one, a tenth" + ls
+				+ "\t        \tand a hundredth of the maximum iteration" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-sg";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-sg     \tSpecify that the image should be generated by solid guessing" + ls);
+		help.put(tag, "\t-sg      use: \tFlag that generates the image by solid guessing, which iterates a" + ls
+				+ "\t        \tcoarse grid of pixels first, and then only iterates the pixels" + ls
+				+ "\t        \tbetween neighbours that disagree, filling in the rest" + ls
+				+ "\t        \tMuch faster for views with large smooth areas, but may miss detail" + ls
+				+ "\t        \tthat is finer than the grid" + ls
+				+ "\t        \tCannot be combined with a time limit, archive, checkpoint or coordinator" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-gu";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-gu     \tSpecify that solid guessing should verify the borders of its guesses" + ls);
+		help.put(tag, "\t-gu      use: \tFlag that makes solid guessing iterate the whole border of each" + ls
+				+ "\t        \tarea before filling it, and only fill it if the border agrees" + ls
+				+ "\t        \tSlower than plain solid guessing, but far less likely to miss detail" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-ei";
+		tags.add(tag);
+		def.put(tag, "");
+		desc.put(tag, "\t-ei     \tSpecify higher iteration limits to extend the image to" + ls);
+		help.put(tag, "\t-ei [val] use:\tAfter generating the image, raise its maximum iteration to each" + ls
+				+ "\t        \tof these limits in turn, saving an image at every limit" + ls
+				+ "\t        \tOnly the pixels that have not escaped are iterated further, from" + ls
+				+ "\t        \twhere they stopped, so each limit only costs its extra iterations" + ls
+				+ "\t        \tMust be a comma separated list of increasing integers" + ls
+				+ "\t        \tabove the maximum iteration, e.g. 1000,4000" + ls
+				+ "\t        \tIterates in double precision, so zooms that need more are not supported" + ls
+				+ "\t        \tCannot be combined with other generation modes, an archive or checkpoint" + ls);
+
+		tag = "-dz";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-dz     \tSpecify that the image should be exported as a Deep Zoom tile pyramid" + ls);
+		help.put(tag, "\t-dz      use: \tFlag that writes the image as a Deep Zoom (DZI) tile pyramid for web" + ls
+				+ "\t        \tviewers instead of one image, as a .dzi file and a _files directory" + ls
+				+ "\t        \twith a level of " + TilePyramid.TILE + "x" + TilePyramid.TILE + " tiles for every halving of the size" + ls
+				+ "\t        \tOnly the full size is rendered, each coarser level is shrunk from" + ls
+				+ "\t        \tthe one below as its tiles complete, and the full image is never held" + ls
+				+ "\t        \tCannot be combined with other generation modes, an archive," + ls
+				+ "\t        \tcheckpoint or thumbnail" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-cs";
+		tags.add(tag);
+		def.put(tag, "false");
+		desc.put(tag, "\t-cs     \tSpecify that the image should be kept compressed in memory" + ls);
+		help.put(tag, "\t-cs      use: \tFlag that generates the image on every core, keeping each tile" + ls
+				+ "\t        \tcompressed in memory as it completes instead of in one full image," + ls
+				+ "\t        \tso resolutions far beyond the size of the heap can be generated" + ls
+				+ "\t        \tThe image is decompressed a few rows at a time to be saved" + ls
+				+ "\t        \tCannot be combined with other generation modes" + ls
+				+ "\t        \tThis flag accepts no arguments" + ls);
+
+		tag = "-id";
+		tags.add(tag);
+		def.put(tag, "0");
+		desc.put(tag, "\t-id     \tSpecify the threshold to detect pixels inside the set by" + ls);
+		help.put(tag, "\t-id [val] use:\tStop iterating a pixel early once the derivative of its orbit" + ls
+				+ "\t        \thas shrunk below this threshold and the orbit has come back to" + ls
+				+ "\t        \texactly a point it reached before, which proves that it repeats" + ls
+				+ "\t        \tforever and the pixel is inside the set" + ls
+				+ "\t        \tMust be a decimal number between 0 and 1, e.g. 0.001" + ls
+				+ "\t        \tPixels outside the set come out the same at any threshold, larger" + ls
+				+ "\t        \tthresholds only start looking for the cycle sooner" + ls
+				+ "\t        \tMuch faster for views with large areas inside the set, though" + ls
+				+ "\t        \tpixels close to the edge of the set take longer to settle" + ls
+				+ "\t        \tOnly the Mandelbrot formula with whole number exponents is supported" + ls
+				+ "\t        \tCannot be combined with extending iterations or a Buddhabrot" + ls);
+
+		tag = "-ic";
+		tags.add(tag);
+		def.put(tag, "0");
+		desc.put(tag, "\t-ic     \tSpecify how often to check the derivative for interior detection" + ls);
+		help.put(tag, "\t-ic [val] use:\tSpecify the number of iterations between checks of the derivative" + ls
+				+ "\t        \tof each orbit when detecting pixels inside the set with -id" + ls
+				+ "\t        \tMust be a positive integer, by default " + Fractal.DEFAULT_INTERIOR_INTERVAL + ls);
+
+		tag = "-ss";
+		tags.add(tag);
+		def.put(tag, "1");
+		desc.put(tag, "\t-ss     \tSpecify the number of samples to average into each pixel" + ls);
+		help.put(tag, "\t-ss [val] use:\tAntialias the image by averaging a square grid of this many samples" + ls
+				+ "\t        \tacross every pixel, in linear light, on every core" + ls
+				+ "\t        \tThe samples are averaged as each tile is generated, so only the image" + ls
+				+ "\t        \tat its output size is ever held, the size set with -r" + ls
+				+ "\t        \tMust be a square number, e.g. 4 for 2x2 samples or 16 for 4x4" + ls
+				+ "\t        \tThe run time grows with the number of samples" + ls
+				+ "\t        \tCannot be combined with a time limit, archive, checkpoint, coordinator," + ls
+				+ "\t        \tBuddhabrot, solid guessing or extending iterations" + ls);
+
+		tag = "-sz";
+		tags.add(tag);
+		def.put(tag, "1920x1080");
+		desc.put(tag, "\t-sz     \tSpecify the size of the image in pixels" + ls);
+		help.put(tag, "\t-sz [val] use:\tSpecify the width and height of the image as WIDTHxHEIGHT" + ls
+				+ "\t        \tThe image is two units of the plane tall at a zoom of 0, and as" + ls
+				+ "\t        \twide as its aspect ratio makes it, so its pixels are square" + ls
+				+ "\t        \tBoth must be positive integers, by default 1920x1080" + ls);
+
+		tag = "-cr";
+		tags.add(tag);
+		def.put(tag, "");
+		desc.put(tag, "\t-cr     \tSpecify a rectangle of the image to generate on its own" + ls);
+		help.put(tag, "\t-cr [val] use:\tGenerate and save only a rectangle of the image, given as" + ls
+				+ "\t        \tX,Y,WIDTH,HEIGHT in pixels from the top left of the full image" + ls
+				+ "\t        \tThe pixels are exactly those the full image would have there, and" + ls
+				+ "\t        \tonly they are iterated" + ls
+				+ "\t        \tThe rectangle must lie inside the image" + ls
+				+ "\t        \tCannot be combined with exploring, a Buddhabrot, solid guessing" + ls
+				+ "\t        \tor extending iterations" + ls);
 
 		tags.trimToSize();
 
@@ -150,11 +387,6 @@ public class Fractal
 		tagHelp = Collections.<String,String>unmodifiableMap(help);
 	}
 
-	private static boolean xLocSet = false, yLocSet = false, zoomSet = false, expSet = false;
-	private static boolean colorMultSet = false, colorAddSet = false, maxItSet = false;
-	private static boolean resMultSet = false, threadedSet = false, outputSet = false;
-	private static boolean bailSet = false;
-
 
 
 	public static void main(String[] args) throws Exception
@@ -205,15 +437,135 @@ public class Fractal
 			boolVals[i] = Boolean.valueOf(args[i+bStart]);
 		output = new File(args[oLoc]);
 
-		Fractal f = new Fractal(dVals[0], dVals[1], dVals[2], dVals[3], dVals[4],
-				fVals[1], fVals[0], iVals[1], iVals[0], output);
+		DDComplex center = DDComplex.parse(args[dStart], args[dStart+1]);
+		Formula formula = Formula.forName(args[oLoc+1]);
+		double timeLimit = Double.valueOf(args[oLoc+2]);
+		boolean archive = Boolean.valueOf(args[oLoc+3]);
+		int compression = Integer.valueOf(args[oLoc+4]);
+		boolean headless = Boolean.valueOf(args[oLoc+5]) || GraphicsEnvironment.isHeadless();
+		int thumbnail = Integer.valueOf(args[oLoc+6]);
+		boolean explore = Boolean.valueOf(args[oLoc+7]);
+		int coordinatorPort = Integer.valueOf(args[oLoc+8]);
+		String coordinator = args[oLoc+9];
+		String checkpoint = args[oLoc+10];
+		boolean resume = Boolean.valueOf(args[oLoc+11]);
+		long orbits = Long.valueOf(args[oLoc+12]);
+		boolean nebula = Boolean.valueOf(args[oLoc+13]);
+		boolean guess = Boolean.valueOf(args[oLoc+14]);
+		boolean guarantee = Boolean.valueOf(args[oLoc+15]);
+		int[] extensions = parseLimits(args[oLoc+16]);
+		boolean pyramid = Boolean.valueOf(args[oLoc+17]);
+		boolean compressed = Boolean.valueOf(args[oLoc+18]);
+		double interiorThreshold = Double.valueOf(args[oLoc+19]);
+		int interiorInterval = Integer.valueOf(args[oLoc+20]);
+		int samples = (int)Math.round(Math.sqrt(Integer.valueOf(args[oLoc+21])));
+		int[] size = parseSize(args[oLoc+22]);
+		Tile crop = parseCrop(args[oLoc+23]);
+
+		if(!coordinator.isEmpty())
+		{
+			int colon = coordinator.lastIndexOf(':');
+			work(coordinator.substring(0, colon), Integer.parseInt(coordinator.substring(colon + 1)));
+			return;
+		}
+
+		if(interiorInterval > 0 && interiorThreshold == 0)
+			throw new IllegalArgumentException("Can only set the check interval of interior detection");
+		if(interiorThreshold > 0)
+		{
+			if(extensions.length > 0 || orbits > 0)
+				throw new IllegalArgumentException("Cannot combine interior detection with extending iterations or a Buddhabrot");
+			formula = formula.withInteriorDetection(interiorThreshold,
+					interiorInterval > 0 ? interiorInterval : DEFAULT_INTERIOR_INTERVAL);
+		}
+
+		if((long)size[0]*iVals[1] > Integer.MAX_VALUE || (long)size[1]*iVals[1] > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Image Size Too Large: " + size[0] + "x" + size[1] + " scaled by " + iVals[1]);
+		if(crop != null && (explore || orbits > 0 || guess || extensions.length > 0))
+			throw new IllegalArgumentException("Cannot crop while exploring, or a Buddhabrot, solid guessing"
+					+ " or extending iterations render");
 
-		if(boolVals[0])
+		Fractal f = new Fractal(formula, center, dVals[2], dVals[3], dVals[4],
+				fVals[1], fVals[0], size[0]*iVals[1], size[1]*iVals[1], crop, iVals[0], output);
+		if(explore)
+		{
+			if(headless)
+				throw new IllegalArgumentException("Cannot explore without a display");
+			f.explore();
+			return;
+		}
+		if(thumbnail > f.width)
+			throw new IllegalArgumentException("Invalid Thumbnail Width: " + thumbnail + ", wider than the image width of " + f.width);
+		if(nebula && orbits == 0)
+			throw new IllegalArgumentException("Can only color a Buddhabrot as a Nebulabrot");
+		if(orbits > 0 && (timeLimit > 0 || archive || !checkpoint.isEmpty() || coordinatorPort >= 0))
+			throw new IllegalArgumentException("Cannot combine a Buddhabrot with a time limit, archive, checkpoint or coordinator");
+		if(guarantee && !guess)
+			throw new IllegalArgumentException("Can only guarantee a solid guessing render");
+		if(guess && (timeLimit > 0 || archive || !checkpoint.isEmpty() || coordinatorPort >= 0 || orbits > 0))
+			throw new IllegalArgumentException("Cannot combine solid guessing with a time limit, archive, checkpoint,"
+					+ " coordinator or Buddhabrot");
+		if(extensions.length > 0)
+		{
+			if(timeLimit > 0 || archive || !checkpoint.isEmpty() || coordinatorPort >= 0 || orbits > 0 || guess)
+				throw new IllegalArgumentException("Cannot combine extending iterations with a time limit, archive,"
+						+ " checkpoint, coordinator, Buddhabrot or solid guessing");
+			if(extensions[0] <= f.maxIteration)
+				throw new IllegalArgumentException("Iteration limits to extend to must be above the maximum iteration of "
+						+ f.maxIteration);
+		}
+		if(pyramid && (timeLimit > 0 || archive || !checkpoint.isEmpty() || coordinatorPort >= 0 || orbits > 0 || guess
+				|| extensions.length > 0 || thumbnail > 0))
+			throw new IllegalArgumentException("Cannot combine a tile pyramid with other generation modes, an archive,"
+					+ " checkpoint or thumbnail");
+		if(compressed && (timeLimit > 0 || coordinatorPort >= 0 || orbits > 0 || guess || extensions.length > 0 || pyramid))
+			throw new IllegalArgumentException("Cannot combine a compressed image with other generation modes");
+		if(samples > 1 && (timeLimit > 0 || archive || !checkpoint.isEmpty() || coordinatorPort >= 0 || orbits > 0 || guess
+				|| extensions.length > 0))
+			throw new IllegalArgumentException("Cannot combine supersampling with a time limit, archive, checkpoint,"
+					+ " coordinator, Buddhabrot, solid guessing or extending iterations");
+		if(resume && checkpoint.isEmpty())
+			throw new IllegalArgumentException("Can only resume with a checkpoint directory");
+		if(!checkpoint.isEmpty())
+		{
+			if(timeLimit > 0)
+				throw new IllegalArgumentException("Cannot checkpoint a time-limited render");
+			f.setCheckpoint(new File(checkpoint), resume);
+		}
+		if(archive)
+			f.setArchive(f.outputFile(".fraw"));
+		f.setCompressionLevel(compression);
+		f.setCompressedStore(compressed);
+		f.setSamples(samples);
+
+		if(timeLimit > 0)
+		{
+			RenderResult r = f.generateWithin((long)(timeLimit * 1e9), TimeUnit.NANOSECONDS);
+			System.out.println("Tiles at Full Quality: " + r.getFullQualityTiles().size() + "/" + r.getTiles().size());
+		}
+		else if(orbits > 0)
+			f.generateDensity(orbits, nebula);
+		else if(guess)
+			f.generateGuessed(guarantee);
+		else if(extensions.length > 0)
+			f.generateExtended(extensions);
+		else if(pyramid)
+			f.generatePyramid(RenderEngine.getShared());
+		else if(coordinatorPort >= 0)
+			f.generateDistributed(coordinatorPort);
+		else if(boolVals[0] || compressed || samples > 1)
 			f.generateMultithreaded();
 		else
 			f.generate();
-		f.display();
-		f.saveImage();
+		if(!pyramid)
+		{
+			if(!headless)
+				f.display();
+			f.saveImage();
+			if(thumbnail > 0)
+				f.saveThumbnail(thumbnail);
+		}
+		f.deleteCheckpoint();
 
 		long endT = System.nanoTime();
 		long time = endT - startT;
@@ -255,11 +607,12 @@ public class Fractal
 		int i = 0;
 		Object[] hold;
 		Map<String,String> out = new HashMap<String,String>();
+		Set<String> seen = new HashSet<String>();
 		while (i < arguments.length)
 		{
 			if(!isValidTag(arguments[i]))
 				throw new IllegalArgumentException("Invalid Tag: " + arguments[i]);
-			hold = parseTag(arguments[i], arguments[i+1]);
+			hold = parseTag(arguments[i], i+1 < arguments.length ? arguments[i+1] : "", seen);
 			i += (int)hold[2];
 			out.put((String)hold[0], (String)hold[1]);
 		}
@@ -274,71 +627,71 @@ public class Fractal
 		return args.toArray(new String[0]);
 	}
 
-	private static Object[] parseTag(String tag, String nextArg) throws Exception
+	private static Object[] parseTag(String tag, String nextArg, Set<String> seen) throws Exception
 	{
 		tag = tag.toLowerCase();
 		switch(tag)
 		{
 		case "-x":
-			if(xLocSet)
+			if(seen.contains(tag))
 				throw repeatArg("x Location");
 			double tempX = Double.parseDouble(nextArg);
 			if (Double.isInfinite(tempX) || Double.isNaN(tempX))
 				throw new IllegalArgumentException("Invalid Argument for x-center: " + nextArg);
-			xLocSet = true;
-			return new Object[] {tag, String.valueOf(tempX), 2};
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
 		case "-y":
-			if(yLocSet)
+			if(seen.contains(tag))
 				throw repeatArg("y Location");
 			double tempY = Double.parseDouble(nextArg);
 			if (Double.isInfinite(tempY) || Double.isNaN(tempY))
 				throw new IllegalArgumentException("Invalid Argument for y-center: " + nextArg);
-			yLocSet = true;
-			return new Object[] {tag, String.valueOf(tempY), 2};
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
 		case "-z":
-			if(zoomSet)
+			if(seen.contains(tag))
 				throw repeatArg("zoom magnitude");
 			double tempZ = Double.parseDouble(nextArg);
 			if (Double.isInfinite(tempZ) || Double.isNaN(tempZ))
 				throw new IllegalArgumentException("Invalid Zoom Magnitude: " + nextArg);
-			zoomSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempZ), 2};
 		case "-e":
-			if(expSet)
+			if(seen.contains(tag))
 				throw repeatArg("exponent");
 			double tempE = Double.parseDouble(nextArg);
 			if(Double.isInfinite(tempE) || Double.isNaN(tempE))
 				throw new IllegalArgumentException("Invalid Exponent: " + nextArg);
-			expSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempE), 2};
 		case "-b":
-			if(bailSet)
+			if(seen.contains(tag))
 				throw repeatArg("bailout value");
 			double tempB = Double.parseDouble(nextArg);
 			if(Double.isInfinite(tempB) || Double.isNaN(tempB) || tempB <= 1.0)
 				throw new IllegalArgumentException("Invalid Bailout Value: " + nextArg);
-			bailSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempB), 2};
 		case "-cm":
-			if(colorMultSet)
+			if(seen.contains(tag))
 				throw repeatArg("hue multiplier value");
 			float tempCM = Float.parseFloat(nextArg);
 			if (Float.isNaN(tempCM) || Float.isInfinite(tempCM) || tempCM <= 0.0f)
 				throw new IllegalArgumentException("Invalid Color Multiplier Value: " + nextArg);
-			colorMultSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempCM), 2};
 		case "-ca":
-			if(colorAddSet)
+			if(seen.contains(tag))
 				throw repeatArg("color addition value");
 			float tempCA = Float.parseFloat(nextArg);
 			if (Float.isNaN(tempCA) || Float.isInfinite(tempCA))
 				throw new IllegalArgumentException("Invalid Color Addition Value: " + nextArg);
 			else if (tempCA >= 1.0f || tempCA < 0.0f)
 				throw new IllegalArgumentException("Color Addition Value must be between 0 and 1: " + tempCA);
-			colorAddSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempCA), 2};
 		case "-i":
-			if(maxItSet)
+			if(seen.contains(tag))
 				throw repeatArg("maximum number of iterations");
 			String tmp = nextArg.toLowerCase();
 			int tempI;
@@ -352,21 +705,172 @@ public class Fractal
 				tempI = Integer.parseInt(tmp.substring(1), 8);
 			else
 				tempI = Integer.parseInt(tmp, 10);
-			maxItSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempI), 2};
 		case "-r":
-			if(resMultSet)
+			if(seen.contains(tag))
 				throw repeatArg("resolution scale factor");
 			int tempR = Integer.parseInt(nextArg);
 			if (tempR <= 0)
 				throw new IllegalArgumentException("Invalid Resolution Multiplier: " + tempR);
-			resMultSet = true;
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(tempR), 2};
 		case "-t":
-			if(threadedSet)
+			if(seen.contains(tag))
 				throw repeatArg("multithreaded mode");
-			threadedSet = true;
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-f":
+			if(seen.contains(tag))
+				throw repeatArg("formula");
+			Formula.validate(nextArg);
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
+		case "-tl":
+			if(seen.contains(tag))
+				throw repeatArg("time limit");
+			double tempTL = Double.parseDouble(nextArg);
+			if(Double.isInfinite(tempTL) || Double.isNaN(tempTL) || tempTL <= 0.0)
+				throw new IllegalArgumentException("Invalid Time Limit: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempTL), 2};
+		case "-a":
+			if(seen.contains(tag))
+				throw repeatArg("archive mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-pc":
+			if(seen.contains(tag))
+				throw repeatArg("compression level");
+			int tempPC = Integer.parseInt(nextArg);
+			if(tempPC < 0 || tempPC > 9)
+				throw new IllegalArgumentException("Invalid Compression Level: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempPC), 2};
+		case "-hl":
+			if(seen.contains(tag))
+				throw repeatArg("headless mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-th":
+			if(seen.contains(tag))
+				throw repeatArg("thumbnail width");
+			int tempTH = Integer.parseInt(nextArg);
+			if(tempTH <= 0)
+				throw new IllegalArgumentException("Invalid Thumbnail Width: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempTH), 2};
+		case "-ex":
+			if(seen.contains(tag))
+				throw repeatArg("explorer mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-co":
+			if(seen.contains(tag))
+				throw repeatArg("coordinator port");
+			int tempCO = Integer.parseInt(nextArg);
+			if(tempCO < 0 || tempCO > 65535)
+				throw new IllegalArgumentException("Invalid Port: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempCO), 2};
+		case "-wk":
+			if(seen.contains(tag))
+				throw repeatArg("coordinator address");
+			int colon = nextArg.lastIndexOf(':');
+			int tempWK = colon > 0 ? Integer.parseInt(nextArg.substring(colon + 1)) : -1;
+			if(tempWK <= 0 || tempWK > 65535)
+				throw new IllegalArgumentException("Invalid Coordinator Address - Must be host:port: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
+		case "-ck":
+			if(seen.contains(tag))
+				throw repeatArg("checkpoint directory");
+			File tempCK = new File(nextArg);
+			if(nextArg.trim().isEmpty() || tempCK.exists() && !tempCK.isDirectory())
+				throw new IOException("Invalid Checkpoint Path - Must be a directory: " + tempCK.getAbsolutePath());
+			seen.add(tag);
+			return new Object[] {tag, tempCK.getAbsolutePath(), 2};
+		case "-rs":
+			if(seen.contains(tag))
+				throw repeatArg("resume mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-bb":
+			if(seen.contains(tag))
+				throw repeatArg("orbit count");
+			long tempBB = Long.parseLong(nextArg);
+			if(tempBB <= 0)
+				throw new IllegalArgumentException("Invalid Orbit Count: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempBB), 2};
+		case "-nb":
+			if(seen.contains(tag))
+				throw repeatArg("nebulabrot mode");
+			seen.add(tag);
 			return new Object[] {tag, String.valueOf(true), 1};
+		case "-sg":
+			if(seen.contains(tag))
+				throw repeatArg("solid guessing mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-gu":
+			if(seen.contains(tag))
+				throw repeatArg("guarantee mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-ei":
+			if(seen.contains(tag))
+				throw repeatArg("iteration limits to extend to");
+			parseLimits(nextArg);
+			seen.add(tag);
+			return new Object[] {tag, nextArg, 2};
+		case "-dz":
+			if(seen.contains(tag))
+				throw repeatArg("tile pyramid mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-cs":
+			if(seen.contains(tag))
+				throw repeatArg("compressed image mode");
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(true), 1};
+		case "-id":
+			if(seen.contains(tag))
+				throw repeatArg("interior threshold");
+			double tempID = Double.parseDouble(nextArg);
+			if(!(tempID > 0.0 && tempID < 1.0))
+				throw new IllegalArgumentException("Invalid Interior Threshold: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempID), 2};
+		case "-ic":
+			if(seen.contains(tag))
+				throw repeatArg("interior check interval");
+			int tempIC = Integer.parseInt(nextArg);
+			if(tempIC <= 0)
+				throw new IllegalArgumentException("Invalid Interior Check Interval: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempIC), 2};
+		case "-ss":
+			if(seen.contains(tag))
+				throw repeatArg("sample count");
+			int tempSS = Integer.parseInt(nextArg);
+			int side = (int)Math.round(Math.sqrt(tempSS));
+			if(tempSS <= 0 || side*side != tempSS)
+				throw new IllegalArgumentException("Invalid Sample Count - Must be a square number: " + nextArg);
+			seen.add(tag);
+			return new Object[] {tag, String.valueOf(tempSS), 2};
+		case "-sz":
+			if(seen.contains(tag))
+				throw repeatArg("image size");
+			parseSize(nextArg);
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
+		case "-cr":
+			if(seen.contains(tag))
+				throw repeatArg("crop rectangle");
+			parseCrop(nextArg);
+			seen.add(tag);
+			return new Object[] {tag, nextArg.trim(), 2};
 		case "-o":
 			File tempO = new File(nextArg);
 			if (!tempO.isDirectory())
@@ -376,6 +880,82 @@ public class Fractal
 		throw new IllegalArgumentException("Invalid Tag: " + tag);
 	}
 
+	/**
+	 * Parses a comma separated list of increasing iteration limits
+	 *
+	 * @param list	The list, which may be empty
+	 * @return		The limits
+	 * @throws IllegalArgumentException If a limit is not a positive integer, or not above the one before
+	 */
+	private static int[] parseLimits(String list)
+	{
+		if(list.trim().isEmpty())
+			return new int[0];
+		String[] parts = list.split(",");
+		int[] limits = new int[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			try {
+				limits[i] = Integer.parseInt(parts[i].trim());
+			}catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid Iteration Limit: " + parts[i], e);
+			}
+			if(limits[i] <= 0 || i > 0 && limits[i] <= limits[i-1])
+				throw new IllegalArgumentException("Invalid Iteration Limit: " + parts[i] + " - Limits must be positive and increasing");
+		}
+		return limits;
+	}
+
+	/**
+	 * Parses an image size given as {@code WIDTHxHEIGHT}
+	 *
+	 * @param size	The size
+	 * @return		The width and height
+	 * @throws IllegalArgumentException If the width or height is not a positive integer
+	 */
+	private static int[] parseSize(String size)
+	{
+		String[] parts = size.trim().toLowerCase().split("x");
+		try {
+			if(parts.length == 2)
+			{
+				int w = Integer.parseInt(parts[0].trim()), h = Integer.parseInt(parts[1].trim());
+				if(w > 0 && h > 0)
+					return new int[] {w, h};
+			}
+		}catch(NumberFormatException e)
+		{
+		}
+		throw new IllegalArgumentException("Invalid Image Size - Must be WIDTHxHEIGHT: " + size);
+	}
+
+	/**
+	 * Parses a crop rectangle given as {@code X,Y,WIDTH,HEIGHT}
+	 *
+	 * @param crop	The rectangle, which may be empty for no crop
+	 * @return		The rectangle, or {@code null}
+	 * @throws IllegalArgumentException If the corner is negative or the size is not positive
+	 */
+	private static Tile parseCrop(String crop)
+	{
+		if(crop.trim().isEmpty())
+			return null;
+		String[] parts = crop.split(",");
+		try {
+			if(parts.length == 4)
+			{
+				int x = Integer.parseInt(parts[0].trim()), y = Integer.parseInt(parts[1].trim());
+				int w = Integer.parseInt(parts[2].trim()), h = Integer.parseInt(parts[3].trim());
+				if(x >= 0 && y >= 0 && w > 0 && h > 0)
+					return new Tile(x, y, w, h);
+			}
+		}catch(NumberFormatException e)
+		{
+		}
+		throw new IllegalArgumentException("Invalid Crop Rectangle - Must be X,Y,WIDTH,HEIGHT: " + crop);
+	}
+
 	private static boolean isValidTag(String arg)
 	{
 		for(String tag : validTags)
@@ -409,18 +989,53 @@ public class Fractal
 
 
 	private BufferedImage img;
-	private JFrame frame;
-	private JPanel panel;
+	/** Holds the image instead of {@link #img} when the image is kept compressed */
+	private TileStore store;
+	private boolean storeCompressed;
+	/** Number of samples along each axis of a pixel of multithreaded generations */
+	private int samples = 1;
 	private File out;
-
-	private final int height, width, resFactor, maxIteration;
-	private final double xCenter, xMax, xMin;
-	private final double yCenter, yMax, yMin;
+	private File archive;
+	private File checkpointDir;
+	private boolean resume;
+	private Checkpoint checkpoint;
+	/** Added to the name of the saved image, to tell density renders apart */
+	private String imageKind = "";
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	/** The size of the generated image, which is that of the crop if the image is cropped */
+	private final int height, width, maxIteration, fixedIterations;
+	private final DDComplex center;
 	private final double zoom;
 	private final double exp, bail, bail2;
 	private final float colorConstant, colorFactor;
-
-	private int pixels, percent;
+	private final Precision precision;
+	private final Formula formula;
+	private final View view;
+	private final Palette palette;
+
+	/** The number of pixels of the current generation completed so far */
+	private long pixels;
+	private int percent;
+	/** The plan of a generation, whose predicted tile costs give the remaining time */
+	private TilePlan plan;
+	private double plannedCost, completedCost;
+	private long planStart;
+
+	/** Edge length of the blocks that each coarse preview sample covers */
+	private static final int PREVIEW_BLOCK = 8;
+	/** Edge length of the tiles that are refined after the preview, a multiple of {@link #PREVIEW_BLOCK} */
+	private static final int REFINE_TILE = 128;
+	/** Number of rows in each archived or checkpointed tile of a single threaded generation */
+	private static final int ARCHIVE_BAND = 64;
+	/** Edge length of the cells that restored tiles are indexed by when resuming */
+	private static final int RESTORED_CELL = 256;
+	/** Edge length of the tiles that are handed out to worker processes */
+	private static final int DISTRIBUTED_TILE = 128;
+	/** Number of seconds a worker keeps trying to reach its coordinator */
+	private static final int WORKER_PATIENCE = 30;
+	/** Number of iterations between checks of the derivative when detecting interior pixels */
+	private static final int DEFAULT_INTERIOR_INTERVAL = 16;
 
 	public Fractal(double xLocation, double yLocation, double zoomMag, double exponent, double bailout,
 			float colorAddition, float colorMult, int resMult, File outputLocation)
@@ -431,305 +1046,1008 @@ public class Fractal
 	public Fractal(double xLocation, double yLocation, double zoomMag, double exponent, double bailout,
 			float colorAddition, float colorMult, int resMult, int maxIterate, File outputLocation)
 	{
-		xCenter = xLocation;
-		yCenter = yLocation;
+		this(new DDComplex(xLocation, yLocation), zoomMag, exponent, bailout,
+				colorAddition, colorMult, resMult, maxIterate, outputLocation);
+	}
+
+	/**
+	 * Creates a fractal centered on a point given in double-double precision,
+	 * which keeps the center exact for zooms past the resolution of a double
+	 */
+	public Fractal(DDComplex centerLocation, double zoomMag, double exponent, double bailout,
+			float colorAddition, float colorMult, int resMult, int maxIterate, File outputLocation)
+	{
+		this(Formula.MANDELBROT, centerLocation, zoomMag, exponent, bailout,
+				colorAddition, colorMult, resMult, maxIterate, outputLocation);
+	}
+
+	public Fractal(Formula formula, DDComplex centerLocation, double zoomMag, double exponent, double bailout,
+			float colorAddition, float colorMult, int resMult, int maxIterate, File outputLocation)
+	{
+		this(formula, centerLocation, zoomMag, exponent, bailout, colorAddition, colorMult,
+				1920*resMult, 1080*resMult, null, maxIterate, outputLocation);
+	}
+
+	/**
+	 * Creates a fractal of any size, whose span of the plane is two units tall
+	 * at a zoom magnitude of 0 and has the aspect ratio of the image, perhaps
+	 * generating only a rectangle of it
+	 *
+	 * @param frameWidth	The width of the full image in pixels
+	 * @param frameHeight	The height of the full image in pixels
+	 * @param crop			The rectangle of the full image to generate and save, or {@code null} for all of it
+	 * @throws IllegalArgumentException If the size is not positive, or the crop does not lie inside the image
+	 */
+	public Fractal(Formula formula, DDComplex centerLocation, double zoomMag, double exponent, double bailout,
+			float colorAddition, float colorMult, int frameWidth, int frameHeight, Tile crop, int maxIterate,
+			File outputLocation)
+	{
+		this.formula = formula;
+		center = centerLocation;
 		zoom = Math.pow(2, zoomMag);
 
 		exp = exponent;
 		bail = bailout;
 		bail2 = Math.pow(bail, 2);
 
-		xMax = xCenter + 16d/9d / zoom;
-		xMin = xCenter - 16d/9d / zoom;
-		yMax = yCenter - 1d / zoom;
-		yMin = yCenter + 1d / zoom;
-
+		fixedIterations = Math.max(maxIterate, 0);
 		if(maxIterate <= 0)
-			maxIteration = 75 + (int)Math.round(5*Math.pow(1.85, Math.log1p(zoom*2)));
+			maxIteration = defaultMaxIteration(zoom);
 		else
 			maxIteration = maxIterate;
 
 		colorConstant = colorAddition;
 		colorFactor = colorMult;
 
-		resFactor = resMult;
+		View frame = new View(center, zoom, (double)frameWidth/frameHeight, frameWidth, frameHeight,
+				exp, bail, maxIteration);
+		view = crop == null ? frame : frame.crop(crop.getX(), crop.getY(), crop.getWidth(), crop.getHeight());
+		width = view.getWidth();
+		height = view.getHeight();
 
-		width = 1920*resFactor;
-		height = 1080*resFactor;
+		precision = view.selectPrecision();
+		palette = new Palette(colorFactor, colorConstant, maxIteration);
 
 		out = outputLocation.getAbsoluteFile();
 
 		pixels = percent = 0;
 	}
 
+	/**
+	 * Gives the maximum iteration used when none is given, which grows with the zoom
+	 *
+	 * @param zoom	The zoom of the view, 2<sup>zoom magnitude</sup>
+	 * @return		The maximum iteration for the zoom
+	 */
+	static int defaultMaxIteration(double zoom)
+	{
+		return 75 + (int)Math.round(5*Math.pow(1.85, Math.log1p(zoom*2)));
+	}
+
+	/**
+	 * Opens an interactive window on the shared render engine, starting at
+	 * the view of this fractal
+	 *
+	 * @see Explorer
+	 */
+	public void explore()
+	{
+		new Explorer(RenderEngine.getShared(), formula, center, zoom, width, height,
+				exp, bail, colorFactor, colorConstant, fixedIterations).show();
+	}
+
+	/**
+	 * Gives the image of this fractal as a {@link LazyRender}, which renders
+	 * each of its tiles only when it is first read. Nothing is generated, so
+	 * the image can be far larger than could ever be held at once
+	 *
+	 * @param engine	The engine to render the tiles on
+	 * @return			The image
+	 */
+	public LazyRender lazyImage(RenderEngine engine)
+	{
+		return new LazyRender(engine, formula, view, palette);
+	}
+
+	/**
+	 * Gives the tiles of this fractal as a {@link TilePublisher}, which renders
+	 * them only as fast as its subscribers take them. Nothing is generated
+	 * until a subscriber asks for tiles
+	 *
+	 * @param engine	The engine to render the tiles on
+	 * @return			The publisher
+	 */
+	public TilePublisher publishTiles(RenderEngine engine)
+	{
+		return new TilePublisher(engine, request(RenderRequest.DEFAULT_TILE_SIZE, null).withSamples(samples));
+	}
+
+	/**
+	 * Sets a file to stream the smooth iteration values of every following
+	 * generation into, as an {@link IterationArchive}
+	 *
+	 * @param file	The archive file, or {@code null} to stop archiving
+	 */
+	public void setArchive(File file)
+	{
+		archive = file;
+	}
+
+	/**
+	 * Sets a directory to checkpoint the completed tiles of every following
+	 * generation to, except for time-limited ones
+	 *
+	 * @param dir		The checkpoint directory, or {@code null} to stop checkpointing
+	 * @param resume	Whether the next generation skips the tiles already in the directory
+	 * @see Checkpoint
+	 */
+	public void setCheckpoint(File dir, boolean resume)
+	{
+		checkpointDir = dir;
+		this.resume = resume;
+	}
+
+	/**
+	 * Deletes the checkpoint of the last generation, once its image is safe
+	 *
+	 * @throws IOException If the checkpoint cannot be deleted
+	 */
+	public void deleteCheckpoint() throws IOException
+	{
+		if(checkpoint == null)
+			return;
+		checkpoint.delete();
+		checkpoint = null;
+	}
+
+	/**
+	 * Sets the deflate level that {@link #saveImage()} compresses the image with
+	 *
+	 * @param level	The deflate level, from 0 to 9 or -1 for the default
+	 * @throws IllegalArgumentException If the level is invalid
+	 */
+	public void setCompressionLevel(int level)
+	{
+		if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Invalid Compression Level: " + level);
+		compressionLevel = level;
+	}
+
+	/**
+	 * Sets whether {@link #generateMultithreaded(RenderEngine)} keeps the image
+	 * as compressed tiles instead of one full image
+	 *
+	 * @param compressed	Whether to keep the image compressed
+	 * @see TileStore
+	 */
+	public void setCompressedStore(boolean compressed)
+	{
+		storeCompressed = compressed;
+	}
+
+	/**
+	 * Sets the number of samples along each axis of a pixel that
+	 * multithreaded generations and tile pyramids average each pixel from
+	 *
+	 * @param samples	The number of samples along each axis, 1 for none
+	 * @throws IllegalArgumentException If the number of samples is not positive
+	 * @see RenderRequest#withSamples(int)
+	 */
+	public void setSamples(int samples)
+	{
+		if(samples <= 0)
+			throw new IllegalArgumentException("Invalid Sample Count: " + samples);
+		this.samples = samples;
+	}
+
 	public void generate()
 	{
 		System.out.println("Begin Generation");
+		logPrecision();
 
 		img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
-		int iterations;
-		double mag;
+		float[] smooth = new float[width];
+		int[] rgb = new int[width];
 
-		double xScale = (xMax-xMin)/width;
-		double yScale = (yMax-yMin)/height;
+		IterationArchiveWriter writer = openArchive();
+		Checkpoint checkpoint = openCheckpoint();
+		float[] band = writer == null && checkpoint == null ? null : new float[width*ARCHIVE_BAND];
 
-		Complex p1 = new Complex(exp, 0.);
-		Complex p2 = new Complex(1./exp, 0.);
-		Complex z0, z;
-		float hue;
-
-		System.out.println("Evaluating and Coloring Pixels...");
-		for(int x = 0; x < width; x++)
-		{
-			for(int y = 0; y < height; y++)
+		try {
+			restoreCheckpoint(checkpoint, writer);
+			List<Tile> bands = new ArrayList<Tile>((height + ARCHIVE_BAND - 1)/ARCHIVE_BAND);
+			for(int y0 = 0; y0 < height; y0 += ARCHIVE_BAND)
+				bands.add(new Tile(0, y0, width, Math.min(ARCHIVE_BAND, height - y0)));
+			Set<Tile> remaining = new HashSet<Tile>(remainingTiles(bands, checkpoint));
+
+			System.out.println("Evaluating and Coloring Pixels...");
+			for(Tile tile : bands)
 			{
-				z0 = new Complex(x*xScale + xMin, y*yScale + yMin);
-				z = new Complex();
+				if(!remaining.contains(tile))
+					continue;
+				int y0 = tile.getY();
 
-				for(iterations = 0; iterations < maxIteration && z.Re()*z.Re() + z.Im()*z.Im() < bail2; iterations++)
+				for(int y = y0; y < y0 + tile.getHeight(); y++)
 				{
-					z = z.pow(p1).add(z0);
+					iterate(0, y, width, 1, smooth);
+					color(smooth, rgb);
+					img.setRGB(0, y, width, 1, rgb, 0, width);
+					if(band != null)
+						System.arraycopy(smooth, 0, band, (y - y0)*width, width);
+					incPixels(width);
 				}
-				mag = z.subtract(z0).pow(p2).multiply(Complex.NEGATIVE_ONE).abs();
 
-				hue = (float)( (iterations+(bail2 - mag)/(bail2 - bail))/maxIteration ) * colorFactor + colorConstant;
-				img.setRGB(x, y, Color.HSBtoRGB(hue, 1, 1));
-
-				incPixels();
+				if(writer != null)
+					writer.write(tile, band);
+				if(checkpoint != null)
+					checkpoint.record(tile, band);
 			}
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException("Exception Writing Archive:\t" + e.getMessage(), e);
+		}finally
+		{
+			closeArchive(writer);
+			closeCheckpoint(checkpoint);
 		}
 		System.out.println("Complete");
 	}
 
-	public void generateMultithreaded() throws Exception
+	private IterationArchiveWriter openArchive()
 	{
-		System.out.println("Begin Multithreaded Generation");
-
-		int proc = Runtime.getRuntime().availableProcessors();
-
-		while(width % proc != 0 && height % proc != 0)
-			proc--;
-
-		int numParts = proc*proc;
-
-		if(proc == 1)
+		if(archive == null)
+			return null;
+		System.out.println("Archiving Iterations to " + archive);
+		try {
+			return new IterationArchiveWriter(archive, formula, view, precision);
+		}catch(IOException e)
 		{
-			generate();
+			throw new UncheckedIOException("Exception Creating Archive:\t" + e.getMessage() + "\t" + archive, e);
+		}
+	}
+
+	private static void closeArchive(IterationArchiveWriter writer)
+	{
+		if(writer == null)
 			return;
+		try {
+			writer.close();
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException("Exception Writing Archive:\t" + e.getMessage(), e);
 		}
+	}
 
-		int partWidth = width/proc;
-		int partHeight = height/proc;
+	/** Opens the checkpoint of a generation, keeping it for {@link #deleteCheckpoint()} */
+	private Checkpoint openCheckpoint()
+	{
+		checkpoint = null;
+		if(checkpointDir == null)
+			return null;
+		try {
+			checkpoint = Checkpoint.open(checkpointDir, formula, view, precision, resume);
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException("Exception Opening Checkpoint:\t" + e.getMessage() + "\t" + checkpointDir, e);
+		}
+		if(resume)
+			System.out.println("Resuming from " + checkpointDir + " with " + checkpoint.getRestoredTiles().size()
+					+ " Completed Tiles");
+		else
+			System.out.println("Checkpointing Tiles to " + checkpointDir);
+		return checkpoint;
+	}
 
-		double[] xLower = new double[numParts];
-		double[] xUpper = new double[numParts];
-		double[] yLower = new double[numParts];
-		double[] yUpper = new double[numParts];
-		double xRange = xMax-xMin;
-		double yRange = yMax-yMin;
+	/** Colors the tiles restored from a checkpoint into the image, and archives them */
+	private void restoreCheckpoint(Checkpoint checkpoint, final IterationArchiveWriter writer)
+	{
+		if(checkpoint == null || checkpoint.getRestoredTiles().isEmpty())
+			return;
+		try {
+			checkpoint.restore(view, new TileListener() {
+				@Override
+				public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+				{
+					argb = new int[tile.getArea()];
+					palette.color(smooth, argb, argb.length);
+					if(img == null)
+						store.tileCompleted(job, tile, smooth, argb);
+					else
+						img.setRGB(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), argb, 0, tile.getWidth());
+					if(writer != null)
+						writer.tileCompleted(job, tile, smooth, argb);
+				}
+			});
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException("Exception Reading Checkpoint:\t" + e.getMessage(), e);
+		}
+	}
 
-		double xFactor = xRange / (1d*proc);
-		double yFactor = yRange / (1d*proc);
+	/**
+	 * Gives the tiles that are not already in a checkpoint, and counts the
+	 * pixels of the rest as done. A tile also counts as done if the checkpoint
+	 * holds a tile around it, or tiles that cover it, since the checkpoint may
+	 * be of a generation that split its tiles differently. A tile that is only
+	 * partly covered is rendered again whole, and none of its pixels are
+	 * counted until it completes
+	 * <p>
+	 * The restored tiles are indexed by the cells of a coarse grid that they
+	 * cross, so each tile is only checked against the restored tiles near it
+	 *
+	 * @return	The tiles not covered by the checkpoint, in their order
+	 */
+	private List<Tile> remainingTiles(List<Tile> tiles, Checkpoint checkpoint)
+	{
+		if(checkpoint == null || checkpoint.getRestoredTiles().isEmpty())
+			return tiles;
+		Set<Tile> restored = checkpoint.getRestoredTiles();
+		Map<Long,List<Tile>> cells = new HashMap<Long,List<Tile>>();
+		for(Tile r : restored)
+			for(long cell : cellsOf(r))
+			{
+				List<Tile> inCell = cells.get(cell);
+				if(inCell == null)
+					cells.put(cell, inCell = new ArrayList<Tile>());
+				inCell.add(r);
+			}
 
-		for(int x = 0; x < proc; x++)
+		List<Tile> remaining = new ArrayList<Tile>(tiles.size());
+		Set<Tile> near = new HashSet<Tile>();
+		long done = 0;
+		for(Tile t : tiles)
 		{
-			for(int y = 0; y < proc; y++)
+			if(restored.contains(t))
 			{
-				xLower[y*proc+x] = xMin + xFactor*(x+0);
-				xUpper[y*proc+x] = xMin + xFactor*(x+1);
-				yLower[y*proc+x] = yMin + yFactor*(y+0);
-				yUpper[y*proc+x] = yMin + yFactor*(y+1);
+				done += t.getArea();
+				continue;
 			}
+			near.clear();
+			for(long cell : cellsOf(t))
+			{
+				List<Tile> inCell = cells.get(cell);
+				if(inCell != null)
+					near.addAll(inCell);
+			}
+			if(covered(t, near))
+				done += t.getArea();
+			else
+				remaining.add(t);
 		}
+		incPixels(done);
+		return remaining;
+	}
 
-		System.out.println("Setting up Threads");
-		ExecutorService pool = Executors.newFixedThreadPool(proc);
-		ArrayList<Callable<Object[]>> tasks = new ArrayList<Callable<Object[]>>(numParts);
-
-		for(int x = 0; x < proc; x++)
-			for(int y = 0; y < proc; y++)
-				tasks.add(new ParallelFractal(
-						xLower[y*proc+x], xUpper[y*proc+x],
-						yLower[y*proc+x], yUpper[y*proc+x],
-						x, y, partWidth, partHeight));
-		tasks.trimToSize();
-		xLower = xUpper = yLower = yUpper = null;
+	/** Gives the keys of the cells of the restored tile index that a tile crosses */
+	private static List<Long> cellsOf(Tile t)
+	{
+		List<Long> keys = new ArrayList<Long>();
+		for(long cy = t.getY()/RESTORED_CELL; cy <= (t.getY() + t.getHeight() - 1)/RESTORED_CELL; cy++)
+			for(long cx = t.getX()/RESTORED_CELL; cx <= (t.getX() + t.getWidth() - 1)/RESTORED_CELL; cx++)
+				keys.add(cy << 32 | cx);
+		return keys;
+	}
 
-		List<Future<Object[]>> parts = null;
+	/**
+	 * Tells whether restored tiles cover every pixel of a tile. A checkpoint
+	 * resumed with a different split holds tiles that nest or overlap, so
+	 * their areas cannot just be added up. Once they are large enough to
+	 * cover the tile, the pixels they cover are marked and counted instead
+	 */
+	private static boolean covered(Tile t, Collection<Tile> restored)
+	{
+		List<Tile> parts = new ArrayList<Tile>();
+		long area = 0;
+		for(Tile r : restored)
+		{
+			int x0 = Math.max(t.getX(), r.getX()), x1 = Math.min(t.getX() + t.getWidth(), r.getX() + r.getWidth());
+			int y0 = Math.max(t.getY(), r.getY()), y1 = Math.min(t.getY() + t.getHeight(), r.getY() + r.getHeight());
+			if(x0 >= x1 || y0 >= y1)
+				continue;
+			if(x1 - x0 == t.getWidth() && y1 - y0 == t.getHeight())
+				return true;
+			parts.add(new Tile(x0, y0, x1 - x0, y1 - y0));
+			area += (long)(x1 - x0)*(y1 - y0);
+		}
+		if(area < t.getArea())
+			return false;
+
+		BitSet pixels = new BitSet(t.getArea());
+		for(Tile p : parts)
+			for(int y = p.getY() - t.getY(); y < p.getY() - t.getY() + p.getHeight(); y++)
+				pixels.set(y*t.getWidth() + p.getX() - t.getX(), y*t.getWidth() + p.getX() - t.getX() + p.getWidth());
+		return pixels.cardinality() == t.getArea();
+	}
 
+	private static void closeCheckpoint(Checkpoint checkpoint)
+	{
+		if(checkpoint == null)
+			return;
 		try {
-			System.out.println("Evaluating...");
-			parts = pool.invokeAll(tasks);
-		}catch(Exception e) {e.printStackTrace(); System.exit(1);}
-		tasks = null;
+			checkpoint.close();
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException("Exception Writing Checkpoint:\t" + e.getMessage(), e);
+		}
+	}
 
-		List<Object[]> output = new ArrayList<Object[]>(parts.size());
+	private void logPrecision()
+	{
+		double spacing = view.getPixelSpacing();
+
+		System.out.println("Precision Tier: " + precision + " (pixel spacing " + spacing + ")");
+		if(precision == Precision.EXTENDED && !formula.hasExtendedKernel(view))
+			System.out.println("Warning: No extended precision kernel for " + formula.getName() + " with exponent " + exp
+					+ ", iterating in double precision"
+					+ " - adjacent pixels may not be resolved at this zoom");
+		else if(!precision.resolves(spacing, view.getMagnitude(), view.getMaxIteration()))
+			System.out.println("Warning: Zoom exceeds extended precision"
+					+ " - adjacent pixels may not be resolved at this zoom");
+	}
+
+	/**
+	 * Evaluates the block of {@code w}&times;{@code h} pixels at ({@code x0},&nbsp;{@code y0})
+	 * into row-major smooth iteration values, using the precision tier chosen for this view
+	 */
+	private void iterate(int x0, int y0, int w, int h, float[] smooth)
+	{
+		formula.iterate(precision, view, x0, y0, w, h, smooth);
+	}
+
+	private void color(float[] smooth, int[] rgb)
+	{
+		palette.color(smooth, rgb, rgb.length);
+	}
 
-		for(Future<Object[]> i : parts)
-			output.add(i.get());
+	/**
+	 * Gives a request for the tiles of this image that are not in a checkpoint,
+	 * at the precision chosen for this view
+	 *
+	 * @param tileSize		The edge length of the tiles
+	 * @param checkpoint	The checkpoint of the generation, or {@code null}
+	 * @return				The request
+	 */
+	private RenderRequest request(int tileSize, Checkpoint checkpoint)
+	{
+		return new RenderRequest(formula, view, palette, precision,
+				remainingTiles(Tile.grid(width, height, tileSize), checkpoint), 0, Long.MAX_VALUE);
+	}
 
-		pool.shutdownNow();
-		pool = null;
-		parts = null;
+	public void generateMultithreaded() throws Exception
+	{
+		generateMultithreaded(RenderEngine.getShared());
+	}
 
-		int[][] color = new int[width][height];
-		int[][] rgb;
-		int x0, y0;
+	/**
+	 * Generates the image on the workers of a render engine, which may be
+	 * rendering other images at the same time
+	 * <p>
+	 * The view is probed at a low resolution first, and its tiles are started
+	 * from the most to the least expensive, with the most expensive split
+	 * finer, so that the render does not wait on one slow tile at the end.
+	 * If the image is kept compressed, each tile is compressed into a
+	 * {@link TileStore} as it completes, and the full image is never held
+	 *
+	 * @see TilePlan
+	 * @param engine	The engine to render on
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the render fails
+	 */
+	public void generateMultithreaded(RenderEngine engine) throws InterruptedException, ExecutionException
+	{
+		System.out.println("Begin Multithreaded Generation");
+		logPrecision();
 
-		for(Object[] i : output)
+		final IterationArchiveWriter writer = openArchive();
+		final Checkpoint checkpoint = openCheckpoint();
+		try {
+			System.out.println("Probing Tile Costs...");
+			TilePlan probed = TilePlan.probe(engine, formula, view, Tile.grid(width, height, RenderRequest.DEFAULT_TILE_SIZE));
+			List<Tile> tiles = remainingTiles(probed.getTiles(), checkpoint);
+			startPlan(probed, tiles);
+
+			System.out.println("Evaluating " + tiles.size() + " Tiles on " + engine.getThreadCount() + " Threads...");
+			final TileStore stored = storeCompressed ? new TileStore(width, height, false) : null;
+			RenderRequest request = new RenderRequest(formula, view, palette, precision, tiles, 0, Long.MAX_VALUE)
+					.withSamples(samples);
+			if(samples > 1)
+				System.out.println("Averaging " + samples + "x" + samples + " Samples per Pixel at "
+						+ request.getPrecision() + " Precision");
+			TileListener listener = new TileListener() {
+				@Override
+				public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+				{
+					if(stored != null)
+						stored.tileCompleted(job, tile, smooth, argb);
+					if(writer != null)
+						writer.tileCompleted(job, tile, smooth, argb);
+					if(checkpoint != null)
+						checkpoint.record(tile, smooth);
+					incPixels(tile);
+				}
+			};
+			store = stored;
+			if(stored == null)
+				img = engine.submit(request, listener).get();
+			else
+			{
+				img = null;
+				engine.stream(request, listener).get();
+			}
+			restoreCheckpoint(checkpoint, writer);
+			if(stored != null)
+				System.out.println("Stored " + stored.getTileCount() + " Tiles in " + stored.getCompressedBytes()/1024 + "KB ("
+						+ Math.round(100.0*stored.getCompressedBytes()/(4.0*width*height)) + "% of the Full Image)");
+		}finally
 		{
-			x0 = (Integer)i[0]*partWidth;
-			y0 = (Integer)i[1]*partHeight;
-			rgb = (int[][])i[2];
-			for(int x = 0; x < partWidth; x++)
-				for(int y = 0; y < partHeight; y++)
-					color[x0+x]
-							[y0+y] =
-							rgb[x]
-									[y];
+			closeArchive(writer);
+			closeCheckpoint(checkpoint);
+			plan = null;
 		}
 
-		output = null;
-		rgb = null;
-
-		img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		System.out.println("Complete");
+	}
 
-		System.out.println("Coloring Image...");
-		for(int x = 0; x < width; x++)
-			for(int y = 0; y < height; y++)
-				img.setRGB(x, y, color[x][y]);
+	/**
+	 * Generates the image on worker processes, which connect to a
+	 * {@link TileCoordinator} on the given port
+	 *
+	 * @param port	The port to listen for workers on, or 0 for any free port
+	 * @throws IOException If the port cannot be bound
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the archive cannot be written
+	 */
+	public void generateDistributed(int port) throws IOException, InterruptedException, ExecutionException
+	{
+		System.out.println("Begin Distributed Generation");
+		logPrecision();
+
+		final IterationArchiveWriter writer = openArchive();
+		final Checkpoint checkpoint = openCheckpoint();
+		try(TileCoordinator coordinator = new TileCoordinator(request(DISTRIBUTED_TILE, checkpoint), port)) {
+			System.out.println("Waiting for Workers on Port " + coordinator.getPort() + "...");
+			img = coordinator.render(new TileListener() {
+				@Override
+				public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+				{
+					if(writer != null)
+						writer.tileCompleted(job, tile, smooth, argb);
+					if(checkpoint != null)
+						checkpoint.record(tile, smooth);
+					incPixels(tile.getArea());
+				}
+			});
+			restoreCheckpoint(checkpoint, writer);
+		}finally
+		{
+			closeArchive(writer);
+			closeCheckpoint(checkpoint);
+		}
 
 		System.out.println("Complete");
 	}
 
-	private synchronized void incPixels()
+	/**
+	 * Renders tiles on the shared render engine for the coordinator at the
+	 * given address, waiting a while for it to start
+	 *
+	 * @param host	The host of the coordinator
+	 * @param port	The port of the coordinator
+	 * @throws IOException If the coordinator cannot be reached, or the connection fails
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for the coordinator
+	 */
+	public static void work(String host, int port) throws IOException, InterruptedException
 	{
-		pixels++;
-		if((int)((double)pixels/(double)(width*height)*100.) > percent)
-			System.out.println("Percent Complete: " + (++percent) + "%");
+		long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(WORKER_PATIENCE);
+		TileWorker worker = new TileWorker(RenderEngine.getShared());
+		System.out.println("Connecting to Coordinator at " + host + ":" + port + "...");
+		for(;;)
+		{
+			try {
+				int tiles = worker.run(host, port);
+				System.out.println("Render Complete, Rendered " + tiles + " Tiles");
+				return;
+			}catch(ConnectException e)
+			{
+				if(System.nanoTime() > giveUp)
+					throw e;
+				Thread.sleep(500);
+			}
+		}
 	}
 
-	private final class ParallelFractal implements Callable<Object[]>
+	/**
+	 * Generates the image by solid guessing, iterating only the pixels near
+	 * changes in iteration count and filling in the rest
+	 *
+	 * @param guarantee	Whether to iterate the border of every area before filling it
+	 * @see SolidGuesser
+	 */
+	public void generateGuessed(boolean guarantee)
 	{
-		private final double xMin, xMax, yMin, yMax;
-		private final double xScale, yScale;
-		private final int width, height, xPart, yPart;
-		private final Complex p1, p2;
+		System.out.println("Begin Solid Guessing Generation" + (guarantee ? " with Guarantee" : ""));
+		logPrecision();
 
-		ParallelFractal(double xMin, double xMax, double yMin, double yMax, int xPart, int yPart, int width, int height)
-		{
-			this.xMin = xMin;
-			this.xMax = xMax;
-			this.yMin = yMin;
-			this.yMax = yMax;
-			this.xPart = xPart;
-			this.yPart = yPart;
-			this.width = width;
-			this.height = height;
+		SolidGuesser guesser = new SolidGuesser(formula, view, precision, guarantee);
+		float[] smooth = guesser.render();
+		System.out.println("Iterated " + guesser.getComputedPixels() + " of " + (long)width*height + " Pixels ("
+				+ Math.round(100.0*guesser.getComputedPixels()/((long)width*height)) + "%)");
+
+		img = colorImage(smooth, palette);
+
+		System.out.println("Complete");
+	}
+
+	/**
+	 * Generates the image, then raises its maximum iteration to each of the
+	 * given limits in turn, continuing only the orbits of the pixels that have
+	 * not escaped. The image at every limit but the last is saved as it is reached
+	 *
+	 * @param limits	The increasing iteration limits to extend the image to
+	 * @throws IOException If an image cannot be saved
+	 * @see ExtendableRender
+	 */
+	public void generateExtended(int[] limits) throws IOException
+	{
+		System.out.println("Begin Extendable Generation");
+		System.out.println("Precision Tier: " + Precision.DOUBLE + " (pixel spacing " + view.getPixelSpacing() + ")");
 
-			xScale = (this.xMax-this.xMin)/this.width;
-			yScale = (this.yMax-this.yMin)/this.height;
+		ExtendableRender render = new ExtendableRender(formula, view);
+		long start = System.nanoTime();
+		img = colorImage(render.render(), palette);
+		System.out.println("Iterated to " + maxIteration + ": " + render.getUnresolved() + " Pixels Unresolved ("
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
 
-			p1 = new Complex(exp, 0.);
-			p2 = new Complex(1./exp, 0.);
+		for(int limit : limits)
+		{
+			saveImage();
+
+			start = System.nanoTime();
+			float[] smooth = render.extend(limit);
+			img = colorImage(smooth, new Palette(colorFactor, colorConstant, limit));
+			imageKind = " extended=" + limit;
+			System.out.println("Extended to " + limit + ": " + render.getUnresolved() + " Pixels Unresolved ("
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
 		}
 
-		@Override
-		public Object[] call() throws Exception
+		System.out.println("Complete");
+	}
+
+	/** Colors the row-major smooth iteration values of the whole image */
+	private BufferedImage colorImage(float[] smooth, Palette palette)
+	{
+		BufferedImage colored = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		float[] row = new float[width];
+		int[] rgb = new int[width];
+		for(int y = 0; y < height; y++)
 		{
-			int[][] rgb = new int[width][height];
-			int iterations;
-			double mag;
-			Complex z0, z;
+			System.arraycopy(smooth, y*width, row, 0, width);
+			palette.color(row, rgb, width);
+			colored.setRGB(0, y, width, 1, rgb, 0, width);
+		}
+		return colored;
+	}
 
-			float hue;
-			for(int x = 0; x < width; x++)
-			{
-				for(int y = 0; y < height; y++)
-				{
-					z0 = new Complex(x*xScale + xMin, y*yScale + yMin);
-					z = new Complex();
+	/**
+	 * Generates the orbit density of the Mandelbrot formula instead of its
+	 * escape times, on one thread per processor
+	 *
+	 * @param orbits	The number of random points to trace the orbits of
+	 * @param nebula	Whether to count orbits into three channels by escape time
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws IllegalStateException If the formula is not the Mandelbrot formula
+	 * @see Buddhabrot
+	 */
+	public void generateDensity(long orbits, boolean nebula) throws InterruptedException
+	{
+		if(!(formula instanceof Mandelbrot))
+			throw new IllegalStateException("Density renders are only supported for the Mandelbrot formula");
 
-					for(iterations = 0; iterations < maxIteration && z.Re()*z.Re() + z.Im()*z.Im() < bail2; iterations++)
-					{
-						z = z.pow(p1).add(z0);
-					}
-					mag = z.subtract(z0).pow(p2).multiply(Complex.NEGATIVE_ONE).abs();
+		System.out.println("Begin Density Generation");
+		int[] limits = nebula ? new int[] {maxIteration, Math.max(1, maxIteration/10), Math.max(1, maxIteration/100)}
+				: new int[] {maxIteration};
+		int threads = Runtime.getRuntime().availableProcessors();
 
-					hue = (float)( (iterations+(bail2 - mag)/(bail2 - bail))/maxIteration );
-					hue = hue * colorFactor + colorConstant;
+		System.out.println("Tracing " + orbits + " Orbits on " + threads + " Threads...");
+		img = new Buddhabrot(view, orbits, limits, 0L).render(threads);
+		imageKind = (nebula ? " Nebulabrot" : " Buddhabrot") + " orbits=" + orbits;
 
-					rgb[x][y] = Color.HSBtoRGB(hue, 1, 1);
+		System.out.println("Complete");
+	}
 
-					incPixels();
-				}
+	/**
+	 * Generates the image as a Deep Zoom tile pyramid next to where the image
+	 * would be saved, streaming the tiles of every level to disk as they are
+	 * completed without ever holding the whole image
+	 *
+	 * @param engine	The engine to render on
+	 * @return			The descriptor of the pyramid
+	 * @throws IOException If a tile cannot be written
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the render fails
+	 * @see TilePyramid
+	 */
+	public File generatePyramid(RenderEngine engine) throws IOException, InterruptedException, ExecutionException
+	{
+		System.out.println("Begin Tile Pyramid Generation");
+		logPrecision();
+
+		File dzi = outputFile(".dzi");
+		final TilePyramid pyramid = new TilePyramid(dzi, width, height, compressionLevel);
+		List<Tile> tiles = pyramid.getTiles();
+
+		System.out.println("Evaluating " + tiles.size() + " Tiles on " + engine.getThreadCount() + " Threads for "
+				+ pyramid.getLevels() + " Levels...");
+		engine.stream(new RenderRequest(formula, view, palette, precision, tiles, 0, Long.MAX_VALUE).withSamples(samples),
+				new TileListener() {
+			@Override
+			public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+			{
+				pyramid.tileCompleted(job, tile, smooth, argb);
+				incPixels(tile.getArea());
 			}
+		}).get();
+		pyramid.finish();
 
-			Object[] out = new Object[3];
-			out[0] = xPart;
-			out[1] = yPart;
-			out[2] = rgb;
+		System.out.println("Wrote " + pyramid.getTilesWritten() + " Tiles to " + dzi);
+		System.out.println("Complete");
+		return dzi;
+	}
 
-			return out;
-		}
+	/**
+	 * Generates the image within a time budget on the shared render engine
+	 *
+	 * @see #generateWithin(long, TimeUnit, RenderEngine)
+	 */
+	public RenderResult generateWithin(long budget, TimeUnit unit) throws InterruptedException, ExecutionException
+	{
+		return generateWithin(budget, unit, RenderEngine.getShared());
 	}
 
-	public void display()
+	/**
+	 * Generates the image within a time budget
+	 * <p>
+	 * A coarse preview is generated first, one sample per {@value #PREVIEW_BLOCK}&times;{@value #PREVIEW_BLOCK}
+	 * block, and is always completed. Tiles are then refined to full quality in order of
+	 * how much detail the preview shows in them, until every tile is done or the budget
+	 * runs out. At that point unfinished tiles are cancelled and keep the preview
+	 *
+	 * @param budget	The time allowed for the render
+	 * @param unit		The unit of {@code budget}
+	 * @param engine	The engine to render on
+	 * @return			The best image available at the deadline, and which tiles reached full quality
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the preview or the refinement fails
+	 */
+	public RenderResult generateWithin(long budget, TimeUnit unit, RenderEngine engine)
+			throws InterruptedException, ExecutionException
 	{
-		System.out.println("Display Image");
-		frame = new JFrame();
-		panel = new JPanel();
-		panel.setSize(1280, 720);
-
-		panel.add(new JLabel(new ImageIcon(img.getScaledInstance(panel.getWidth(),
-				panel.getHeight(), Image.SCALE_SMOOTH))));
-		frame.setContentPane(panel);
-		frame.pack();
-		frame.setLocationRelativeTo(null);
-		frame.setResizable(false);
-		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		frame.addWindowListener(new WindowListener() {
+		final long start = System.nanoTime();
+		final long deadline = start + unit.toNanos(budget);
 
-			@Override
-			public void windowOpened(WindowEvent e) {}
+		System.out.println("Begin Time-Budgeted Generation");
+		logPrecision();
 
-			@Override
-			public void windowClosing(WindowEvent e) {}
+		img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
+		final int cols = (width + PREVIEW_BLOCK - 1)/PREVIEW_BLOCK;
+		final int rows = (height + PREVIEW_BLOCK - 1)/PREVIEW_BLOCK;
+		final float[] preview = new float[cols*rows];
+
+		System.out.println("Evaluating Preview...");
+		View coarse = view.coarsen(PREVIEW_BLOCK);
+		engine.submit(new RenderRequest(formula, coarse, palette), new TileListener() {
 			@Override
-			public void windowClosed(WindowEvent e)
+			public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
 			{
-				System.exit(0);
+				previewTile(tile, smooth, cols, preview);
 			}
+		}).get();
 
+		List<Tile> tiles = Tile.grid(width, height, REFINE_TILE);
+		final Map<Tile,Double> detail = new HashMap<Tile,Double>(tiles.size()*2);
+		for(Tile t : tiles)
+			detail.put(t, previewDetail(t, cols, preview));
+		Collections.sort(tiles, new Comparator<Tile>() {
 			@Override
-			public void windowIconified(WindowEvent e) {}
+			public int compare(Tile a, Tile b)
+			{
+				int c = Double.compare(detail.get(b), detail.get(a));
+				if(c != 0)
+					return c;
+				return Double.compare(centerDistance(a), centerDistance(b));
+			}
+		});
 
-			@Override
-			public void windowDeiconified(WindowEvent e) {}
+		final Map<Tile,Boolean> full = new HashMap<Tile,Boolean>(tiles.size()*2);
+		final boolean[] closed = new boolean[1];
+		final IterationArchiveWriter writer = openArchive();
 
+		System.out.println("Refining " + tiles.size() + " Tiles...");
+		RenderJob refine = engine.stream(new RenderRequest(formula, view, palette, precision, tiles, 0, Long.MAX_VALUE),
+				new TileListener() {
 			@Override
-			public void windowActivated(WindowEvent e) {}
-
-			@Override
-			public void windowDeactivated(WindowEvent e) {}
+			public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+			{
+				synchronized(full)
+				{
+					if(closed[0])
+						return;
+					img.setRGB(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), argb, 0, tile.getWidth());
+					if(writer != null)
+						writer.tileCompleted(job, tile, smooth, argb);
+					full.put(tile, true);
+				}
+			}
 		});
 
-		frame.setVisible(true);
+		try {
+			refine.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}catch(TimeoutException e)
+		{
+			System.out.println("Time Limit Reached, Cancelling Refinement");
+		}finally
+		{
+			refine.cancel(false);
+			synchronized(full)
+			{
+				closed[0] = true;
+			}
+			closeArchive(writer);
+		}
+
+		boolean[] done = new boolean[tiles.size()];
+		for(int i = 0; i < done.length; i++)
+			done[i] = full.containsKey(tiles.get(i));
+
+		System.out.println("Complete");
+		return new RenderResult(img, tiles, done, System.nanoTime() - start);
+	}
+
+	/** Stores the samples of a completed preview tile, and fills their blocks of the image */
+	private void previewTile(Tile tile, float[] smooth, int cols, float[] preview)
+	{
+		int[] block = new int[PREVIEW_BLOCK*PREVIEW_BLOCK];
+		int x, y, w, h;
+
+		for(int r = 0; r < tile.getHeight(); r++)
+		{
+			for(int c = 0; c < tile.getWidth(); c++)
+			{
+				float sample = smooth[r*tile.getWidth() + c];
+				preview[(tile.getY() + r)*cols + tile.getX() + c] = sample;
+
+				x = (tile.getX() + c)*PREVIEW_BLOCK;
+				y = (tile.getY() + r)*PREVIEW_BLOCK;
+				w = Math.min(PREVIEW_BLOCK, width - x);
+				h = Math.min(PREVIEW_BLOCK, height - y);
+				Arrays.fill(block, palette.color(sample));
+				img.setRGB(x, y, w, h, block, 0, w);
+			}
+		}
+	}
+
+	/** Gives the spread of the preview samples that fall in a tile */
+	private double previewDetail(Tile t, int cols, float[] preview)
+	{
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for(int r = t.getY()/PREVIEW_BLOCK; r*PREVIEW_BLOCK < t.getY() + t.getHeight(); r++)
+			for(int c = t.getX()/PREVIEW_BLOCK; c*PREVIEW_BLOCK < t.getX() + t.getWidth(); c++)
+			{
+				min = Math.min(min, preview[r*cols + c]);
+				max = Math.max(max, preview[r*cols + c]);
+			}
+		return max - min;
+	}
+
+	private double centerDistance(Tile t)
+	{
+		return Math.hypot(t.getX() + t.getWidth()/2.0 - width/2.0, t.getY() + t.getHeight()/2.0 - height/2.0);
+	}
+
+	/** Starts estimating the remaining time of a generation from the predicted cost of its tiles */
+	private synchronized void startPlan(TilePlan plan, List<Tile> tiles)
+	{
+		this.plan = plan;
+		plannedCost = completedCost = 0;
+		for(Tile t : tiles)
+			plannedCost += plan.getCost(t);
+		planStart = System.nanoTime();
+	}
+
+	private synchronized void incPixels(Tile tile)
+	{
+		if(plan != null)
+			completedCost += plan.getCost(tile);
+		incPixels(tile.getArea());
+	}
+
+	private synchronized void incPixels(long count)
+	{
+		pixels += count;
+		while((int)((double)pixels/((double)width*height)*100.) > percent)
+			System.out.println("Percent Complete: " + (++percent) + "%" + remainingTime());
+	}
+
+	/** @return	The time the planned tiles are predicted to still take, or nothing without a plan */
+	private String remainingTime()
+	{
+		if(plan == null || completedCost <= 0)
+			return "";
+		double elapsed = System.nanoTime() - planStart;
+		long left = (long)(elapsed*Math.max(plannedCost - completedCost, 0)/completedCost);
+		return " (About " + TimeUnit.NANOSECONDS.toSeconds(left) + "sec Remaining)";
+	}
+
+	public void display()
+	{
+		System.out.println("Display Image");
+		ImageWindow.show(Downscaler.fit(image(), 1280, 720));
 	}
 
 	public File saveImage() throws IOException
 	{
 		System.out.println("Saving Image...");
+		File output = outputFile(imageKind + ".png");
+
+		try {
+			new PngWriter(compressionLevel).write(image(), output);
+		} catch (IOException e)
+		{
+			throw new IOException("Exception Writing Image:\t\t" + e.getMessage(), e);
+		}
+
+		return output;
+	}
+
+	/**
+	 * Saves a scaled down copy of the image next to it
+	 *
+	 * @param thumbWidth	The width of the thumbnail, the height follows from the aspect ratio
+	 * @return				The thumbnail file
+	 * @throws IOException If the thumbnail cannot be written
+	 * @throws IllegalArgumentException If the width is not positive or is wider than the image
+	 */
+	public File saveThumbnail(int thumbWidth) throws IOException
+	{
+		if(thumbWidth <= 0 || thumbWidth > width)
+			throw new IllegalArgumentException("Invalid Thumbnail Width: " + thumbWidth);
+		System.out.println("Saving Thumbnail...");
+		int thumbHeight = Math.max(1, (int)Math.round((double)height*thumbWidth/width));
+		File output = outputFile(imageKind + " thumbnail.png");
+
+		try {
+			new PngWriter(compressionLevel).write(Downscaler.downscale(image(), thumbWidth, thumbHeight), output);
+		} catch (IOException e)
+		{
+			throw new IOException("Exception Writing Thumbnail:\t" + e.getMessage(), e);
+		}
+
+		return output;
+	}
+
+	/** @return	The rows of the last generated image, from its compressed tiles if it has no full image */
+	private RowSource image()
+	{
+		return img == null ? store : RowSource.of(img);
+	}
+
+	/**
+	 * Creates a new, empty file in the output folder, named for the parameters of
+	 * this fractal and numbered if a file of that name already exists
+	 */
+	private File outputFile(String extension) throws IOException
+	{
 		String loc = out.getAbsolutePath();
 		if(!loc.endsWith(File.separator))
 			loc += File.separator;
-		String name = "Mandelbrot (" + xCenter + "," + yCenter + ") zoom=" + Math.log(zoom)/Math.log(2d)
+		String name = formula.getName() + " " + center + " zoom=" + Math.log(zoom)/Math.log(2d)
 				+ ", colorFactor=" + colorFactor + ", colorConstant=" + colorConstant
 				+ ", iterations=" + maxIteration + ", exponent=" + exp
 				+ ", bailout=" + bail;
-		String extension = ".png";
+		if(view.isCropped())
+			name += ", crop=" + view.getCropX() + "," + view.getCropY() + "," + width + "," + height;
 		File output = new File(loc + name + extension);
 
 		name += "_";
@@ -747,13 +2065,6 @@ public class Fractal
 			throw new IOException("Exception Creating Output File:\t" + e.getMessage() + "\t" + output.getAbsolutePath(), e);
 		}
 
-		try {
-			ImageIO.write(img, "png", output);
-		} catch (IOException e)
-		{
-			throw new IOException("Exception Writing Image:\t\t" + e.getMessage(), e);
-		}
-
 		return output;
 	}
 }
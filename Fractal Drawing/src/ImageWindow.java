@@ -0,0 +1,37 @@
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * The window that shows a finished image
+ * <p>
+ * This is the only class that {@link Fractal} reaches Swing through, so a
+ * headless run that never displays an image never loads Swing at all
+ */
+final class ImageWindow
+{
+	private ImageWindow() {}
+
+	/**
+	 * Opens a window showing an image at its own size, which is disposed of when closed
+	 *
+	 * @param img	The image to show
+	 */
+	static void show(BufferedImage img)
+	{
+		JFrame frame = new JFrame();
+		JPanel panel = new JPanel();
+
+		panel.add(new JLabel(new ImageIcon(img)));
+		frame.setContentPane(panel);
+		frame.pack();
+		frame.setLocationRelativeTo(null);
+		frame.setResizable(false);
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+		frame.setVisible(true);
+	}
+}
@@ -0,0 +1,313 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only, memory mapped archive of the raw smooth iteration values of a
+ * render, written by {@link IterationArchiveWriter}
+ * <p>
+ * The values are kept per tile, each tile compressed on its own and located
+ * through an index, so reading one tile or a small region only inflates the
+ * tiles it touches no matter how large the render was. The header holds the
+ * parameters of the render, enough to rebuild its {@link View} and recolor it
+ * with any {@link Palette}
+ * <p>
+ * The layout of the file, all big-endian, is
+ * <ul>
+ * <li>The magic number {@code FRAW}, the format version, and the offset of the index
+ * <li>The formula name and precision tier, as length prefixed UTF-8
+ * <li>The center as four doubles, high and low word of the real then imaginary part
+ * <li>The zoom, exponent and bailout as doubles, then the maximum iteration, width and height as ints
+ * <li>The aspect ratio of the span as a double, then the width and height of the frame and the
+ * column and row of the frame the image is cropped at as ints. Version 1 archives stop before
+ * these, and are of whole 16:9 frames
+ * <li>The compressed tile blocks, in the order the tiles were written
+ * <li>The index, the tile count then x, y, width, height, offset and length of each block
+ * </ul>
+ * Each block is the deflated values of its tile with the bytes of the floats
+ * split into four planes, most significant first. Neighbouring values share
+ * their sign, exponent and leading mantissa bits, so the planes compress far
+ * better than the floats would interleaved
+ */
+public class IterationArchive implements Closeable
+{
+	static final int MAGIC = 0x46524157;
+	static final int VERSION = 2;
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer map;
+	private final String formulaName;
+	private final Precision precision;
+	private final View view;
+	private final Map<Tile,long[]> index;
+
+	/**
+	 * Opens an archive, reading only its header and index
+	 *
+	 * @param file	The archive file
+	 * @throws IOException If the file cannot be read or is not a valid archive
+	 */
+	public IterationArchive(File file) throws IOException
+	{
+		this.file = file;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			map = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+
+			ByteBuffer header = map != null ? map.duplicate() : channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 1 << 16));
+			if(header.remaining() < 16 || header.getInt() != MAGIC)
+				throw new IOException("Not an iteration archive: " + file);
+			int version = header.getInt();
+			if(version < 1 || version > VERSION)
+				throw new IOException("Unsupported iteration archive version " + version + ": " + file);
+			long indexOffset = header.getLong();
+
+			formulaName = readString(header);
+			precision = Precision.valueOf(readString(header));
+			DDComplex center = new DDComplex(header.getDouble(), header.getDouble(), header.getDouble(), header.getDouble());
+			double zoom = header.getDouble(), exponent = header.getDouble(), bailout = header.getDouble();
+			int maxIteration = header.getInt(), width = header.getInt(), height = header.getInt();
+			if(version == 1)
+				view = new View(center, zoom, width, height, exponent, bailout, maxIteration);
+			else
+			{
+				double aspect = header.getDouble();
+				int frameWidth = header.getInt(), frameHeight = header.getInt();
+				int cropX = header.getInt(), cropY = header.getInt();
+				try {
+					view = new View(center, zoom, aspect, frameWidth, frameHeight, exponent, bailout, maxIteration)
+							.crop(cropX, cropY, width, height);
+				}catch(IllegalArgumentException e)
+				{
+					throw new IOException("Corrupt iteration archive header: " + file, e);
+				}
+			}
+
+			if(indexOffset <= 0 || indexOffset > size - 4)
+				throw new IOException("Iteration archive was not closed: " + file);
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - indexOffset);
+			int count = in.getInt();
+			if(count < 0 || (long)count*28 > in.remaining())
+				throw new IOException("Corrupt iteration archive index: " + file);
+
+			index = new LinkedHashMap<Tile,long[]>(count*2);
+			for(int i = 0; i < count; i++)
+			{
+				Tile t = new Tile(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+				long offset = in.getLong(), length = in.getInt();
+				if(t.getX() + t.getWidth() > width || t.getY() + t.getHeight() > height
+						|| offset < 0 || length < 0 || offset + length > indexOffset)
+					throw new IOException("Corrupt iteration archive index: " + file);
+				index.put(t, new long[] {offset, length});
+			}
+		}catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			if(e instanceof IOException)
+				throw (IOException)e;
+			throw new IOException("Corrupt iteration archive: " + file, e);
+		}
+	}
+
+	/** @return	The name of the formula that was rendered */
+	public String getFormulaName()
+	{
+		return formulaName;
+	}
+
+	/** @return	The precision tier the values were iterated in */
+	public Precision getPrecision()
+	{
+		return precision;
+	}
+
+	/** @return	The view that was rendered */
+	public View getView()
+	{
+		return view;
+	}
+
+	/** @return	The tiles held by this archive, in the order they were written */
+	public List<Tile> getTiles()
+	{
+		return Collections.unmodifiableList(new ArrayList<Tile>(index.keySet()));
+	}
+
+	/**
+	 * Reads the values of one tile
+	 *
+	 * @param tile	A tile held by this archive
+	 * @return		The row-major smooth iteration values of the tile
+	 * @throws IOException If the tile cannot be read
+	 * @throws IllegalArgumentException If the archive does not hold the tile
+	 */
+	public float[] readTile(Tile tile) throws IOException
+	{
+		long[] entry = index.get(tile);
+		if(entry == null)
+			throw new IllegalArgumentException("Tile not in archive: " + tile);
+
+		ByteBuffer block;
+		if(map != null)
+		{
+			block = map.duplicate();
+			block.limit((int)(entry[0] + entry[1])).position((int)entry[0]);
+		}
+		else
+			block = channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+
+		float[] values = new float[tile.getArea()];
+		try {
+			decode(block, values);
+		}catch(DataFormatException e)
+		{
+			throw new IOException("Corrupt tile " + tile + " in " + file, e);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the values of a region of the render, inflating only the tiles that
+	 * overlap it. Pixels of the region that no tile covers are NaN
+	 *
+	 * @param x	The leftmost column of the region
+	 * @param y	The topmost row of the region
+	 * @param w	The width of the region
+	 * @param h	The height of the region
+	 * @return	The row-major smooth iteration values of the region
+	 * @throws IOException If a tile cannot be read
+	 * @throws IllegalArgumentException If the region does not lie inside the view
+	 */
+	public float[] read(int x, int y, int w, int h) throws IOException
+	{
+		if(x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > view.getWidth() || y + h > view.getHeight())
+			throw new IllegalArgumentException("Region outside of archive: " + new Tile(x, y, w, h));
+
+		float[] out = new float[w*h];
+		Arrays.fill(out, Float.NaN);
+		for(Tile t : index.keySet())
+		{
+			int x0 = Math.max(x, t.getX()), x1 = Math.min(x + w, t.getX() + t.getWidth());
+			int y0 = Math.max(y, t.getY()), y1 = Math.min(y + h, t.getY() + t.getHeight());
+			if(x0 >= x1 || y0 >= y1)
+				continue;
+
+			float[] values = readTile(t);
+			for(int r = y0; r < y1; r++)
+				System.arraycopy(values, (r - t.getY())*t.getWidth() + x0 - t.getX(), out, (r - y)*w + x0 - x, x1 - x0);
+		}
+		return out;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/** Compresses the first {@code count} values into a tile block */
+	static byte[] encode(float[] values, int count, Deflater deflater)
+	{
+		int[] bits = new int[count];
+		for(int i = 0; i < count; i++)
+			bits[i] = Float.floatToRawIntBits(values[i]);
+		return encode(bits, count, deflater);
+	}
+
+	/**
+	 * Compresses the first {@code count} words into a tile block, split into
+	 * one plane per byte of the word, since neighbouring pixels mostly share
+	 * their high bytes
+	 */
+	static byte[] encode(int[] words, int count, Deflater deflater)
+	{
+		byte[] planes = new byte[count*4];
+		int w;
+		for(int i = 0; i < count; i++)
+		{
+			w = words[i];
+			planes[i] = (byte)(w >>> 24);
+			planes[count + i] = (byte)(w >>> 16);
+			planes[2*count + i] = (byte)(w >>> 8);
+			planes[3*count + i] = (byte)w;
+		}
+
+		deflater.reset();
+		deflater.setInput(planes);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(planes.length/4 + 64);
+		byte[] buf = new byte[8192];
+		while(!deflater.finished())
+			out.write(buf, 0, deflater.deflate(buf));
+		return out.toByteArray();
+	}
+
+	/** Inflates a tile block into {@code values}, which must be the size of the tile */
+	static void decode(ByteBuffer block, float[] values) throws DataFormatException
+	{
+		int[] bits = new int[values.length];
+		decode(block, bits);
+		for(int i = 0; i < bits.length; i++)
+			values[i] = Float.intBitsToFloat(bits[i]);
+	}
+
+	/** Inflates a tile block into {@code words}, which must be the size of the tile */
+	static void decode(ByteBuffer block, int[] words) throws DataFormatException
+	{
+		int count = words.length;
+		byte[] planes = new byte[count*4];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(block);
+			int n = 0;
+			while(n < planes.length && !inflater.finished())
+			{
+				int k = inflater.inflate(planes, n, planes.length - n);
+				if(k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new DataFormatException("Truncated tile block");
+				n += k;
+			}
+			if(n != planes.length)
+				throw new DataFormatException("Tile block holds " + n/4 + " values, expected " + count);
+		}finally
+		{
+			inflater.end();
+		}
+
+		for(int i = 0; i < count; i++)
+			words[i] = (planes[i] & 0xFF) << 24 | (planes[count + i] & 0xFF) << 16
+					| (planes[2*count + i] & 0xFF) << 8 | (planes[3*count + i] & 0xFF);
+	}
+
+	static void writeString(ByteBuffer out, String s)
+	{
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.putInt(b.length).put(b);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		int n = in.getInt();
+		if(n < 0 || n > in.remaining())
+			throw new IllegalArgumentException("Invalid string length " + n);
+		byte[] b = new byte[n];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
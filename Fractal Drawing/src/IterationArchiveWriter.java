@@ -0,0 +1,181 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Streams the smooth iteration values of a render into an {@link IterationArchive}
+ * as its tiles complete
+ * <p>
+ * Tiles may be written from any number of threads and in any order. Each tile
+ * is compressed on the thread that writes it, and only the reservation of its
+ * place in the file is serialized. The index is written when the writer is
+ * closed, and an archive that was never closed cannot be opened
+ */
+public class IterationArchiveWriter implements TileListener, Closeable
+{
+	private final FileChannel channel;
+	private final View view;
+	private final int level;
+	private final List<Tile> tiles = new ArrayList<Tile>();
+	private final List<long[]> entries = new ArrayList<long[]>();
+
+	/** Guarded by this */
+	private long position;
+	/** Guarded by this */
+	private boolean closed;
+
+	/**
+	 * Creates an archive for a render, with the default compression level
+	 *
+	 * @see #IterationArchiveWriter(File, Formula, View, Precision, int)
+	 */
+	public IterationArchiveWriter(File file, Formula formula, View view, Precision precision) throws IOException
+	{
+		this(file, formula, view, precision, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates an archive for a render, replacing any file that is already there,
+	 * and writes its header
+	 *
+	 * @param file		The archive file
+	 * @param formula	The formula that is rendered
+	 * @param view		The view that is rendered
+	 * @param precision	The precision tier the view is iterated in
+	 * @param level		The deflate level of the tile blocks, from 0 to 9 or -1 for the default
+	 * @throws IOException If the file cannot be written
+	 * @throws IllegalArgumentException If the compression level is invalid
+	 */
+	public IterationArchiveWriter(File file, Formula formula, View view, Precision precision, int level) throws IOException
+	{
+		if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Invalid Compression Level: " + level);
+		this.view = view;
+		this.level = level;
+
+		byte[] name = formula.getName().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(160 + name.length);
+		header.putInt(IterationArchive.MAGIC).putInt(IterationArchive.VERSION).putLong(0L);
+		IterationArchive.writeString(header, formula.getName());
+		IterationArchive.writeString(header, precision.name());
+		DDComplex c = view.getCenter();
+		header.putDouble(c.Re()).putDouble(c.ReLo()).putDouble(c.Im()).putDouble(c.ImLo());
+		header.putDouble(view.getZoom()).putDouble(view.getExponent()).putDouble(view.getBailout());
+		header.putInt(view.getMaxIteration()).putInt(view.getWidth()).putInt(view.getHeight());
+		header.putDouble(view.getAspect()).putInt(view.getFrame().getWidth()).putInt(view.getFrame().getHeight())
+				.putInt(view.getCropX()).putInt(view.getCropY());
+		header.flip();
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			position = writeFully(header, 0);
+		}catch(IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Compresses and appends the values of one tile
+	 *
+	 * @param tile		The tile, in pixel coordinates of the view
+	 * @param smooth	The row-major smooth iteration values of the tile
+	 * @throws IOException If the block cannot be written
+	 * @throws IllegalArgumentException If the tile does not lie inside the view
+	 * @throws IllegalStateException If the writer has been closed
+	 */
+	public void write(Tile tile, float[] smooth) throws IOException
+	{
+		if(tile.getX() + tile.getWidth() > view.getWidth() || tile.getY() + tile.getHeight() > view.getHeight())
+			throw new IllegalArgumentException("Tile outside of view: " + tile);
+
+		Deflater deflater = new Deflater(level);
+		byte[] block;
+		try {
+			block = IterationArchive.encode(smooth, tile.getArea(), deflater);
+		}finally
+		{
+			deflater.end();
+		}
+
+		long offset;
+		synchronized(this)
+		{
+			if(closed)
+				throw new IllegalStateException("Archive is closed");
+			offset = position;
+			position += block.length;
+			tiles.add(tile);
+			entries.add(new long[] {offset, block.length});
+		}
+		writeFully(ByteBuffer.wrap(block), offset);
+	}
+
+	/**
+	 * Writes a completed tile of a render job
+	 *
+	 * @throws UncheckedIOException If the block cannot be written, which fails the job
+	 */
+	@Override
+	public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+	{
+		try {
+			write(tile, smooth);
+		}catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the index and closes the file. Tiles that were never written are
+	 * simply absent from the archive
+	 *
+	 * @throws IOException If the index cannot be written
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if(closed)
+			return;
+		closed = true;
+
+		try {
+			ByteBuffer in = ByteBuffer.allocate(4 + tiles.size()*28);
+			in.putInt(tiles.size());
+			for(int i = 0; i < tiles.size(); i++)
+			{
+				Tile t = tiles.get(i);
+				long[] e = entries.get(i);
+				in.putInt(t.getX()).putInt(t.getY()).putInt(t.getWidth()).putInt(t.getHeight());
+				in.putLong(e[0]).putInt((int)e[1]);
+			}
+			in.flip();
+			writeFully(in, position);
+
+			ByteBuffer offset = ByteBuffer.allocate(8);
+			offset.putLong(position).flip();
+			writeFully(offset, 8);
+		}finally
+		{
+			channel.close();
+		}
+	}
+
+	private long writeFully(ByteBuffer buf, long offset) throws IOException
+	{
+		while(buf.hasRemaining())
+			offset += channel.write(buf, offset);
+		return offset;
+	}
+}
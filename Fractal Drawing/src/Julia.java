@@ -0,0 +1,149 @@
+
+/**
+ * The filled Julia set of <i>z</i>&nbsp;=&nbsp;<i>z</i><sup>exp</sup>&nbsp;+&nbsp;<i>c</i>
+ * for a fixed constant <i>c</i>, starting from <i>z</i>&nbsp;=&nbsp;the pixel
+ */
+public final class Julia extends Formula
+{
+	private final double cr, ci;
+
+	/**
+	 * Creates the Julia set formula for the constant
+	 * {@code real}&nbsp;+&nbsp;<i>i</i>{@code imaginary}
+	 *
+	 * @param real		The real part of the constant
+	 * @param imaginary	The imaginary part of the constant
+	 */
+	public Julia(double real, double imaginary)
+	{
+		cr = real;
+		ci = imaginary;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Julia (" + cr + "," + ci + ")";
+	}
+
+	@Override
+	public String getSpec()
+	{
+		return "julia:" + cr + "," + ci;
+	}
+
+	@Override
+	protected void iterateDouble(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		final double p = view.getExponent(), bail = view.getBailout();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / p;
+		final double bail2 = bail*bail;
+		final double cr = this.cr, ci = this.ci;
+		final boolean square = integerExponent(p) == 2;
+		final double[] z = new double[2];
+
+		double mag;
+		int iterations;
+
+		for(int y = 0; y < h; y++)
+		{
+			for(int x = 0; x < w; x++)
+			{
+				z[0] = (x0+x)*xScale + xMin;
+				z[1] = view.im(y0+y);
+
+				iterations = orbit(p, square, bail2, maxIteration, z, 0);
+
+				mag = smoothMagnitude(z[0] - cr, z[1] - ci, inv);
+				out[y*w + x] = (float)(iterations + (bail2 - mag)/(bail2 - bail));
+			}
+		}
+	}
+
+	@Override
+	public boolean canContinue(View view)
+	{
+		return true;
+	}
+
+	@Override
+	public void continueOrbits(View view, int[] pixels, double[] zr, double[] zi, int[] iterations,
+			float[] out, int from, int to)
+	{
+		final double p = view.getExponent(), bail = view.getBailout();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int width = view.getWidth(), maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / p;
+		final double bail2 = bail*bail;
+		final double cr = this.cr, ci = this.ci;
+		final boolean square = integerExponent(p) == 2;
+		final double[] z = new double[2];
+
+		double mag;
+		int it;
+
+		for(int k = from; k < to; k++)
+		{
+			it = iterations[k];
+			z[0] = it == 0 ? (pixels[k] % width)*xScale + xMin : zr[k];
+			z[1] = it == 0 ? view.im(pixels[k] / width) : zi[k];
+
+			it = orbit(p, square, bail2, maxIteration, z, it);
+
+			zr[k] = z[0];
+			zi[k] = z[1];
+			iterations[k] = it;
+			mag = smoothMagnitude(z[0] - cr, z[1] - ci, inv);
+			out[k] = (float)(it + (bail2 - mag)/(bail2 - bail));
+		}
+	}
+
+	/**
+	 * Continues the orbit from the point in {@code z}, reached after
+	 * {@code iterations}, until it escapes or reaches the maximum, leaving its
+	 * last point in {@code z}
+	 *
+	 * @return	The iterations the orbit reached
+	 */
+	private int orbit(double p, boolean square, double bail2, int maxIteration,
+			double[] z, int iterations)
+	{
+		final double cr = this.cr, ci = this.ci;
+		double zr = z[0], zi = z[1], t, mag, th;
+
+		if(square)
+		{
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				t = zr*zr - zi*zi + cr;
+				zi = 2.0*zr*zi + ci;
+				zr = t;
+			}
+		}
+		else
+		{
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				if(zr == 0.0 && zi == 0.0)
+				{
+					zr = cr;
+					zi = ci;
+					continue;
+				}
+				mag = Math.exp(p*0.5*Math.log(zr*zr + zi*zi));
+				th = p*Math.atan2(zi, zr);
+				t = mag*Math.cos(th);
+				zi = mag*Math.sin(th);
+				zr = (t != t ? 0.0 : t) + cr;
+				zi = (zi != zi ? 0.0 : zi) + ci;
+			}
+		}
+
+		z[0] = zr;
+		z[1] = zi;
+		return iterations;
+	}
+
+}
@@ -0,0 +1,385 @@
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link RenderedImage} of a view that renders each of its tiles only when
+ * it is first read, so an image far larger than memory can be handed to
+ * anything that reads images by tile or by region, and only the parts that
+ * are read are ever iterated
+ * <p>
+ * Each tile that is read and not cached is submitted to a {@link RenderEngine}
+ * as a job of its own. Reading a region starts every missing tile of it before
+ * waiting on any, so the region is rendered in parallel on the workers of the
+ * engine, and tiles that another thread is already waiting on are shared
+ * rather than rendered twice. The tiles read most recently are kept in a
+ * cache bounded by its number of pixels.
+ * <p>
+ * The rasters given out share the arrays of the cache, and must not be
+ * written to. Tiles at the right and bottom edges are padded with black out to
+ * the full tile size, so every tile has the same sample model
+ */
+public final class LazyRender implements RenderedImage
+{
+	/** Edge length of the tiles of an image when none is given */
+	public static final int DEFAULT_TILE_SIZE = 256;
+	/** Number of full tiles the cache holds when no size is given */
+	private static final int DEFAULT_CACHED_TILES = 64;
+
+	private final RenderEngine engine;
+	private final Formula formula;
+	private final View view;
+	private final Palette palette;
+	private final Precision precision;
+	private final int tileSize, tilesAcross, tilesDown;
+	private final long cachePixels;
+	private final ColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+	private final SampleModel sampleModel;
+
+	/** The colors of the tiles read most recently, in the order they were read. Guarded by this */
+	private final LinkedHashMap<Tile,int[]> cache = new LinkedHashMap<Tile,int[]>(64, 0.75f, true);
+	/** The tiles that are being rendered. Guarded by this */
+	private final Map<Tile,Pending> rendering = new HashMap<Tile,Pending>();
+	/** Guarded by this */
+	private long cached, rendered;
+
+	/**
+	 * Creates an image with {@value #DEFAULT_TILE_SIZE} pixel tiles and a cache
+	 * of {@value #DEFAULT_CACHED_TILES} of them
+	 *
+	 * @see #LazyRender(RenderEngine, Formula, View, Palette, int, long)
+	 */
+	public LazyRender(RenderEngine engine, Formula formula, View view, Palette palette)
+	{
+		this(engine, formula, view, palette, DEFAULT_TILE_SIZE, (long)DEFAULT_CACHED_TILES*DEFAULT_TILE_SIZE*DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Creates an image of a view, rendering nothing until it is read
+	 *
+	 * @param engine		The engine to render tiles on
+	 * @param formula		The formula to render
+	 * @param view			The view to render, which may be of any size
+	 * @param palette		The palette to color the image with
+	 * @param tileSize		The edge length of the tiles of the image
+	 * @param cachePixels	The number of pixels of rendered tiles to keep, which should
+	 * 						cover at least a row of tiles across the widest region that is read
+	 * @throws IllegalArgumentException If the tile or cache size is not positive
+	 */
+	public LazyRender(RenderEngine engine, Formula formula, View view, Palette palette, int tileSize, long cachePixels)
+	{
+		if(tileSize <= 0)
+			throw new IllegalArgumentException("Invalid Tile Size: " + tileSize);
+		if(cachePixels <= 0)
+			throw new IllegalArgumentException("Invalid Cache Size: " + cachePixels);
+		this.engine = engine;
+		this.formula = formula;
+		this.view = view;
+		this.palette = palette;
+		this.tileSize = tileSize;
+		this.cachePixels = cachePixels;
+		precision = view.selectPrecision();
+		tilesAcross = (view.getWidth() + tileSize - 1)/tileSize;
+		tilesDown = (view.getHeight() + tileSize - 1)/tileSize;
+		sampleModel = colorModel.createCompatibleSampleModel(tileSize, tileSize);
+	}
+
+	/** A tile that is being rendered, and the colors it is padded out to once it is done */
+	private final class Pending implements TileListener
+	{
+		final Tile tile;
+		RenderJob job;
+		volatile int[] argb;
+
+		Pending(Tile tile)
+		{
+			this.tile = tile;
+		}
+
+		@Override
+		public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+		{
+			int[] padded = new int[tileSize*tileSize];
+			for(int r = 0; r < tile.getHeight(); r++)
+				System.arraycopy(argb, r*tile.getWidth(), padded, r*tileSize, tile.getWidth());
+			this.argb = padded;
+			synchronized(LazyRender.this)
+			{
+				rendering.remove(tile);
+				rendered++;
+				if(cache.put(tile, padded) == null)
+					cached += padded.length;
+				Iterator<Map.Entry<Tile,int[]>> eldest = cache.entrySet().iterator();
+				while(cached > cachePixels && cache.size() > 1)
+				{
+					cached -= eldest.next().getValue().length;
+					eldest.remove();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the tile to be rendered
+		 *
+		 * @throws IllegalStateException If the render fails, or the calling thread is interrupted
+		 */
+		int[] await()
+		{
+			if(argb != null)
+				return argb;
+			try {
+				job.get();
+			}catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while rendering tile: " + tile, e);
+			}catch(ExecutionException e)
+			{
+				synchronized(LazyRender.this)
+				{
+					rendering.remove(tile, this);
+				}
+				throw new IllegalStateException("Exception rendering tile: " + tile, e.getCause());
+			}
+			return argb;
+		}
+	}
+
+	/**
+	 * Gives the colors of a tile if they are cached, or starts rendering it if
+	 * it is not already being rendered
+	 */
+	private synchronized Pending start(int tileX, int tileY)
+	{
+		int x = tileX*tileSize, y = tileY*tileSize;
+		Tile tile = new Tile(x, y, Math.min(tileSize, view.getWidth() - x), Math.min(tileSize, view.getHeight() - y));
+		Pending p = rendering.get(tile);
+		if(p != null)
+			return p;
+
+		p = new Pending(tile);
+		p.argb = cache.get(tile);
+		if(p.argb == null)
+		{
+			rendering.put(tile, p);
+			p.job = engine.stream(new RenderRequest(formula, view, palette, precision,
+					Collections.singletonList(tile), 0, Long.MAX_VALUE), p);
+		}
+		return p;
+	}
+
+	/** Starts every tile that a region of the image crosses, in row-major order */
+	private List<Pending> startAll(Rectangle region)
+	{
+		Rectangle r = region.intersection(new Rectangle(0, 0, view.getWidth(), view.getHeight()));
+		List<Pending> tiles = new ArrayList<Pending>();
+		if(r.isEmpty())
+			return tiles;
+		for(int ty = r.y/tileSize; ty <= (r.y + r.height - 1)/tileSize; ty++)
+			for(int tx = r.x/tileSize; tx <= (r.x + r.width - 1)/tileSize; tx++)
+				tiles.add(start(tx, ty));
+		return tiles;
+	}
+
+	private Raster raster(Tile tile, int[] argb)
+	{
+		return Raster.createWritableRaster(sampleModel, new DataBufferInt(argb, argb.length),
+				new Point(tile.getX(), tile.getY()));
+	}
+
+	/**
+	 * Renders the tile if it is not cached, waiting for it
+	 *
+	 * @throws IllegalArgumentException If the tile is outside of the image
+	 * @throws IllegalStateException If the tile cannot be rendered, or the calling thread is interrupted
+	 */
+	@Override
+	public Raster getTile(int tileX, int tileY)
+	{
+		if(tileX < 0 || tileY < 0 || tileX >= tilesAcross || tileY >= tilesDown)
+			throw new IllegalArgumentException("Tile outside of image: (" + tileX + ", " + tileY + ")");
+		Pending p = start(tileX, tileY);
+		return raster(p.tile, p.await());
+	}
+
+	/**
+	 * Renders every tile of the image that is not cached, which is only
+	 * sensible for an image small enough to hold at once
+	 *
+	 * @see #getData(Rectangle)
+	 */
+	@Override
+	public Raster getData()
+	{
+		return getData(new Rectangle(0, 0, view.getWidth(), view.getHeight()));
+	}
+
+	/**
+	 * Renders every tile that the region crosses that is not cached, all in
+	 * parallel, and copies the region out of them
+	 *
+	 * @throws IllegalArgumentException If the region is too large to hold in one raster
+	 * @throws IllegalStateException If a tile cannot be rendered, or the calling thread is interrupted
+	 */
+	@Override
+	public Raster getData(Rectangle region)
+	{
+		if((long)region.width*region.height > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Region too large for one raster: " + region.width + "x" + region.height);
+		WritableRaster out = Raster.createPackedRaster(DataBuffer.TYPE_INT, region.width, region.height,
+				new int[] {0xFF0000, 0xFF00, 0xFF}, new Point(region.x, region.y));
+		int[] data = ((DataBufferInt)out.getDataBuffer()).getData();
+
+		for(Pending p : startAll(region))
+		{
+			int[] argb = p.await();
+			Rectangle r = region.intersection(new Rectangle(p.tile.getX(), p.tile.getY(), p.tile.getWidth(), p.tile.getHeight()));
+			for(int y = r.y; y < r.y + r.height; y++)
+				System.arraycopy(argb, (y - p.tile.getY())*tileSize + r.x - p.tile.getX(),
+						data, (y - region.y)*region.width + r.x - region.x, r.width);
+		}
+		return out;
+	}
+
+	/**
+	 * Copies the part of the image that lies in the bounds of a raster into
+	 * it, rendering the tiles it crosses in parallel
+	 *
+	 * @param raster	The raster to copy into, or {@code null} for a new raster of the whole image
+	 * @return			The raster
+	 */
+	@Override
+	public WritableRaster copyData(WritableRaster raster)
+	{
+		if(raster == null)
+			return (WritableRaster)getData();
+		for(Pending p : startAll(raster.getBounds()))
+			raster.setRect(raster(p.tile, p.await()));
+		return raster;
+	}
+
+	/** @return	The number of tiles rendered so far, counting tiles rendered again after they left the cache */
+	public synchronized long getTilesRendered()
+	{
+		return rendered;
+	}
+
+	@Override
+	public Vector<RenderedImage> getSources()
+	{
+		return null;
+	}
+
+	@Override
+	public Object getProperty(String name)
+	{
+		return Image.UndefinedProperty;
+	}
+
+	@Override
+	public String[] getPropertyNames()
+	{
+		return null;
+	}
+
+	@Override
+	public ColorModel getColorModel()
+	{
+		return colorModel;
+	}
+
+	@Override
+	public SampleModel getSampleModel()
+	{
+		return sampleModel;
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return view.getWidth();
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return view.getHeight();
+	}
+
+	@Override
+	public int getMinX()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getMinY()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getNumXTiles()
+	{
+		return tilesAcross;
+	}
+
+	@Override
+	public int getNumYTiles()
+	{
+		return tilesDown;
+	}
+
+	@Override
+	public int getMinTileX()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getMinTileY()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getTileWidth()
+	{
+		return tileSize;
+	}
+
+	@Override
+	public int getTileHeight()
+	{
+		return tileSize;
+	}
+
+	@Override
+	public int getTileGridXOffset()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getTileGridYOffset()
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,614 @@
+
+/**
+ * The formula <i>z</i>&nbsp;=&nbsp;<i>z</i><sup>exp</sup>&nbsp;+&nbsp;<i>z</i><sub>0</sub>,
+ * starting from <i>z</i>&nbsp;=&nbsp;0, with a kernel for every {@link Precision} tier
+ * <p>
+ * Whole number exponents are raised by repeated multiplication, and
+ * everything else by the same polar form that {@link Complex#pow(Complex)} uses.
+ * <p>
+ * With interior detection, the kernels for whole number exponents also carry
+ * the derivative of <i>z</i> with respect to the first point of its orbit,
+ * the product of <i>exp</i>&middot;<i>z</i><sup>exp-1</sup> over the orbit.
+ * A small derivative alone is no proof, since an orbit that crawls past a
+ * parabolic point, as near the cusp at 1/4, shrinks it for hundreds of
+ * iterations before escaping. So once the derivative has shrunk below the
+ * threshold, the point the orbit has reached is kept, and replaced after
+ * twice as many checks each time. Only an orbit that comes back to exactly
+ * that point is inside the set, since it repeats from there and can never
+ * escape. It stops there with the value of a pixel that reaches the maximum
+ * iteration. Orbits that escape take exactly the same values as without it
+ */
+public final class Mandelbrot extends Formula
+{
+	/** Magnitude of the derivative below which an orbit is checked for a cycle, or 0 without interior detection */
+	private final double interiorThreshold;
+	/** Number of iterations between checks of the derivative, or 0 without interior detection */
+	private final int interiorInterval;
+
+	Mandelbrot()
+	{
+		this(0.0, 0);
+	}
+
+	private Mandelbrot(double threshold, int interval)
+	{
+		interiorThreshold = threshold;
+		interiorInterval = interval;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Mandelbrot";
+	}
+
+	@Override
+	public String getSpec()
+	{
+		if(interiorInterval > 0)
+			return "mandelbrot:interior=" + interiorThreshold + "," + interiorInterval;
+		return "mandelbrot";
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the threshold is not between 0 and 1, or the interval is not positive
+	 */
+	@Override
+	public Formula withInteriorDetection(double threshold, int interval)
+	{
+		if(!(threshold > 0 && threshold < 1))
+			throw new IllegalArgumentException("Invalid Interior Threshold: " + threshold);
+		if(interval <= 0)
+			throw new IllegalArgumentException("Invalid Interior Check Interval: " + interval);
+		return new Mandelbrot(threshold, interval);
+	}
+
+	@Override
+	protected void iterateFloat(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		final double exp = view.getExponent();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int maxIteration = view.getMaxIteration();
+		final float p = (float)exp;
+		final float inv = (float)(1.0 / exp);
+		final float b = (float)view.getBailout();
+		final float b2 = b*b;
+		final int n = integerExponent(exp);
+		final int interval = n == 0 ? 0 : interiorInterval;
+		final float threshold2 = (float)(interiorThreshold*interiorThreshold);
+
+		for(int y = 0; y < h; y++)
+		{
+			float ci = (float)view.im(y0+y);
+			for(int x = 0; x < w; x++)
+				out[y*w + x] = interval > 0
+						? escapeInterior((float)((x0+x)*xScale + xMin), ci, inv, n, b, b2, maxIteration, threshold2, interval)
+						: escape((float)((x0+x)*xScale + xMin), ci, p, inv, n, b, b2, maxIteration);
+		}
+	}
+
+	@Override
+	protected void iterateDouble(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		final double exp = view.getExponent(), bail = view.getBailout();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / exp;
+		final double b2 = bail*bail;
+		final int n = integerExponent(exp);
+		final int interval = n == 0 ? 0 : interiorInterval;
+		final double threshold2 = interiorThreshold*interiorThreshold;
+		final double[] z = new double[2];
+
+		for(int y = 0; y < h; y++)
+		{
+			double ci = view.im(y0+y);
+			for(int x = 0; x < w; x++)
+				out[y*w + x] = (float)(interval > 0
+						? escapeInterior((x0+x)*xScale + xMin, ci, inv, n, bail, b2, maxIteration, threshold2, interval)
+						: escape((x0+x)*xScale + xMin, ci, exp, inv, n, bail, b2, maxIteration, z));
+		}
+	}
+
+	/** Orbits cannot be continued with interior detection, which would need their derivatives kept as well */
+	@Override
+	public boolean canContinue(View view)
+	{
+		return interiorInterval == 0;
+	}
+
+	@Override
+	public void continueOrbits(View view, int[] pixels, double[] zr, double[] zi, int[] iterations,
+			float[] out, int from, int to)
+	{
+		final double p = view.getExponent(), bail = view.getBailout();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int width = view.getWidth(), maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / p;
+		final double bail2 = bail*bail;
+		final int n = integerExponent(p);
+		final double[] z = new double[2];
+
+		double cr, ci, mag;
+		int it;
+
+		for(int k = from; k < to; k++)
+		{
+			cr = (pixels[k] % width)*xScale + xMin;
+			ci = view.im(pixels[k] / width);
+			it = iterations[k];
+			z[0] = it == 0 ? 0.0 : zr[k];
+			z[1] = it == 0 ? 0.0 : zi[k];
+
+			it = orbit(cr, ci, p, n, bail2, maxIteration, z, it);
+
+			zr[k] = z[0];
+			zi[k] = z[1];
+			iterations[k] = it;
+			mag = smoothMagnitude(z[0] - cr, z[1] - ci, inv);
+			out[k] = (float)(it + (bail2 - mag)/(bail2 - bail));
+		}
+	}
+
+	/** Only whole number exponents have a double-double kernel, see {@link #integerExponent(double)} */
+	@Override
+	public boolean hasExtendedKernel(View view)
+	{
+		return integerExponent(view.getExponent()) != 0;
+	}
+
+	/**
+	 * Iterates in double-double precision, forming pixel coordinates as the
+	 * center of the view plus the pixel's offset from the middle of the image,
+	 * since only the center needs the extra precision
+	 */
+	@Override
+	protected void iterateExtended(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		final DDComplex center = view.getCenter();
+		final double exp = view.getExponent(), bail = view.getBailout();
+		final double xScale = view.getXScale(), yScale = view.getYScale();
+		final double xMiddle = view.getWidth()/2.0, yMiddle = view.getHeight()/2.0;
+		final int maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / exp;
+		final double b2 = bail*bail;
+		final int n = integerExponent(exp);
+		if(n == 0)
+			throw new IllegalArgumentException("No extended precision kernel for exponent: " + exp);
+
+		final double threshold2 = interiorThreshold*interiorThreshold;
+		double[] scratch = new double[4];
+		double d, cih, cil, crh, crl;
+
+		for(int y = 0; y < h; y++)
+		{
+			d = (y0 + y - yMiddle)*yScale;
+			cih = center.Im() + d;
+			cil = DDComplex.twoSumError(center.Im(), d, cih) + center.ImLo();
+			for(int x = 0; x < w; x++)
+			{
+				d = (x0 + x - xMiddle)*xScale;
+				crh = center.Re() + d;
+				crl = DDComplex.twoSumError(center.Re(), d, crh) + center.ReLo();
+				out[y*w + x] = (float)escape(crh, crl, cih, cil, n, inv, bail, b2, maxIteration,
+						threshold2, interiorInterval, scratch);
+			}
+		}
+	}
+
+	private static float escape(float cr, float ci, float p, float inv, int n,
+			float bail, float bail2, int maxIteration)
+	{
+		float zr = 0f, zi = 0f, t;
+		int iterations = 0;
+
+		if(n == 2)
+		{
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				t = zr*zr - zi*zi + cr;
+				zi = 2f*zr*zi + ci;
+				zr = t;
+			}
+		}
+		else if(n > 2)
+		{
+			float pr, pi;
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				pr = zr;
+				pi = zi;
+				for(int k = 1; k < n; k++)
+				{
+					t = pr*zr - pi*zi;
+					pi = pr*zi + pi*zr;
+					pr = t;
+				}
+				zr = pr + cr;
+				zi = pi + ci;
+			}
+		}
+		else
+		{
+			double mag, th;
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				if(zr == 0f && zi == 0f)
+				{
+					zr = cr;
+					zi = ci;
+					continue;
+				}
+				mag = Math.exp(p*0.5*Math.log(zr*zr + zi*zi));
+				th = p*Math.atan2(zi, zr);
+				t = (float)(mag*Math.cos(th));
+				zi = (float)(mag*Math.sin(th));
+				zr = (t != t ? 0f : t) + cr;
+				zi = (zi != zi ? 0f : zi) + ci;
+			}
+		}
+
+		float mag = (float)smoothMagnitude(zr - cr, zi - ci, inv);
+		return iterations + (bail2 - mag)/(bail2 - bail);
+	}
+
+	/** Iterates the orbit of a pixel from 0, with {@code z} to hold its last point */
+	private static double escape(double cr, double ci, double p, double inv, int n,
+			double bail, double bail2, int maxIteration, double[] z)
+	{
+		z[0] = z[1] = 0.0;
+		int iterations = orbit(cr, ci, p, n, bail2, maxIteration, z, 0);
+		double mag = smoothMagnitude(z[0] - cr, z[1] - ci, inv);
+		return iterations + (bail2 - mag)/(bail2 - bail);
+	}
+
+	/**
+	 * Continues the orbit from the point in {@code z}, reached after
+	 * {@code iterations}, until it escapes or reaches the maximum, leaving its
+	 * last point in {@code z}
+	 *
+	 * @return	The iterations the orbit reached
+	 */
+	private static int orbit(double cr, double ci, double p, int n, double bail2,
+			int maxIteration, double[] z, int iterations)
+	{
+		double zr = z[0], zi = z[1], t;
+
+		if(n == 2)
+		{
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				t = zr*zr - zi*zi + cr;
+				zi = 2.0*zr*zi + ci;
+				zr = t;
+			}
+		}
+		else if(n > 2)
+		{
+			double pr, pi;
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				pr = zr;
+				pi = zi;
+				for(int k = 1; k < n; k++)
+				{
+					t = pr*zr - pi*zi;
+					pi = pr*zi + pi*zr;
+					pr = t;
+				}
+				zr = pr + cr;
+				zi = pi + ci;
+			}
+		}
+		else
+		{
+			double mag, th;
+			for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+			{
+				if(zr == 0.0 && zi == 0.0)
+				{
+					zr = cr;
+					zi = ci;
+					continue;
+				}
+				mag = Math.exp(p*0.5*Math.log(zr*zr + zi*zi));
+				th = p*Math.atan2(zi, zr);
+				t = mag*Math.cos(th);
+				zi = mag*Math.sin(th);
+				zr = (t != t ? 0.0 : t) + cr;
+				zi = (zi != zi ? 0.0 : zi) + ci;
+			}
+		}
+
+		z[0] = zr;
+		z[1] = zi;
+		return iterations;
+	}
+
+
+	/**
+	 * Iterates a whole number exponent like {@link #escape(float, float, float, float, int, float, float, int)},
+	 * carrying the derivative of the orbit from its first point, <i>z</i><sub>0</sub>,
+	 * and checking it every {@code interval} iterations. Once it is below the
+	 * threshold, each check also compares <i>z</i> with the point kept from an
+	 * earlier check. The point is kept for twice as many checks each time it
+	 * is replaced, so a cycle of any period is found once the orbit settles on it
+	 */
+	private static float escapeInterior(float cr, float ci, float inv, int n,
+			float bail, float bail2, int maxIteration, float threshold2, int interval)
+	{
+		// The orbit starts from 0, where the derivative vanishes, so it is taken from the first point on
+		float zr = cr, zi = ci, dr = 1f, di = 0f, pr, pi, t;
+		// The point kept to find a cycle, which no point equals until one is kept
+		float ar = Float.NaN, ai = Float.NaN;
+		int iterations = Math.min(1, maxIteration), check = interval, span = 1, renew = 1;
+
+		for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+		{
+			pr = zr;
+			pi = zi;
+			for(int k = 2; k < n; k++)
+			{
+				t = pr*zr - pi*zi;
+				pi = pr*zi + pi*zr;
+				pr = t;
+			}
+			t = n*(pr*dr - pi*di);
+			di = n*(pr*di + pi*dr);
+			dr = t;
+
+			t = pr*zr - pi*zi;
+			zi = pr*zi + pi*zr + ci;
+			zr = t + cr;
+
+			if(--check == 0)
+			{
+				if(dr*dr + di*di < threshold2)
+				{
+					if(zr == ar && zi == ai)
+					{
+						iterations = maxIteration;
+						break;
+					}
+					if(--renew == 0)
+					{
+						ar = zr;
+						ai = zi;
+						span *= 2;
+						renew = span;
+					}
+				}
+				check = interval;
+			}
+		}
+
+		float mag = (float)smoothMagnitude(zr - cr, zi - ci, inv);
+		return iterations + (bail2 - mag)/(bail2 - bail);
+	}
+
+	/** The double precision version of {@link #escapeInterior(float, float, float, int, float, float, int, float, int)} */
+	private static double escapeInterior(double cr, double ci, double inv, int n,
+			double bail, double bail2, int maxIteration, double threshold2, int interval)
+	{
+		double zr = cr, zi = ci, dr = 1.0, di = 0.0, pr, pi, t;
+		double ar = Double.NaN, ai = Double.NaN;
+		int iterations = Math.min(1, maxIteration), check = interval, span = 1, renew = 1;
+
+		for(; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+		{
+			pr = zr;
+			pi = zi;
+			for(int k = 2; k < n; k++)
+			{
+				t = pr*zr - pi*zi;
+				pi = pr*zi + pi*zr;
+				pr = t;
+			}
+			t = n*(pr*dr - pi*di);
+			di = n*(pr*di + pi*dr);
+			dr = t;
+
+			t = pr*zr - pi*zi;
+			zi = pr*zi + pi*zr + ci;
+			zr = t + cr;
+
+			if(--check == 0)
+			{
+				if(dr*dr + di*di < threshold2)
+				{
+					if(zr == ar && zi == ai)
+					{
+						iterations = maxIteration;
+						break;
+					}
+					if(--renew == 0)
+					{
+						ar = zr;
+						ai = zi;
+						span *= 2;
+						renew = span;
+					}
+				}
+				check = interval;
+			}
+		}
+
+		double mag = smoothMagnitude(zr - cr, zi - ci, inv);
+		return iterations + (bail2 - mag)/(bail2 - bail);
+	}
+
+	/**
+	 * Iterates in double-double precision. With interior detection the
+	 * derivative only needs the high parts of <i>z</i>, and is carried in
+	 * double precision
+	 */
+	private static double escape(double crh, double crl, double cih, double cil, int n, double inv,
+			double bail, double bail2, int maxIteration, double threshold2, int interval, double[] scratch)
+	{
+		double xh = 0.0, xl = 0.0, yh = 0.0, yl = 0.0;
+		double p, e, s, ah, al, bh, bl, ch, cl;
+		double dr = 1.0, di = 0.0, pr, pi, t;
+		double axh = Double.NaN, axl = Double.NaN, ayh = Double.NaN, ayl = Double.NaN;
+		int iterations = 0, check = interval, span = 1, renew = 1;
+
+		if(n == 2)
+		{
+			for(; iterations < maxIteration && xh*xh + yh*yh < bail2; iterations++)
+			{
+				// The orbit starts from 0, where the derivative vanishes, so it is taken from the first point on
+				if(interval > 0 && iterations > 0)
+				{
+					t = 2.0*(xh*dr - yh*di);
+					di = 2.0*(xh*di + yh*dr);
+					dr = t;
+					if(--check == 0)
+					{
+						if(dr*dr + di*di < threshold2)
+						{
+							if(xh == axh && xl == axl && yh == ayh && yl == ayl)
+							{
+								iterations = maxIteration;
+								break;
+							}
+							if(--renew == 0)
+							{
+								axh = xh;
+								axl = xl;
+								ayh = yh;
+								ayl = yl;
+								span *= 2;
+								renew = span;
+							}
+						}
+						check = interval;
+					}
+				}
+
+				// re^2, im^2 and re*im, each as an exact product plus its error
+				p = xh*xh;
+				e = DDComplex.twoProdError(xh, xh, p) + 2.0*xh*xl;
+				ah = p + e;
+				al = e - (ah - p);
+				p = yh*yh;
+				e = DDComplex.twoProdError(yh, yh, p) + 2.0*yh*yl;
+				bh = p + e;
+				bl = e - (bh - p);
+				p = xh*yh;
+				e = DDComplex.twoProdError(xh, yh, p) + (xh*yl + xl*yh);
+				ch = p + e;
+				cl = e - (ch - p);
+
+				// re = re^2 - im^2 + cr
+				s = ah - bh;
+				e = DDComplex.twoSumError(ah, -bh, s) + (al - bl);
+				ah = s + e;
+				al = e - (ah - s);
+				s = ah + crh;
+				e = DDComplex.twoSumError(ah, crh, s) + (al + crl);
+				xh = s + e;
+				xl = e - (xh - s);
+
+				// im = 2*re*im + ci
+				s = 2.0*ch + cih;
+				e = DDComplex.twoSumError(2.0*ch, cih, s) + (2.0*cl + cil);
+				yh = s + e;
+				yl = e - (yh - s);
+			}
+		}
+		else
+		{
+			for(; iterations < maxIteration && xh*xh + yh*yh < bail2; iterations++)
+			{
+				if(interval > 0 && iterations > 0)
+				{
+					pr = xh;
+					pi = yh;
+					for(int k = 2; k < n; k++)
+					{
+						t = pr*xh - pi*yh;
+						pi = pr*yh + pi*xh;
+						pr = t;
+					}
+					t = n*(pr*dr - pi*di);
+					di = n*(pr*di + pi*dr);
+					dr = t;
+					if(--check == 0)
+					{
+						if(dr*dr + di*di < threshold2)
+						{
+							if(xh == axh && xl == axl && yh == ayh && yl == ayl)
+							{
+								iterations = maxIteration;
+								break;
+							}
+							if(--renew == 0)
+							{
+								axh = xh;
+								axl = xl;
+								ayh = yh;
+								ayl = yl;
+								span *= 2;
+								renew = span;
+							}
+						}
+						check = interval;
+					}
+				}
+
+				scratch[0] = xh;
+				scratch[1] = xl;
+				scratch[2] = yh;
+				scratch[3] = yl;
+				for(int k = 1; k < n; k++)
+					multiply(scratch, xh, xl, yh, yl);
+
+				s = scratch[0] + crh;
+				e = DDComplex.twoSumError(scratch[0], crh, s) + (scratch[1] + crl);
+				xh = s + e;
+				xl = e - (xh - s);
+				s = scratch[2] + cih;
+				e = DDComplex.twoSumError(scratch[2], cih, s) + (scratch[3] + cil);
+				yh = s + e;
+				yl = e - (yh - s);
+			}
+		}
+
+		double mag = smoothMagnitude(xh - crh, yh - cih, inv);
+		return iterations + (bail2 - mag)/(bail2 - bail);
+	}
+
+	/** Multiplies the double-double complex number held in {@code z} in place by (xh+xl)&nbsp;+&nbsp;<i>i</i>(yh+yl) */
+	private static void multiply(double[] z, double xh, double xl, double yh, double yl)
+	{
+		double zrh = z[0], zrl = z[1], zih = z[2], zil = z[3];
+		double p, e, s, ah, al, bh, bl;
+
+		// re = zr*x - zi*y
+		p = zrh*xh;
+		e = DDComplex.twoProdError(zrh, xh, p) + (zrh*xl + zrl*xh);
+		ah = p + e;
+		al = e - (ah - p);
+		p = zih*yh;
+		e = DDComplex.twoProdError(zih, yh, p) + (zih*yl + zil*yh);
+		bh = p + e;
+		bl = e - (bh - p);
+		s = ah - bh;
+		e = DDComplex.twoSumError(ah, -bh, s) + (al - bl);
+		z[0] = s + e;
+		z[1] = e - (z[0] - s);
+
+		// im = zr*y + zi*x
+		p = zrh*yh;
+		e = DDComplex.twoProdError(zrh, yh, p) + (zrh*yl + zrl*yh);
+		ah = p + e;
+		al = e - (ah - p);
+		p = zih*xh;
+		e = DDComplex.twoProdError(zih, xh, p) + (zih*xl + zil*xh);
+		bh = p + e;
+		bl = e - (bh - p);
+		s = ah + bh;
+		e = DDComplex.twoSumError(ah, bh, s) + (al + bl);
+		z[2] = s + e;
+		z[3] = e - (z[2] - s);
+	}
+}
@@ -0,0 +1,106 @@
+import java.awt.Color;
+
+/**
+ * Maps smooth iteration values to colors, sweeping the hue once over the
+ * range of iterations and then shifting it by a constant
+ */
+public final class Palette
+{
+	/** Resolution of the table that encodes linear light back into sRGB */
+	private static final int LINEAR_STEPS = 1 << 16;
+	/** The linear light of each 8-bit sRGB value */
+	private static final float[] TO_LINEAR = new float[256];
+	/** The 8-bit sRGB value of each step of linear light */
+	private static final byte[] FROM_LINEAR = new byte[LINEAR_STEPS];
+
+	static {
+		for(int i = 0; i < 256; i++)
+		{
+			double c = i/255.0;
+			TO_LINEAR[i] = (float)(c <= 0.04045 ? c/12.92 : Math.pow((c + 0.055)/1.055, 2.4));
+		}
+		for(int i = 0; i < LINEAR_STEPS; i++)
+		{
+			double l = (double)i/(LINEAR_STEPS - 1);
+			double c = l <= 0.0031308 ? 12.92*l : 1.055*Math.pow(l, 1/2.4) - 0.055;
+			FROM_LINEAR[i] = (byte)Math.round(c*255);
+		}
+	}
+
+	private final float colorFactor, colorConstant;
+	private final int maxIteration;
+
+	/**
+	 * @param colorFactor	The amount to scale the hue sweep by
+	 * @param colorConstant	The amount to shift the hue by
+	 * @param maxIteration	The iteration limit that the hue sweep is relative to
+	 */
+	public Palette(float colorFactor, float colorConstant, int maxIteration)
+	{
+		this.colorFactor = colorFactor;
+		this.colorConstant = colorConstant;
+		this.maxIteration = maxIteration;
+	}
+
+	/**
+	 * Gives the ARGB color of a smooth iteration value
+	 *
+	 * @param smooth	The smooth iteration value of a pixel
+	 * @return			The color of the pixel
+	 */
+	public int color(float smooth)
+	{
+		return Color.HSBtoRGB(smooth/maxIteration * colorFactor + colorConstant, 1, 1);
+	}
+
+	/**
+	 * Colors the first {@code count} smooth iteration values into {@code rgb}
+	 *
+	 * @param smooth	The smooth iteration values
+	 * @param rgb		The array to hold the ARGB colors
+	 * @param count		The number of values to color
+	 */
+	public void color(float[] smooth, int[] rgb, int count)
+	{
+		for(int i = 0; i < count; i++)
+			rgb[i] = Color.HSBtoRGB(smooth[i]/maxIteration * colorFactor + colorConstant, 1, 1);
+	}
+
+	/**
+	 * Gives the linear light of an 8-bit sRGB channel
+	 *
+	 * @param channel	The channel value, from 0 to 255
+	 * @return			The light, from 0 to 1
+	 */
+	static float toLinear(int channel)
+	{
+		return TO_LINEAR[channel];
+	}
+
+	/**
+	 * Gives the 8-bit sRGB channel of an amount of linear light
+	 *
+	 * @param light	The light, from 0 to 1
+	 * @return		The channel value, from 0 to 255
+	 */
+	static int fromLinear(float light)
+	{
+		int i = (int)(light*(LINEAR_STEPS - 1) + 0.5f);
+		return FROM_LINEAR[i < 0 ? 0 : i >= LINEAR_STEPS ? LINEAR_STEPS - 1 : i] & 0xFF;
+	}
+
+	public float getColorFactor()
+	{
+		return colorFactor;
+	}
+
+	public float getColorConstant()
+	{
+		return colorConstant;
+	}
+
+	public int getMaxIteration()
+	{
+		return maxIteration;
+	}
+}
@@ -0,0 +1,372 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes images as 8-bit RGB or RGBA PNG files, filtering and compressing
+ * horizontal strips of the image in parallel
+ * <p>
+ * Each strip is deflated on its own, primed with the last 32KB of the strip
+ * above it so the compression ratio barely suffers, and flushed to a byte
+ * boundary so the strips can be concatenated into one zlib stream. The
+ * checksum of the stream is combined from the checksums of the strips. The
+ * result is an ordinary PNG that any decoder can read
+ * <p>
+ * Strips are written to the file in order as soon as they and every strip
+ * above them are done, and only a few strips per thread are started ahead of
+ * the one being written, so only the rows of those strips are held in memory
+ */
+public class PngWriter
+{
+	private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	/** Size of the deflate window, and so of the dictionary each strip is primed with */
+	private static final int WINDOW = 32768;
+	/** Rough number of filtered bytes in each strip */
+	private static final int STRIP_BYTES = 1 << 20;
+	private static final int ADLER_BASE = 65521;
+	/** Number of strips per thread that are compressed ahead of the strip being written */
+	private static final int AHEAD = 4;
+
+	private final int level;
+	private final Executor executor;
+	private final int threads;
+
+	/**
+	 * Creates a writer with the default compression level, that compresses on the common pool
+	 */
+	public PngWriter()
+	{
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a writer that compresses on the common pool
+	 *
+	 * @param level	The deflate level, from 0 to 9 or -1 for the default
+	 * @throws IllegalArgumentException If the compression level is invalid
+	 */
+	public PngWriter(int level)
+	{
+		this(level, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * Creates a writer
+	 *
+	 * @param level		The deflate level, from 0 to 9 or -1 for the default
+	 * @param executor	The executor to filter and compress the strips on
+	 * @param threads	The number of threads of the executor, which sets how finely the image is split
+	 * @throws IllegalArgumentException If the compression level or thread count is invalid
+	 */
+	public PngWriter(int level, Executor executor, int threads)
+	{
+		if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Invalid Compression Level: " + level);
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid Thread Count: " + threads);
+		this.level = level;
+		this.executor = executor;
+		this.threads = threads;
+	}
+
+	/** @return	The deflate level of this writer */
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Writes an image to a file, replacing the file if it exists
+	 *
+	 * @param img	The image to write
+	 * @param file	The file to write to
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(BufferedImage img, File file) throws IOException
+	{
+		write(RowSource.of(img), file);
+	}
+
+	/**
+	 * Writes an image that is read a row at a time to a file, replacing the
+	 * file if it exists. Only the rows of the strips in flight are held at once
+	 *
+	 * @param img	The rows of the image to write
+	 * @param file	The file to write to
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(RowSource img, File file) throws IOException
+	{
+		final int width = img.getWidth(), height = img.getHeight();
+		final int channels = img.hasAlpha() ? 4 : 3;
+		final int rowBytes = 1 + width*channels;
+		final int rowsPerStrip = Math.max(1, Math.min((height + 4*threads - 1)/(4*threads), STRIP_BYTES/rowBytes));
+		final int strips = (height + rowsPerStrip - 1)/rowsPerStrip;
+
+		// Strips are started only a few ahead of the one being written, which bounds the memory in flight
+		final int ahead = Math.min(strips, AHEAD*threads);
+		List<CompletableFuture<byte[][]>> parts = new ArrayList<CompletableFuture<byte[][]>>(strips);
+		for(int i = 0; i < ahead; i++)
+			parts.add(startStrip(img, channels, i*rowsPerStrip, rowsPerStrip));
+
+		try(FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			writeFully(out, ByteBuffer.wrap(SIGNATURE));
+
+			ByteBuffer ihdr = ByteBuffer.allocate(13);
+			ihdr.putInt(width).putInt(height).put((byte)8).put((byte)(channels == 4 ? 6 : 2))
+					.put((byte)0).put((byte)0).put((byte)0);
+			writeChunk(out, "IHDR", ihdr.array(), 0, 13);
+
+			// zlib header, a 32K window with the compression level hint
+			int flevel = level == Deflater.DEFAULT_COMPRESSION ? 2 : level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+			int cmf = 0x78, flg = flevel << 6;
+			flg += 31 - (cmf*256 + flg) % 31;
+			writeChunk(out, "IDAT", new byte[] {(byte)cmf, (byte)flg}, 0, 2);
+
+			long adler = 1;
+			for(int i = 0; i < strips; i++)
+			{
+				byte[][] strip = join(parts.get(i));
+				parts.set(i, null);
+				if(i + ahead < strips)
+					parts.add(startStrip(img, channels, (i + ahead)*rowsPerStrip, rowsPerStrip));
+				writeChunk(out, "IDAT", strip[0], 0, strip[0].length);
+				adler = combineAdler(adler, bytesToInt(strip[1], 0), bytesToInt(strip[1], 4));
+			}
+
+			ByteBuffer tail = ByteBuffer.allocate(4);
+			tail.putInt((int)adler);
+			writeChunk(out, "IDAT", tail.array(), 0, 4);
+			writeChunk(out, "IEND", new byte[0], 0, 0);
+		}finally
+		{
+			for(CompletableFuture<byte[][]> part : parts)
+				if(part != null)
+					part.cancel(false);
+		}
+	}
+
+	private CompletableFuture<byte[][]> startStrip(RowSource img, int channels, int y0, int rowsPerStrip)
+	{
+		final int y1 = Math.min(img.getHeight(), y0 + rowsPerStrip);
+		return CompletableFuture.supplyAsync(() -> strip(img, channels, y0, y1), executor);
+	}
+
+	/**
+	 * Filters and deflates the rows from {@code y0} to {@code y1}, giving the
+	 * compressed bytes, and the Adler-32 checksum and length of the filtered bytes
+	 */
+	private byte[][] strip(RowSource img, int channels, int y0, int y1)
+	{
+		final int width = img.getWidth();
+		final int rowBytes = 1 + width*channels;
+		// Rows above the strip are filtered again only to prime the dictionary
+		final int primeRows = y0 == 0 ? 0 : Math.min(y0, (WINDOW + rowBytes - 1)/rowBytes);
+		final int first = y0 - primeRows;
+
+		byte[] filtered = new byte[(y1 - first)*rowBytes];
+		byte[] prev = new byte[width*channels], cur = new byte[width*channels], tmp;
+		byte[][] scratch = new byte[5][width*channels];
+		int[] argb = new int[width];
+		if(first > 0)
+			readRow(img, first - 1, channels, argb, prev);
+		for(int y = first; y < y1; y++)
+		{
+			readRow(img, y, channels, argb, cur);
+			filterRow(prev, cur, channels, scratch, filtered, (y - first)*rowBytes);
+			tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+
+		int start = primeRows*rowBytes, length = filtered.length - start;
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if(start > 0)
+			{
+				int dict = Math.min(WINDOW, start);
+				deflater.setDictionary(filtered, start - dict, dict);
+			}
+			deflater.setInput(filtered, start, length);
+
+			boolean last = y1 == img.getHeight();
+			if(last)
+				deflater.finish();
+			byte[] buf = new byte[Math.max(4096, length/4)];
+			int n = 0, k, space;
+			while(true)
+			{
+				if(n == buf.length)
+					buf = Arrays.copyOf(buf, buf.length*2);
+				space = buf.length - n;
+				k = deflater.deflate(buf, n, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+				n += k;
+				// A sync flush is complete once it leaves room to spare in the buffer
+				if(last ? deflater.finished() : k < space)
+					break;
+			}
+
+			Adler32 adler = new Adler32();
+			adler.update(filtered, start, length);
+			byte[] sums = ByteBuffer.allocate(8).putInt((int)adler.getValue()).putInt(length).array();
+			return new byte[][] {Arrays.copyOf(buf, n), sums};
+		}finally
+		{
+			deflater.end();
+		}
+	}
+
+	/** Reads one row of the image as packed 8-bit RGB or RGBA samples */
+	private static void readRow(RowSource img, int y, int channels, int[] argb, byte[] out)
+	{
+		int width = img.getWidth();
+		img.readRow(y, argb);
+
+		int p, j = 0;
+		for(int x = 0; x < width; x++)
+		{
+			p = argb[x];
+			out[j++] = (byte)(p >>> 16);
+			out[j++] = (byte)(p >>> 8);
+			out[j++] = (byte)p;
+			if(channels == 4)
+				out[j++] = (byte)(p >>> 24);
+		}
+	}
+
+	/**
+	 * Writes the filter type and filtered bytes of a row, picking the filter whose
+	 * output has the smallest sum of absolute values, the heuristic libpng uses.
+	 * Each filter is run as its own loop over the row, so none of them branch per byte
+	 * on the filter type
+	 */
+	private static void filterRow(byte[] prev, byte[] cur, int bpp, byte[][] scratch, byte[] out, int offset)
+	{
+		int n = cur.length, i, a, b, c, p, pa, pb, pc;
+		byte[] f;
+
+		System.arraycopy(cur, 0, scratch[0], 0, n);
+
+		f = scratch[1];
+		for(i = 0; i < bpp; i++)
+			f[i] = cur[i];
+		for(; i < n; i++)
+			f[i] = (byte)(cur[i] - cur[i - bpp]);
+
+		f = scratch[2];
+		for(i = 0; i < n; i++)
+			f[i] = (byte)(cur[i] - prev[i]);
+
+		f = scratch[3];
+		for(i = 0; i < bpp; i++)
+			f[i] = (byte)(cur[i] - ((prev[i] & 0xFF) >>> 1));
+		for(; i < n; i++)
+			f[i] = (byte)(cur[i] - (((cur[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1));
+
+		f = scratch[4];
+		for(i = 0; i < bpp; i++)
+			f[i] = (byte)(cur[i] - prev[i]);
+		for(; i < n; i++)
+		{
+			a = cur[i - bpp] & 0xFF;
+			b = prev[i] & 0xFF;
+			c = prev[i - bpp] & 0xFF;
+			p = a + b - c;
+			pa = Math.abs(p - a);
+			pb = Math.abs(p - b);
+			pc = Math.abs(p - c);
+			f[i] = (byte)(cur[i] - (pa <= pb && pa <= pc ? a : pb <= pc ? b : c));
+		}
+
+		long best = Long.MAX_VALUE, sum;
+		int bestType = 0;
+		for(int type = 0; type < 5; type++)
+		{
+			f = scratch[type];
+			sum = 0;
+			for(i = 0; i < n; i++)
+				sum += Math.abs(f[i]);
+			if(sum < best)
+			{
+				best = sum;
+				bestType = type;
+			}
+		}
+
+		out[offset] = (byte)bestType;
+		System.arraycopy(scratch[bestType], 0, out, offset + 1, n);
+	}
+
+	/** Gives the Adler-32 checksum of two byte sequences joined, from the checksums of each */
+	private static long combineAdler(long adler1, long adler2, long length2)
+	{
+		long rem = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = rem*sum1 % ADLER_BASE;
+		sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+		if(sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if(sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if(sum2 >= 2L*ADLER_BASE) sum2 -= 2L*ADLER_BASE;
+		if(sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+		return sum1 | sum2 << 16;
+	}
+
+	private static long bytesToInt(byte[] b, int offset)
+	{
+		return ByteBuffer.wrap(b, offset, 4).getInt() & 0xFFFFFFFFL;
+	}
+
+	private static void writeChunk(FileChannel out, String type, byte[] data, int offset, int length) throws IOException
+	{
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, offset, length);
+
+		ByteBuffer head = ByteBuffer.allocate(8);
+		head.putInt(length).put(name).flip();
+		ByteBuffer tail = ByteBuffer.allocate(4);
+		tail.putInt((int)crc.getValue()).flip();
+
+		writeFully(out, head);
+		writeFully(out, ByteBuffer.wrap(data, offset, length));
+		writeFully(out, tail);
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException
+	{
+		while(buf.hasRemaining())
+			out.write(buf);
+	}
+
+	private static byte[][] join(CompletableFuture<byte[][]> part) throws IOException
+	{
+		try {
+			return part.join();
+		}catch(CompletionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if(e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new IOException("Exception Encoding Image:\t" + e.getCause(), e.getCause());
+		}
+	}
+}
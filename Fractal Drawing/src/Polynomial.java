@@ -0,0 +1,210 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * A user supplied polynomial formula
+ * <i>z</i>&nbsp;=&nbsp;a<sub>n</sub><i>z</i><sup>n</sup>&nbsp;+&nbsp;...&nbsp;+&nbsp;a<sub>1</sub><i>z</i>&nbsp;+&nbsp;a<sub>0</sub>&nbsp;+&nbsp;<i>z</i><sub>0</sub>,
+ * starting from <i>z</i>&nbsp;=&nbsp;0, with real coefficients
+ * <p>
+ * The kernel of this class evaluates the polynomial by looping over the
+ * coefficient array. {@link #compile(double[])} instead generates and
+ * compiles a subclass with the coefficients unrolled into the kernel as
+ * constants, whenever a system Java compiler is available at runtime
+ */
+public class Polynomial extends Formula
+{
+	private static int generated = 0;
+
+	/** The coefficients, from the highest power down */
+	protected final double[] coefficients;
+
+	/**
+	 * Creates a polynomial formula that is evaluated by looping over its coefficients
+	 *
+	 * @param coefficients	The coefficients from the highest power down
+	 * @throws IllegalArgumentException If the polynomial is not at least quadratic
+	 */
+	public Polynomial(double[] coefficients)
+	{
+		int lead = 0;
+		while(lead < coefficients.length && coefficients[lead] == 0.0)
+			lead++;
+		if(coefficients.length - lead < 3)
+			throw new IllegalArgumentException("Polynomial must be at least quadratic: " + Arrays.toString(coefficients));
+
+		this.coefficients = Arrays.copyOfRange(coefficients, lead, coefficients.length);
+	}
+
+	/**
+	 * Gives a polynomial formula with a kernel generated for its coefficients,
+	 * or a looping kernel if the kernel could not be generated
+	 *
+	 * @param coefficients	The coefficients from the highest power down
+	 * @return				The polynomial formula
+	 * @throws IllegalArgumentException If the polynomial is not at least quadratic
+	 */
+	public static Polynomial compile(double[] coefficients)
+	{
+		Polynomial interpreted = new Polynomial(coefficients);
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null)
+			return interpreted;
+
+		try {
+			return generate(compiler, interpreted.coefficients);
+		}catch(Exception e)
+		{
+			System.out.println("Unable to compile polynomial kernel, using interpreted kernel: " + e.getMessage());
+			return interpreted;
+		}
+	}
+
+	/** @return	The degree of this polynomial */
+	public int getDegree()
+	{
+		return coefficients.length - 1;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "Polynomial " + Arrays.toString(coefficients);
+	}
+
+	@Override
+	public String getSpec()
+	{
+		StringBuilder spec = new StringBuilder("poly:");
+		for(int i = 0; i < coefficients.length; i++)
+			spec.append(i == 0 ? "" : ",").append(coefficients[i]);
+		return spec.toString();
+	}
+
+	@Override
+	protected void iterateDouble(View view, int x0, int y0, int w, int h, float[] out)
+	{
+		final double bail = view.getBailout();
+		final double xMin = view.getXMin(), xScale = view.getXScale();
+		final int maxIteration = view.getMaxIteration();
+		final double inv = 1.0 / getDegree();
+		final double bail2 = bail*bail;
+		final double[] a = coefficients;
+
+		double cr, ci, zr, zi, pr, pi, t;
+		int iterations;
+
+		for(int y = 0; y < h; y++)
+		{
+			ci = view.im(y0+y);
+			for(int x = 0; x < w; x++)
+			{
+				cr = (x0+x)*xScale + xMin;
+				zr = zi = 0.0;
+
+				for(iterations = 0; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)
+				{
+					pr = a[0];
+					pi = 0.0;
+					for(int k = 1; k < a.length; k++)
+					{
+						t = pr*zr - pi*zi + a[k];
+						pi = pr*zi + pi*zr;
+						pr = t;
+					}
+					zr = pr + cr;
+					zi = pi + ci;
+				}
+
+				out[y*w + x] = (float)(iterations + (bail2 - smoothMagnitude(zr - cr, zi - ci, inv))/(bail2 - bail));
+			}
+		}
+	}
+
+	private static synchronized Polynomial generate(JavaCompiler compiler, double[] a) throws Exception
+	{
+		String name = "GeneratedPolynomial" + (++generated);
+
+		StringBuilder horner = new StringBuilder();
+		horner.append("\t\t\t\t\tpr = " + literal(a[0]) + "*zr;\n");
+		horner.append("\t\t\t\t\tpi = " + literal(a[0]) + "*zi;\n");
+		for(int k = 1; k < a.length - 1; k++)
+		{
+			horner.append("\t\t\t\t\tt = pr" + (a[k] != 0.0 ? " + " + literal(a[k]) : "") + ";\n");
+			horner.append("\t\t\t\t\tpr = t*zr - pi*zi;\n");
+			horner.append("\t\t\t\t\tpi = t*zi + pi*zr;\n");
+		}
+		horner.append("\t\t\t\t\tzr = pr" + (a[a.length-1] != 0.0 ? " + " + literal(a[a.length-1]) : "") + " + cr;\n");
+		horner.append("\t\t\t\t\tzi = pi + ci;\n");
+
+		String source = "public final class " + name + " extends Polynomial\n"
+				+ "{\n"
+				+ "\tpublic " + name + "(double[] coefficients) { super(coefficients); }\n"
+				+ "\n"
+				+ "\t@Override\n"
+				+ "\tprotected void iterateDouble(View view, int x0, int y0, int w, int h, float[] out)\n"
+				+ "\t{\n"
+				+ "\t\tfinal double bail = view.getBailout();\n"
+				+ "\t\tfinal double xMin = view.getXMin(), xScale = view.getXScale();\n"
+				+ "\t\tfinal int maxIteration = view.getMaxIteration();\n"
+				+ "\t\tfinal double inv = 1.0 / " + (a.length - 1) + ";\n"
+				+ "\t\tfinal double bail2 = bail*bail;\n"
+				+ "\t\tdouble cr, ci, zr, zi, pr, pi, t;\n"
+				+ "\t\tint iterations;\n"
+				+ "\t\tfor(int y = 0; y < h; y++)\n"
+				+ "\t\t{\n"
+				+ "\t\t\tci = view.im(y0+y);\n"
+				+ "\t\t\tfor(int x = 0; x < w; x++)\n"
+				+ "\t\t\t{\n"
+				+ "\t\t\t\tcr = (x0+x)*xScale + xMin;\n"
+				+ "\t\t\t\tzr = zi = 0.0;\n"
+				+ "\t\t\t\tfor(iterations = 0; iterations < maxIteration && zr*zr + zi*zi < bail2; iterations++)\n"
+				+ "\t\t\t\t{\n"
+				+ horner
+				+ "\t\t\t\t}\n"
+				+ "\t\t\t\tout[y*w + x] = (float)(iterations + (bail2 - smoothMagnitude(zr - cr, zi - ci, inv))/(bail2 - bail));\n"
+				+ "\t\t\t}\n"
+				+ "\t\t}\n"
+				+ "\t}\n"
+				+ "}\n";
+
+		File dir = Files.createTempDirectory("fractal-kernel").toFile();
+		dir.deleteOnExit();
+		File src = new File(dir, name + ".java");
+		src.deleteOnExit();
+		Files.write(src.toPath(), source.getBytes(StandardCharsets.UTF_8));
+
+		String classPath = System.getProperty("java.class.path");
+		URL self = Polynomial.class.getProtectionDomain().getCodeSource().getLocation();
+		if(self != null)
+			classPath = new File(self.toURI()).getPath() + File.pathSeparator + classPath;
+
+		Writer diagnostics = new StringWriter();
+		Boolean ok = compiler.getTask(diagnostics, null, null,
+				Arrays.asList("-classpath", classPath, "-d", dir.getPath()), null,
+				compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)
+						.getJavaFileObjectsFromFiles(Collections.singletonList(src))).call();
+		if(ok == null || !ok)
+			throw new IOException(diagnostics.toString());
+		new File(dir, name + ".class").deleteOnExit();
+
+		@SuppressWarnings("resource")
+		URLClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, Polynomial.class.getClassLoader());
+		return (Polynomial)loader.loadClass(name).getConstructor(double[].class).newInstance((Object)a);
+	}
+
+	private static String literal(double d)
+	{
+		return "(" + Double.toString(d) + ")";
+	}
+}
@@ -0,0 +1,96 @@
+
+/**
+ * The numeric tiers that the escape-time kernels can iterate in, ordered
+ * from cheapest to most expensive
+ * <p>
+ * A tier can be used for a view as long as the distance between two
+ * adjacent pixels is still representable next to the largest coordinate
+ * in the view, with guard bits to spare for the rounding error that builds
+ * up over the course of the iteration. That error can grow by up to a bit
+ * for every doubling of the iteration count, so the guard grows with the
+ * logarithm of the iteration limit on top of a fixed margin.
+ * <p>
+ * Near the boundary of a set that error is amplified by the orbit itself,
+ * so even a well guarded {@link #FLOAT} visibly changes pixels that a double
+ * iterates the same as an exact value would. It is only selected for callers
+ * that opt into it, such as interactive previews that are redrawn anyway
+ */
+public enum Precision
+{
+	/**
+	 * 24-bit mantissa, half the width of a double so twice as many values fit
+	 * in a vector register. Only selected when asked for
+	 */
+	FLOAT(24),
+	/** 53-bit mantissa, the precision of {@link Complex} */
+	DOUBLE(53),
+	/** Roughly 106-bit mantissa, for zooms past what a double can resolve */
+	EXTENDED(106);
+
+	/** Bits of the mantissa that are reserved as a margin, on top of those for each doubling of the iterations */
+	public static final int GUARD_BITS = 6;
+
+	private final int mantissaBits;
+
+	private Precision(int mantissaBits)
+	{
+		this.mantissaBits = mantissaBits;
+	}
+
+	/**
+	 * Gives the number of significant bits in the mantissa of this tier
+	 *
+	 * @return	The mantissa width of this tier, in bits
+	 */
+	public int getMantissaBits()
+	{
+		return mantissaBits;
+	}
+
+	/**
+	 * Gives the number of bits of the mantissa reserved for the rounding error
+	 * of an iteration that runs up to {@code maxIteration} steps
+	 *
+	 * @param maxIteration	The iteration limit
+	 * @return				The number of guard bits
+	 */
+	public static int guardBits(int maxIteration)
+	{
+		return GUARD_BITS + 32 - Integer.numberOfLeadingZeros(Math.max(maxIteration - 1, 0));
+	}
+
+	/**
+	 * Checks whether adjacent pixels {@code spacing} apart can still be told
+	 * apart by this tier near a coordinate of size {@code magnitude}, after
+	 * up to {@code maxIteration} steps of rounding error
+	 *
+	 * @param spacing		The distance between adjacent pixels on the complex plane
+	 * @param magnitude		The largest absolute coordinate that will be iterated
+	 * @param maxIteration	The iteration limit
+	 * @return				{@code true} if this tier resolves the pixel spacing
+	 */
+	public boolean resolves(double spacing, double magnitude, int maxIteration)
+	{
+		return spacing >= magnitude * Math.scalb(1.0, guardBits(maxIteration) - mantissaBits);
+	}
+
+	/**
+	 * Picks the cheapest tier that still resolves adjacent pixels
+	 * <p>
+	 * If no tier is able to resolve the spacing, {@link #EXTENDED} is given
+	 * as the best available
+	 *
+	 * @param spacing		The distance between adjacent pixels on the complex plane
+	 * @param magnitude		The largest absolute coordinate that will be iterated
+	 * @param maxIteration	The iteration limit
+	 * @param allowFloat	Whether {@link #FLOAT} may be picked, at the cost of pixels near the boundary
+	 * @return				The cheapest sufficient tier
+	 */
+	public static Precision select(double spacing, double magnitude, int maxIteration, boolean allowFloat)
+	{
+		for(Precision p : values())
+			if((p != FLOAT || allowFloat) && p.resolves(spacing, magnitude, maxIteration))
+				return p;
+		return EXTENDED;
+	}
+}
@@ -0,0 +1,224 @@
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * A long-lived, thread-safe renderer that any number of callers can submit
+ * {@link RenderRequest}s to at the same time
+ * <p>
+ * All requests share one bounded set of worker threads. Workers take tiles
+ * from the active jobs in turn, one tile per job, so a small render keeps
+ * making progress next to a huge one. A request can also cap how many workers
+ * it occupies at once, and how much memory it may hold.
+ * <p>
+ * Workers are daemon threads, so an engine never keeps the JVM alive
+ */
+public final class RenderEngine
+{
+	private static RenderEngine shared;
+
+	private final Object lock = new Object();
+	/** The jobs with tiles not yet started, in the order they get their next turn */
+	private final ArrayDeque<RenderJob> active = new ArrayDeque<RenderJob>();
+	private final Thread[] workers;
+	private boolean shutdown;
+
+	/**
+	 * Creates an engine with a fixed number of worker threads
+	 *
+	 * @param threads	The number of worker threads
+	 */
+	public RenderEngine(int threads)
+	{
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid Thread Count: " + threads);
+
+		workers = new Thread[threads];
+		for(int i = 0; i < threads; i++)
+		{
+			workers[i] = new Thread(new Worker(), "Render Worker " + (i+1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Gives the engine that is shared by everything in this JVM, with one
+	 * worker per available processor, creating it on first use
+	 *
+	 * @return	The shared engine
+	 */
+	public static synchronized RenderEngine getShared()
+	{
+		if(shared == null)
+			shared = new RenderEngine(Runtime.getRuntime().availableProcessors());
+		return shared;
+	}
+
+	/** @return	The number of worker threads of this engine */
+	public int getThreadCount()
+	{
+		return workers.length;
+	}
+
+	/**
+	 * Submits a request to be rendered
+	 *
+	 * @param request	The request to render
+	 * @return			The job that the request is rendered by
+	 * @throws IllegalArgumentException If the request would need more memory than its limit
+	 * @throws IllegalStateException If this engine has been shut down
+	 */
+	public RenderJob submit(RenderRequest request)
+	{
+		return submit(request, null);
+	}
+
+	/**
+	 * Submits a request to be rendered, with a listener that is given each
+	 * tile as it is completed
+	 *
+	 * @param request	The request to render
+	 * @param listener	The listener to give completed tiles to, or {@code null}
+	 * @return			The job that the request is rendered by
+	 * @throws IllegalArgumentException If the request would need more memory than its limit
+	 * @throws IllegalStateException If this engine has been shut down
+	 */
+	public RenderJob submit(RenderRequest request, TileListener listener)
+	{
+		if(request.getPalette() == null)
+			throw new IllegalArgumentException("A request without a palette can only be streamed");
+		return submit(request, listener, true);
+	}
+
+	/**
+	 * Submits a request whose tiles are only given to a listener, and are not
+	 * kept in an image. The memory of the job is then only that of the tiles
+	 * in flight, however large the view is
+	 *
+	 * @param request	The request to render, which may have no palette
+	 * @param listener	The listener to give completed tiles to
+	 * @return			The job that the request is rendered by, which has no image
+	 * @throws IllegalArgumentException If the request would need more memory than its limit
+	 * @throws IllegalStateException If this engine has been shut down
+	 */
+	public RenderJob stream(RenderRequest request, TileListener listener)
+	{
+		return submit(request, Objects.requireNonNull(listener), false);
+	}
+
+	private RenderJob submit(RenderRequest request, TileListener listener, boolean keepImage)
+	{
+		int threads = workers.length;
+		if(request.getMaxThreads() > 0)
+			threads = Math.min(threads, request.getMaxThreads());
+
+		long bytes = request.estimateBytes(threads, keepImage);
+		if(bytes > request.getMaxBytes())
+			throw new IllegalArgumentException("Request needs about " + bytes
+					+ " bytes, over its limit of " + request.getMaxBytes());
+
+		RenderJob job = new RenderJob(this, request, listener, threads, keepImage);
+		synchronized(lock)
+		{
+			if(shutdown)
+				throw new IllegalStateException("Render engine has been shut down");
+			if(!job.isDone())
+			{
+				active.add(job);
+				lock.notifyAll();
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Stops the workers of this engine once their current tiles are done.
+	 * Jobs that are still running are cancelled
+	 */
+	public void shutdown()
+	{
+		RenderJob[] jobs;
+		synchronized(lock)
+		{
+			shutdown = true;
+			jobs = active.toArray(new RenderJob[0]);
+			lock.notifyAll();
+		}
+		for(RenderJob j : jobs)
+			j.cancel(false);
+	}
+
+	/** Removes the tiles of a cancelled or failed job that are not yet started */
+	void drop(RenderJob job)
+	{
+		synchronized(lock)
+		{
+			job.clearPending();
+			active.remove(job);
+		}
+	}
+
+	/**
+	 * Picks the job that gets the next tile, taking turns between jobs and
+	 * skipping jobs that are at their thread limit, with the lock held
+	 */
+	private RenderJob next()
+	{
+		int n = active.size();
+		for(int i = 0; i < n; i++)
+		{
+			RenderJob job = active.poll();
+			if(!job.hasPending())
+				continue;
+			active.add(job);
+			if(job.canStart())
+				return job;
+		}
+		return null;
+	}
+
+	private final class Worker implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			RenderJob job;
+			Tile tile;
+
+			for(;;)
+			{
+				synchronized(lock)
+				{
+					while((job = next()) == null)
+					{
+						if(shutdown)
+							return;
+						try {
+							lock.wait();
+						}catch(InterruptedException e)
+						{
+							if(shutdown)
+								return;
+						}
+					}
+					tile = job.start();
+				}
+
+				try {
+					job.render(tile);
+				}catch(RuntimeException | Error e)
+				{
+					// The job has already failed with anything its tile threw, so only a
+					// callback run once it was done can land here, and the worker carries on
+				}finally
+				{
+					synchronized(lock)
+					{
+						job.stopped();
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
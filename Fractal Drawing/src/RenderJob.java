@@ -0,0 +1,332 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A render submitted to a {@link RenderEngine}, and the image it renders into,
+ * if it keeps one
+ * <p>
+ * The tiles of a job are started in the order its request gives them, and a
+ * supersampled request is averaged down to its pixels inside each tile. The
+ * job is done once every tile has been written to its image, it fails as soon
+ * as any tile fails, and a cancelled job stops its running tiles at the end
+ * of their current row
+ */
+public final class RenderJob implements Future<BufferedImage>
+{
+	private final RenderEngine engine;
+	private final RenderRequest request;
+	private final TileListener listener;
+	private final BufferedImage img;
+	private final int threadLimit;
+
+	/** Guarded by the lock of the engine */
+	private final ArrayDeque<Tile> pending;
+	/** Guarded by the lock of the engine */
+	private int inFlight;
+
+	/** Guarded by this */
+	private int remaining;
+	/** Guarded by this */
+	private Throwable failure;
+	/** The actions to run once the job is done, or {@code null} once they have been run. Guarded by this */
+	private List<Runnable> whenDone;
+	private volatile boolean cancelled, done;
+
+	RenderJob(RenderEngine engine, RenderRequest request, TileListener listener, int threadLimit, boolean keepImage)
+	{
+		this.engine = engine;
+		this.request = request;
+		this.listener = listener;
+		this.threadLimit = threadLimit;
+
+		View v = request.getView();
+		img = keepImage ? new BufferedImage(v.getWidth(), v.getHeight(), BufferedImage.TYPE_INT_ARGB) : null;
+		pending = new ArrayDeque<Tile>(request.getTiles());
+		remaining = pending.size();
+		done = remaining == 0;
+		whenDone = done ? null : new ArrayList<Runnable>();
+	}
+
+	/** @return	Whether a worker may start another tile of this job, with the engine lock held */
+	boolean canStart()
+	{
+		return !pending.isEmpty() && inFlight < threadLimit;
+	}
+
+	/** @return	Whether this job has tiles that are not yet started, with the engine lock held */
+	boolean hasPending()
+	{
+		return !pending.isEmpty();
+	}
+
+	/** Takes the next tile to start, with the engine lock held */
+	Tile start()
+	{
+		inFlight++;
+		return pending.poll();
+	}
+
+	/** Marks a started tile as no longer in flight, with the engine lock held */
+	void stopped()
+	{
+		inFlight--;
+	}
+
+	/** Drops every tile not yet started, with the engine lock held */
+	void clearPending()
+	{
+		pending.clear();
+	}
+
+	/**
+	 * Renders one tile of this job on the calling worker, a row at a time so
+	 * that a cancelled job stops early
+	 * <p>
+	 * Anything thrown while rendering the tile, errors such as running out of
+	 * memory included, fails this job rather than the worker, so a worker of a
+	 * long lived engine survives a job that could not be rendered
+	 */
+	void render(Tile tile)
+	{
+		Formula formula = request.getFormula();
+		Precision precision = request.getPrecision();
+		Palette palette = request.getPalette();
+		View view = request.getView();
+		int w = tile.getWidth();
+
+		try {
+			float[] smooth = new float[tile.getArea()];
+			float[] row = new float[w];
+			int[] argb = palette == null ? null : new int[tile.getArea()];
+
+			if(request.getSamples() > 1)
+			{
+				if(!sample(tile, smooth, argb))
+					return;
+			}
+			else
+			{
+				for(int y = 0; y < tile.getHeight(); y++)
+				{
+					if(cancelled)
+						return;
+					formula.iterate(precision, view, tile.getX(), tile.getY() + y, w, 1, row);
+					System.arraycopy(row, 0, smooth, y*w, w);
+				}
+				if(palette != null)
+					palette.color(smooth, argb, argb.length);
+			}
+
+			if(cancelled)
+				return;
+			if(img != null)
+				img.setRGB(tile.getX(), tile.getY(), w, tile.getHeight(), argb, 0, w);
+			if(listener != null)
+				listener.tileCompleted(this, tile, smooth, argb);
+			completed(null);
+		}catch(RuntimeException | Error e)
+		{
+			completed(e);
+		}
+	}
+
+	/**
+	 * Renders a tile of a supersampled request, iterating one row of samples
+	 * at a time in the finer view and adding the linear light of their colors
+	 * into the pixels they fall in
+	 *
+	 * @return	Whether the tile was completed, rather than cancelled
+	 */
+	private boolean sample(Tile tile, float[] smooth, int[] argb)
+	{
+		Formula formula = request.getFormula();
+		Precision precision = request.getPrecision();
+		Palette palette = request.getPalette();
+		View fine = request.getSampleView();
+		int s = request.getSamples();
+		int w = tile.getWidth(), fw = w*s;
+		float[] row = new float[fw];
+		int[] colors = new int[fw];
+		float[] light = new float[3*w];
+		float[] sum = new float[w];
+		float norm = 1f/(s*s);
+		int c, i;
+
+		for(int y = 0; y < tile.getHeight(); y++)
+		{
+			Arrays.fill(light, 0f);
+			Arrays.fill(sum, 0f);
+			for(int j = 0; j < s; j++)
+			{
+				if(cancelled)
+					return false;
+				formula.iterate(precision, fine, tile.getX()*s, (tile.getY() + y)*s + j, fw, 1, row);
+				palette.color(row, colors, fw);
+				for(int x = 0; x < w; x++)
+					for(i = x*s; i < (x + 1)*s; i++)
+					{
+						c = colors[i];
+						light[3*x] += Palette.toLinear((c >> 16) & 0xFF);
+						light[3*x + 1] += Palette.toLinear((c >> 8) & 0xFF);
+						light[3*x + 2] += Palette.toLinear(c & 0xFF);
+						sum[x] += row[i];
+					}
+			}
+			for(int x = 0; x < w; x++)
+			{
+				smooth[y*w + x] = sum[x]*norm;
+				argb[y*w + x] = 0xFF000000 | Palette.fromLinear(light[3*x]*norm) << 16
+						| Palette.fromLinear(light[3*x + 1]*norm) << 8 | Palette.fromLinear(light[3*x + 2]*norm);
+			}
+		}
+		return true;
+	}
+
+	private void completed(Throwable t)
+	{
+		boolean failed;
+		synchronized(this)
+		{
+			if(done)
+				return;
+			if(t != null)
+				failure = t;
+			remaining--;
+			failed = failure != null;
+			if(failed || remaining == 0)
+			{
+				done = true;
+				notifyAll();
+			}
+		}
+		if(failed)
+			engine.drop(this);
+		if(done)
+			runWhenDone();
+	}
+
+	/**
+	 * Runs an action once this job is done, whether it completed, failed or
+	 * was cancelled. The action runs on the thread that finishes the job,
+	 * which may be a worker of the engine, so it should be quick. If the job
+	 * is already done it runs at once on the calling thread
+	 *
+	 * @param action	The action to run
+	 */
+	public void whenDone(Runnable action)
+	{
+		synchronized(this)
+		{
+			if(whenDone != null)
+			{
+				whenDone.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	private void runWhenDone()
+	{
+		List<Runnable> actions;
+		synchronized(this)
+		{
+			actions = whenDone;
+			whenDone = null;
+		}
+		if(actions != null)
+			for(Runnable a : actions)
+				a.run();
+	}
+
+	public RenderRequest getRequest()
+	{
+		return request;
+	}
+
+	/**
+	 * Gives the image of this job, which is filled in as tiles complete
+	 *
+	 * @return	The image this job renders into, or {@code null} if the job was
+	 * 			{@linkplain RenderEngine#stream(RenderRequest, TileListener) streamed}
+	 */
+	public BufferedImage getImage()
+	{
+		return img;
+	}
+
+	/** @return	The number of tiles that have been completed so far */
+	public synchronized int getCompletedTiles()
+	{
+		return request.getTiles().size() - remaining;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		synchronized(this)
+		{
+			if(done)
+				return false;
+			cancelled = true;
+			done = true;
+			notifyAll();
+		}
+		engine.drop(this);
+		runWhenDone();
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	@Override
+	public synchronized BufferedImage get() throws InterruptedException, ExecutionException
+	{
+		while(!done)
+			wait();
+		return result();
+	}
+
+	@Override
+	public synchronized BufferedImage get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long left;
+		while(!done)
+		{
+			left = deadline - System.nanoTime();
+			if(left <= 0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+		return result();
+	}
+
+	private BufferedImage result() throws ExecutionException
+	{
+		if(cancelled)
+			throw new CancellationException();
+		if(failure != null)
+			throw new ExecutionException(failure);
+		return img;
+	}
+}
@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything that a {@link RenderEngine} needs to render one image, along
+ * with the limits that the request is held to
+ */
+public final class RenderRequest
+{
+	/** Edge length of the tiles a view is split into when none are given */
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private final Formula formula;
+	private final View view;
+	private final Palette palette;
+	private final Precision precision;
+	private final List<Tile> tiles;
+	private final int maxThreads;
+	private final long maxBytes;
+	/** Number of samples along each axis of a pixel, and the view they are taken in */
+	private final int samples;
+	private final View sampleView;
+
+	/**
+	 * Creates a request for the whole view, at the precision the view needs,
+	 * with no limits beyond those of the engine
+	 *
+	 * @param formula	The formula to render
+	 * @param view		The view to render
+	 * @param palette	The palette to color the render with
+	 */
+	public RenderRequest(Formula formula, View view, Palette palette)
+	{
+		this(formula, view, palette, view.selectPrecision(),
+				Tile.grid(view.getWidth(), view.getHeight(), DEFAULT_TILE_SIZE), 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a request for the given tiles of a view
+	 *
+	 * @param formula		The formula to render
+	 * @param view			The view to render
+	 * @param palette		The palette to color the render with, or {@code null} to leave
+	 * 						it uncolored, which only {@link RenderEngine#stream} accepts
+	 * @param precision		The precision tier to iterate in
+	 * @param tiles			The tiles to render, in the order they should be started
+	 * @param maxThreads	The most workers that may render tiles of this request at once, or 0 for no limit
+	 * @param maxBytes		The most memory this request may hold for its image and tile buffers
+	 * @throws IllegalArgumentException If a tile lies outside of the view, or a limit is invalid
+	 */
+	public RenderRequest(Formula formula, View view, Palette palette, Precision precision,
+			List<Tile> tiles, int maxThreads, long maxBytes)
+	{
+		this(formula, view, palette, precision, tiles, maxThreads, maxBytes, 1);
+	}
+
+	private RenderRequest(Formula formula, View view, Palette palette, Precision precision,
+			List<Tile> tiles, int maxThreads, long maxBytes, int samples)
+	{
+		if(maxThreads < 0)
+			throw new IllegalArgumentException("Invalid Thread Limit: " + maxThreads);
+		if(maxBytes <= 0)
+			throw new IllegalArgumentException("Invalid Memory Limit: " + maxBytes);
+		for(Tile t : tiles)
+			if(t.getX() < 0 || t.getY() < 0
+					|| t.getX() + t.getWidth() > view.getWidth() || t.getY() + t.getHeight() > view.getHeight())
+				throw new IllegalArgumentException("Tile outside of view: " + t);
+
+		this.formula = formula;
+		this.view = view;
+		this.palette = palette;
+		this.precision = precision;
+		this.tiles = Collections.unmodifiableList(new ArrayList<Tile>(tiles));
+		this.maxThreads = maxThreads;
+		this.maxBytes = maxBytes;
+		this.samples = samples;
+		sampleView = view.scale(samples);
+	}
+
+	/**
+	 * Gives this request supersampled, with each pixel the mean of a grid of
+	 * {@code samples}&times;{@code samples} samples across it, averaged in
+	 * linear light. The samples are those of a view {@code samples} times as
+	 * large in each direction, which is iterated a row of samples at a time
+	 * and is never held whole. The smooth value of each pixel is the mean of
+	 * those of its samples
+	 * <p>
+	 * The request is iterated at the precision the finer view needs, if it is
+	 * higher than the precision of this request
+	 *
+	 * @param samples	The number of samples along each axis of a pixel
+	 * @return			The supersampled request
+	 * @throws IllegalArgumentException If the number of samples is not positive,
+	 * 									or this request has no palette to average the colors of
+	 */
+	public RenderRequest withSamples(int samples)
+	{
+		if(samples <= 0)
+			throw new IllegalArgumentException("Invalid Sample Count: " + samples);
+		if(samples > 1 && palette == null)
+			throw new IllegalArgumentException("A supersampled request needs a palette");
+		RenderRequest sampled = new RenderRequest(formula, view, palette, precision, tiles, maxThreads, maxBytes, samples);
+		Precision needed = sampled.sampleView.selectPrecision();
+		if(needed.compareTo(precision) <= 0)
+			return sampled;
+		return new RenderRequest(formula, view, palette, needed, tiles, maxThreads, maxBytes, samples);
+	}
+
+	/**
+	 * Gives this request for other tiles of its view, with its precision,
+	 * limits and samples unchanged
+	 *
+	 * @param tiles	The tiles to render, in the order they should be started
+	 * @return		The request for the tiles
+	 * @throws IllegalArgumentException If a tile lies outside of the view
+	 */
+	public RenderRequest withTiles(List<Tile> tiles)
+	{
+		return new RenderRequest(formula, view, palette, precision, tiles, maxThreads, maxBytes, samples);
+	}
+
+	/**
+	 * Gives an estimate of the memory a render of this request holds at
+	 * once, which is its image plus the buffers of each tile in flight
+	 *
+	 * @param threads	The number of tiles that may be in flight at once
+	 * @return			The estimated memory use, in bytes
+	 */
+	public long estimateBytes(int threads)
+	{
+		return estimateBytes(threads, true);
+	}
+
+	/**
+	 * Gives an estimate of the memory a render of this request holds at once
+	 *
+	 * @param threads	The number of tiles that may be in flight at once
+	 * @param image		Whether the render keeps an image of the whole view
+	 * @return			The estimated memory use, in bytes
+	 */
+	public long estimateBytes(int threads, boolean image)
+	{
+		long largest = 0, widest = 0;
+		for(Tile t : tiles)
+		{
+			largest = Math.max(largest, t.getArea());
+			widest = Math.max(widest, t.getWidth());
+		}
+		// A supersampled tile also holds one row of samples, and the sums of one row of pixels
+		long sampling = samples == 1 ? 0L : (8L*samples + 12L)*widest;
+		return (image ? 4L*view.getWidth()*view.getHeight() : 0L) + ((palette == null ? 8L : 12L)*largest + sampling)*threads;
+	}
+
+	public Formula getFormula()
+	{
+		return formula;
+	}
+
+	public View getView()
+	{
+		return view;
+	}
+
+	public Palette getPalette()
+	{
+		return palette;
+	}
+
+	public Precision getPrecision()
+	{
+		return precision;
+	}
+
+	public List<Tile> getTiles()
+	{
+		return tiles;
+	}
+
+	public int getMaxThreads()
+	{
+		return maxThreads;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/** @return	The number of samples along each axis of a pixel, 1 if the request is not supersampled */
+	public int getSamples()
+	{
+		return samples;
+	}
+
+	/** @return	The view that the samples of a supersampled request are taken in, or the view if it is not */
+	public View getSampleView()
+	{
+		return sampleView;
+	}
+}
@@ -0,0 +1,73 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The image given back by a time-budgeted render, along with which of its
+ * tiles were refined to full quality before the deadline
+ * <p>
+ * Tiles that did not reach full quality still hold the coarse preview
+ */
+public final class RenderResult
+{
+	private final BufferedImage img;
+	private final List<Tile> tiles;
+	private final boolean[] full;
+	private final long elapsed;
+
+	RenderResult(BufferedImage img, List<Tile> tiles, boolean[] full, long elapsedNanos)
+	{
+		this.img = img;
+		this.tiles = Collections.unmodifiableList(new ArrayList<Tile>(tiles));
+		this.full = full.clone();
+		this.elapsed = elapsedNanos;
+	}
+
+	/** @return	The best image available at the deadline */
+	public BufferedImage getImage()
+	{
+		return img;
+	}
+
+	/** @return	Every tile of the image, in the order they were refined */
+	public List<Tile> getTiles()
+	{
+		return tiles;
+	}
+
+	/** @return	The tiles that reached full quality */
+	public List<Tile> getFullQualityTiles()
+	{
+		List<Tile> done = new ArrayList<Tile>();
+		for(int i = 0; i < full.length; i++)
+			if(full[i])
+				done.add(tiles.get(i));
+		return done;
+	}
+
+	/**
+	 * @param tile	A tile of this result
+	 * @return		{@code true} if the tile reached full quality
+	 */
+	public boolean isFullQuality(Tile tile)
+	{
+		int i = tiles.indexOf(tile);
+		return i >= 0 && full[i];
+	}
+
+	/** @return	{@code true} if every tile reached full quality */
+	public boolean isComplete()
+	{
+		for(boolean b : full)
+			if(!b)
+				return false;
+		return true;
+	}
+
+	/** @return	The wall clock time the render took, in nanoseconds */
+	public long getElapsedNanos()
+	{
+		return elapsed;
+	}
+}
@@ -0,0 +1,77 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+/**
+ * An image that is read one row of pixels at a time, so that it never has to
+ * be held in memory as a whole
+ */
+public interface RowSource
+{
+	/** @return	The width of the image */
+	int getWidth();
+
+	/** @return	The height of the image */
+	int getHeight();
+
+	/** @return	Whether the alpha of the pixels is meaningful, rather than always opaque */
+	boolean hasAlpha();
+
+	/**
+	 * Reads one row of the image. Rows may be read from several threads at once
+	 *
+	 * @param y		The row to read
+	 * @param argb	The array to hold the ARGB colors of the row, at least the width of the image
+	 */
+	void readRow(int y, int[] argb);
+
+	/**
+	 * Gives the rows of an image held in memory, reading its raster directly
+	 * without going through the toolkit where it can
+	 *
+	 * @param img	The image
+	 * @return		The rows of the image
+	 */
+	static RowSource of(final BufferedImage img)
+	{
+		final boolean packed = (img.getType() == BufferedImage.TYPE_INT_ARGB || img.getType() == BufferedImage.TYPE_INT_RGB)
+				&& img.getRaster().getTransferType() == DataBuffer.TYPE_INT;
+		final boolean alpha = img.getColorModel().hasAlpha();
+
+		return new RowSource() {
+			@Override
+			public int getWidth()
+			{
+				return img.getWidth();
+			}
+
+			@Override
+			public int getHeight()
+			{
+				return img.getHeight();
+			}
+
+			@Override
+			public boolean hasAlpha()
+			{
+				return alpha;
+			}
+
+			@Override
+			public void readRow(int y, int[] argb)
+			{
+				int width = img.getWidth();
+				if(packed)
+				{
+					Raster raster = img.getRaster();
+					raster.getDataElements(0, y, width, 1, argb);
+					if(!alpha)
+						for(int x = 0; x < width; x++)
+							argb[x] |= 0xFF000000;
+				}
+				else
+					img.getRGB(0, y, width, 1, argb, 0, width);
+			}
+		};
+	}
+}
@@ -0,0 +1,298 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Renders the smooth iteration values of a view by solid guessing, which
+ * only iterates the pixels near where the iteration count changes
+ * <p>
+ * A lattice of pixels {@value #STEP} apart is iterated first. Each pass then
+ * looks at the blocks between neighbouring lattice pixels: a block whose
+ * corners all escape after the same whole number of iterations is guessed to
+ * be solid, and its pixels are filled in between the corners, while any other
+ * block is split into quarters whose new corners are iterated in the next
+ * pass. Blocks are halved until they are single pixels, so every pixel near a
+ * change in iteration count is iterated exactly.
+ * <p>
+ * A guess can miss detail that passes between the corners of a block. With
+ * the guarantee set, the whole border of a block is iterated before it is
+ * filled, and the block is split after all if any pixel of the border differs.
+ * <p>
+ * Each pass is parallel across tiles of {@value #TILE}&times;{@value #TILE}
+ * pixels on the common pool. A pixel belongs to the tile it lies in, and a
+ * block to the tile of its top left corner, so no pixel is ever written by two
+ * tiles in the same phase
+ */
+public final class SolidGuesser
+{
+	/** Distance between the pixels of the first lattice, a power of two */
+	private static final int STEP = 16;
+	/** Edge length of the tiles that each pass is parallel across, a multiple of {@link #STEP} */
+	private static final int TILE = 64;
+
+	private static final byte UNKNOWN = 0, GUESSED = 1, KNOWN = 2;
+
+	private final Formula formula;
+	private final View view;
+	private final Precision precision;
+	private final boolean guarantee;
+	private final int width, height, cols, rows, maxIteration;
+
+	private float[] smooth;
+	/** Whether each pixel is unknown, guessed or iterated */
+	private byte[] state;
+	/** Whether each pixel is to be iterated in the next compute phase */
+	private byte[] needed;
+	private final LongAdder computed = new LongAdder();
+
+	/**
+	 * @param formula	The formula to render
+	 * @param view		The view to render
+	 * @param precision	The precision tier to iterate in
+	 * @param guarantee	Whether to iterate the border of every block before filling it
+	 */
+	public SolidGuesser(Formula formula, View view, Precision precision, boolean guarantee)
+	{
+		this.formula = formula;
+		this.view = view;
+		this.precision = precision;
+		this.guarantee = guarantee;
+		width = view.getWidth();
+		height = view.getHeight();
+		cols = (width + TILE - 1)/TILE;
+		rows = (height + TILE - 1)/TILE;
+		maxIteration = view.getMaxIteration();
+	}
+
+	/**
+	 * Renders the view
+	 *
+	 * @return	The row-major smooth iteration values of every pixel of the view
+	 */
+	public float[] render()
+	{
+		smooth = new float[width*height];
+		state = new byte[width*height];
+		needed = new byte[width*height];
+		computed.reset();
+
+		final BlockList[] open = new BlockList[cols*rows];
+		final BlockList[] verify = new BlockList[cols*rows];
+		for(int y = 0; y < height; y += STEP)
+			for(int x = 0; x < width; x += STEP)
+			{
+				int t = tileOf(x, y);
+				if(open[t] == null)
+					open[t] = new BlockList();
+				open[t].add(y*width + x);
+				needed[y*width + x] = 1;
+			}
+		compute();
+
+		for(int s = STEP; s > 1; s /= 2)
+		{
+			final int step = s;
+			final BlockList[] split = new BlockList[open.length];
+			IntStream.range(0, open.length).parallel().forEach(t -> {
+				split[t] = new BlockList();
+				verify[t] = new BlockList();
+				BlockList blocks = open[t];
+				for(int i = 0; i < blocks.size; i++)
+				{
+					int b = blocks.index[i];
+					if(!solidCorners(b, step))
+						split(b, step, split[t]);
+					else if(guarantee)
+					{
+						markBorder(b, step);
+						verify[t].add(b);
+					}else
+						fill(b, step);
+				}
+			});
+
+			if(guarantee)
+			{
+				compute();
+				IntStream.range(0, open.length).parallel().forEach(t -> {
+					BlockList blocks = verify[t];
+					for(int i = 0; i < blocks.size; i++)
+					{
+						int b = blocks.index[i];
+						if(solidBorder(b, step))
+							fill(b, step);
+						else
+							split(b, step, split[t]);
+					}
+				});
+			}
+
+			compute();
+			System.arraycopy(split, 0, open, 0, open.length);
+		}
+		return smooth;
+	}
+
+	/** @return	The number of pixels that were iterated by the last render */
+	public long getComputedPixels()
+	{
+		return computed.sum();
+	}
+
+	private int tileOf(int x, int y)
+	{
+		return (y/TILE)*cols + x/TILE;
+	}
+
+	/** Gives the whole number of iterations a pixel took, with every pixel that never escaped alike */
+	private int level(int p)
+	{
+		float v = smooth[p];
+		return v > 0 ? (int)Math.min(v, maxIteration) : 0;
+	}
+
+	/**
+	 * Checks whether the four corners of a block took the same number of
+	 * iterations. Blocks that reach past the edge of the view are never solid
+	 */
+	private boolean solidCorners(int b, int s)
+	{
+		int x = b % width, y = b / width;
+		if(x + s >= width || y + s >= height)
+			return false;
+		int l = level(b);
+		return level(b + s) == l && level(b + s*width) == l && level(b + s*width + s) == l;
+	}
+
+	/** Checks whether every pixel on the border of a block took the same number of iterations */
+	private boolean solidBorder(int b, int s)
+	{
+		int l = level(b);
+		for(int i = 1; i < s; i++)
+			if(level(b + i) != l || level(b + s*width + i) != l
+					|| level(b + i*width) != l || level(b + i*width + s) != l)
+				return false;
+		return true;
+	}
+
+	/** Marks the pixels on the border of a block that are not yet iterated to be iterated */
+	private void markBorder(int b, int s)
+	{
+		for(int i = 1; i < s; i++)
+		{
+			mark(b + i);
+			mark(b + s*width + i);
+			mark(b + i*width);
+			mark(b + i*width + s);
+		}
+	}
+
+	private void mark(int p)
+	{
+		if(state[p] != KNOWN)
+			needed[p] = 1;
+	}
+
+	/**
+	 * Splits a block into the quarters that lie in the view, marking their new
+	 * corners to be iterated. The quarters lie in the tile of the block
+	 */
+	private void split(int b, int s, BlockList into)
+	{
+		int x = b % width, y = b / width, h = s/2;
+		boolean right = x + h < width, below = y + h < height;
+
+		into.add(b);
+		if(right)
+		{
+			into.add(b + h);
+			mark(b + h);
+			if(y + s < height)
+				mark(b + s*width + h);
+		}
+		if(below)
+		{
+			into.add(b + h*width);
+			mark(b + h*width);
+			if(x + s < width)
+				mark(b + h*width + s);
+		}
+		if(right && below)
+		{
+			into.add(b + h*width + h);
+			mark(b + h*width + h);
+		}
+	}
+
+	/**
+	 * Fills the pixels of a solid block that are not iterated yet, interpolating
+	 * between its corners. Only the block's own pixels are filled, up to but not
+	 * including its right and bottom edges, which belong to its neighbours
+	 */
+	private void fill(int b, int s)
+	{
+		float v00 = smooth[b], v10 = smooth[b + s], v01 = smooth[b + s*width], v11 = smooth[b + s*width + s];
+		for(int j = 0; j < s; j++)
+		{
+			float fy = (float)j/s;
+			float left = v00 + (v01 - v00)*fy, right = v10 + (v11 - v10)*fy;
+			for(int i = 0; i < s; i++)
+			{
+				int p = b + j*width + i;
+				if(state[p] != UNKNOWN)
+					continue;
+				smooth[p] = left + (right - left)*i/s;
+				state[p] = GUESSED;
+			}
+		}
+	}
+
+	/**
+	 * Iterates every pixel that is marked, in parallel across tiles, taking
+	 * each run of marked pixels along a row as one block
+	 */
+	private void compute()
+	{
+		IntStream.range(0, cols*rows).parallel().forEach(t -> {
+			int x0 = (t % cols)*TILE, y0 = (t / cols)*TILE;
+			int x1 = Math.min(x0 + TILE, width), y1 = Math.min(y0 + TILE, height);
+			float[] run = new float[TILE];
+			int count = 0;
+
+			for(int y = y0; y < y1; y++)
+			{
+				for(int x = x0; x < x1; x++)
+				{
+					if(needed[y*width + x] == 0)
+						continue;
+					int start = x;
+					while(x < x1 && needed[y*width + x] != 0)
+						x++;
+					formula.iterate(precision, view, start, y, x - start, 1, run);
+					for(int i = start; i < x; i++)
+					{
+						smooth[y*width + i] = run[i - start];
+						state[y*width + i] = KNOWN;
+						needed[y*width + i] = 0;
+					}
+					count += x - start;
+				}
+			}
+			computed.add(count);
+		});
+	}
+
+	/** A growable list of the indices of the top left pixels of blocks */
+	private static final class BlockList
+	{
+		int[] index = new int[16];
+		int size;
+
+		void add(int b)
+		{
+			if(size == index.length)
+				index = Arrays.copyOf(index, size*2);
+			index[size++] = b;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rectangular block of pixels of an image, given in pixel coordinates
+ * with the origin at the top left of the image
+ */
+public final class Tile
+{
+	private final int x, y, width, height;
+
+	public Tile(int x, int y, int width, int height)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid Tile Size: " + width + "x" + height);
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Splits an image into a grid of tiles of at most
+	 * {@code size}&times;{@code size} pixels, in row-major order
+	 *
+	 * @param width		The width of the image
+	 * @param height	The height of the image
+	 * @param size		The edge length of a full tile
+	 * @return			The tiles covering the image
+	 */
+	public static List<Tile> grid(int width, int height, int size)
+	{
+		List<Tile> tiles = new ArrayList<Tile>(((width + size - 1)/size) * ((height + size - 1)/size));
+		for(int y = 0; y < height; y += size)
+			for(int x = 0; x < width; x += size)
+				tiles.add(new Tile(x, y, Math.min(size, width - x), Math.min(size, height - y)));
+		return tiles;
+	}
+
+	public int getX()
+	{
+		return x;
+	}
+
+	public int getY()
+	{
+		return y;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/** @return	The number of pixels in this tile */
+	public int getArea()
+	{
+		return width*height;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof Tile))
+			return false;
+		Tile t = (Tile)o;
+		return x == t.x && y == t.y && width == t.width && height == t.height;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ((x*31 + y)*31 + width)*31 + height;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Tile (" + x + "," + y + ") " + width + "x" + height;
+	}
+}
@@ -0,0 +1,581 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Hands the tiles of a render to {@link TileWorker}s in other processes,
+ * which connect to it over TCP, and assembles the image from the smooth
+ * iteration values they send back
+ * <p>
+ * Each worker is kept a few tiles ahead of its thread count. A worker that
+ * disconnects, or sends nothing at all for longer than the timeout, is
+ * dropped and its tiles are handed out again. Once no tiles are left to hand
+ * out, an idle worker is also given a copy of a tile that has been in flight
+ * elsewhere for longer than tiles take on average, so one slow worker cannot
+ * hold up the end of the render. The first copy to come back is kept and the
+ * others are cancelled.
+ * <p>
+ * Workers may join and leave at any time while the render runs
+ */
+public final class TileCoordinator implements Closeable
+{
+	static final int MAGIC = 0x46525444;
+	static final int VERSION = 2;
+
+	/** From the coordinator, followed by a tile: render the tile */
+	static final byte TILE = 1;
+	/** From the coordinator, followed by a tile: the tile is no longer needed */
+	static final byte CANCEL = 2;
+	/** From the coordinator: the render is complete */
+	static final byte END = 3;
+	/** From a worker, followed by a tile and its deflated values: the tile is complete */
+	static final byte RESULT = 4;
+	/** From a worker, followed by a tile: the tile was cancelled or failed before it completed */
+	static final byte DROPPED = 5;
+	/** From a worker: the worker is still alive */
+	static final byte HEARTBEAT = 6;
+
+	/** Interval that workers send heartbeats at, in milliseconds */
+	static final int HEARTBEAT_INTERVAL = 5000;
+	/** Default time a worker may be silent before it is dropped, in milliseconds */
+	public static final int DEFAULT_TIMEOUT = 30000;
+
+	/** Number of tiles each worker is given per thread */
+	private static final int TILES_PER_THREAD = 2;
+	/** Most copies of one tile that may be in flight at once */
+	private static final int MAX_COPIES = 2;
+
+	private final RenderRequest request;
+	private final ServerSocket server;
+	private final BufferedImage img;
+	private volatile int timeout = DEFAULT_TIMEOUT;
+	private volatile TileListener listener;
+
+	/** Tiles that no worker holds, guarded by this */
+	private final ArrayDeque<Tile> pending;
+	/** The workers holding each tile in flight, guarded by this */
+	private final Map<Tile,List<Connection>> holders = new HashMap<Tile,List<Connection>>();
+	/** When each tile in flight was first handed out, guarded by this */
+	private final Map<Tile,Long> started = new HashMap<Tile,Long>();
+	/** Guarded by this */
+	private final Set<Connection> connections = new HashSet<Connection>();
+	/** Guarded by this */
+	private int remaining;
+	/** Total time taken by the completed tiles, guarded by this */
+	private long tileNanos;
+	/** Guarded by this */
+	private Throwable failure;
+	/** Guarded by this */
+	private boolean rendering, closed;
+
+	/**
+	 * Creates a coordinator for a request and starts listening for workers,
+	 * which are not given tiles until {@link #render(TileListener)} is called
+	 *
+	 * @param request	The request to render, which must have a palette
+	 * @param port		The port to listen on, or 0 for any free port
+	 * @throws IOException If the port cannot be bound
+	 * @throws IllegalArgumentException If the request has no palette
+	 */
+	public TileCoordinator(RenderRequest request, int port) throws IOException
+	{
+		if(request.getPalette() == null)
+			throw new IllegalArgumentException("A distributed request needs a palette");
+		this.request = request;
+		View v = request.getView();
+		img = new BufferedImage(v.getWidth(), v.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		pending = new ArrayDeque<Tile>(request.getTiles());
+		remaining = pending.size();
+		server = new ServerSocket(port);
+	}
+
+	/** @return	The port that workers connect to */
+	public int getPort()
+	{
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Sets how long a worker may send nothing before it is presumed dead.
+	 * Workers send heartbeats while they render, so this does not need to
+	 * cover the time of a tile
+	 *
+	 * @param time	The timeout
+	 * @param unit	The unit of {@code time}
+	 * @throws IllegalArgumentException If the timeout is shorter than twice the heartbeat interval
+	 */
+	public void setTimeout(long time, TimeUnit unit)
+	{
+		long millis = unit.toMillis(time);
+		if(millis < 2*HEARTBEAT_INTERVAL || millis > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid Timeout: " + millis + "ms");
+		timeout = (int)millis;
+	}
+
+	/** @return	The number of workers connected right now */
+	public synchronized int getWorkerCount()
+	{
+		return connections.size();
+	}
+
+	/** @return	The number of tiles that have been completed so far */
+	public synchronized int getCompletedTiles()
+	{
+		return request.getTiles().size() - remaining;
+	}
+
+	/**
+	 * Renders the request on whichever workers connect, and waits for every
+	 * tile to complete. The coordinator is closed once this returns
+	 *
+	 * @param listener	The listener to give each completed tile to, or {@code null}.
+	 * 					It is called on the thread of the worker connection, with no job
+	 * @return			The rendered image
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the listener fails
+	 * @throws IllegalStateException If this coordinator has already rendered or been closed
+	 */
+	public BufferedImage render(TileListener listener) throws InterruptedException, ExecutionException
+	{
+		synchronized(this)
+		{
+			if(rendering || closed)
+				throw new IllegalStateException("Coordinator has already rendered");
+			rendering = true;
+		}
+		this.listener = listener;
+
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				accept();
+			}
+		}, "Tile Coordinator " + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		try {
+			synchronized(this)
+			{
+				while(remaining > 0 && failure == null)
+					wait();
+				if(failure != null)
+					throw new ExecutionException(failure);
+			}
+		}finally
+		{
+			close();
+		}
+		return img;
+	}
+
+	/** Stops listening, and ends the render on every connected worker */
+	@Override
+	public void close()
+	{
+		Connection[] open;
+		synchronized(this)
+		{
+			if(closed)
+				return;
+			closed = true;
+			open = connections.toArray(new Connection[0]);
+			notifyAll();
+		}
+		try {
+			server.close();
+		}catch(IOException e)
+		{
+		}
+		for(Connection c : open)
+			c.end();
+	}
+
+	private void accept()
+	{
+		for(;;)
+		{
+			Socket socket;
+			try {
+				socket = server.accept();
+			}catch(IOException e)
+			{
+				return;
+			}
+
+			Connection c = new Connection(socket);
+			synchronized(this)
+			{
+				if(closed)
+				{
+					c.end();
+					return;
+				}
+				connections.add(c);
+			}
+			Thread t = new Thread(c, "Tile Connection " + socket.getRemoteSocketAddress());
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Picks the next tile for a worker, with the lock held: a pending tile if
+	 * there is one, otherwise a copy of the longest running tile that has run
+	 * for longer than the average and that the worker does not hold already
+	 *
+	 * @return	The tile, or {@code null} if there is none to give
+	 */
+	private Tile assign(Connection c)
+	{
+		long now = System.nanoTime();
+		Tile tile = pending.poll();
+		if(tile == null)
+		{
+			int done = request.getTiles().size() - remaining;
+			if(done == 0)
+				return null;
+			long threshold = tileNanos/done, oldest = now - threshold;
+			for(Map.Entry<Tile,List<Connection>> e : holders.entrySet())
+			{
+				List<Connection> h = e.getValue();
+				long start = started.get(e.getKey());
+				if(h.size() < MAX_COPIES && !h.contains(c) && start < oldest)
+				{
+					oldest = start;
+					tile = e.getKey();
+				}
+			}
+			if(tile == null)
+				return null;
+		}else
+			started.put(tile, now);
+
+		List<Connection> h = holders.get(tile);
+		if(h == null)
+			holders.put(tile, h = new ArrayList<Connection>(MAX_COPIES));
+		h.add(c);
+		c.held.add(tile);
+		return tile;
+	}
+
+	/** Stores a tile sent back by a worker, and cancels its other copies */
+	private void complete(Connection c, Tile tile, byte[] block) throws IOException
+	{
+		List<Connection> others;
+		synchronized(this)
+		{
+			if(!c.held.remove(tile))
+				throw new IOException("Worker sent a tile it was not given: " + tile);
+			others = holders.remove(tile);
+			if(others == null)
+				return;
+			others.remove(c);
+			tileNanos += System.nanoTime() - started.remove(tile);
+		}
+
+		float[] smooth = new float[tile.getArea()];
+		try {
+			IterationArchive.decode(ByteBuffer.wrap(block), smooth);
+		}catch(DataFormatException e)
+		{
+			throw new IOException("Corrupt tile from worker: " + e.getMessage(), e);
+		}
+		int[] argb = new int[tile.getArea()];
+		request.getPalette().color(smooth, argb, argb.length);
+		img.setRGB(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), argb, 0, tile.getWidth());
+
+		Throwable t = null;
+		TileListener l = listener;
+		try {
+			if(l != null)
+				l.tileCompleted(null, tile, smooth, argb);
+		}catch(RuntimeException e)
+		{
+			t = e;
+		}
+
+		synchronized(this)
+		{
+			if(t != null && failure == null)
+				failure = t;
+			if(--remaining == 0 || failure != null)
+				notifyAll();
+		}
+		for(Connection o : others)
+			o.cancel(tile);
+	}
+
+	/** Returns every tile that only a dropped worker held to the front of the queue */
+	private synchronized void drop(Connection c)
+	{
+		connections.remove(c);
+		for(Tile t : c.held)
+			release(c, t);
+		c.held.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Takes a tile in flight back from a worker, with the lock held, and
+	 * returns it to the front of the queue if no other worker holds it
+	 */
+	private void release(Connection c, Tile t)
+	{
+		List<Connection> h = holders.get(t);
+		if(h == null)
+			return;
+		h.remove(c);
+		if(h.isEmpty())
+		{
+			holders.remove(t);
+			started.remove(t);
+			pending.addFirst(t);
+		}
+	}
+
+	static void writeTile(DataOutputStream out, Tile t) throws IOException
+	{
+		out.writeInt(t.getX());
+		out.writeInt(t.getY());
+		out.writeInt(t.getWidth());
+		out.writeInt(t.getHeight());
+	}
+
+	static Tile readTile(DataInputStream in, View view) throws IOException
+	{
+		int x = in.readInt(), y = in.readInt(), w = in.readInt(), h = in.readInt();
+		if(x < 0 || y < 0 || w <= 0 || h <= 0 || x > view.getWidth() - w || y > view.getHeight() - h)
+			throw new IOException("Invalid tile: " + x + "," + y + " " + w + "x" + h);
+		return new Tile(x, y, w, h);
+	}
+
+	/** One connected worker, served on its own thread */
+	private final class Connection implements Runnable
+	{
+		private final Socket socket;
+		/** Set once the job has been sent, and guarded by itself */
+		private volatile DataOutputStream out;
+		/** The tiles sent to this worker that it has not answered, guarded by the coordinator */
+		private final Set<Tile> held = new HashSet<Tile>();
+
+		Connection(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(timeout);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream o = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+				if(in.readInt() != MAGIC)
+					throw new IOException("Not a tile worker");
+				if(in.readInt() != VERSION)
+					throw new IOException("Unsupported worker version");
+				int threads = in.readInt();
+				if(threads <= 0)
+					throw new IOException("Invalid worker thread count: " + threads);
+
+				synchronized(o)
+				{
+					sendJob(o);
+					out = o;
+				}
+				System.out.println("Worker Connected: " + socket.getRemoteSocketAddress() + " with " + threads + " Threads");
+				serve(in, threads*TILES_PER_THREAD);
+
+				// Read until the worker closes its end, so that nothing it still sends resets the connection
+				end();
+				while(in.read() >= 0)
+					in.skip(in.available());
+			}catch(IOException e)
+			{
+				synchronized(TileCoordinator.this)
+				{
+					if(!closed)
+						System.out.println("Worker Lost: " + socket.getRemoteSocketAddress() + " - "
+								+ (e instanceof EOFException ? "Connection closed" : e.getMessage()));
+				}
+			}catch(InterruptedException e)
+			{
+			}finally
+			{
+				drop(this);
+				close();
+			}
+		}
+
+		private void sendJob(DataOutputStream o) throws IOException
+		{
+			View v = request.getView();
+			DDComplex c = v.getCenter();
+			o.writeUTF(request.getFormula().getSpec());
+			o.writeUTF(request.getPrecision().name());
+			o.writeDouble(c.Re());
+			o.writeDouble(c.ReLo());
+			o.writeDouble(c.Im());
+			o.writeDouble(c.ImLo());
+			o.writeDouble(v.getZoom());
+			o.writeInt(v.getWidth());
+			o.writeInt(v.getHeight());
+			o.writeDouble(v.getAspect());
+			o.writeInt(v.getFrame().getWidth());
+			o.writeInt(v.getFrame().getHeight());
+			o.writeInt(v.getCropX());
+			o.writeInt(v.getCropY());
+			o.writeDouble(v.getExponent());
+			o.writeDouble(v.getBailout());
+			o.writeInt(v.getMaxIteration());
+			o.flush();
+		}
+
+		/** Keeps the worker supplied with tiles and stores what it sends back, until the render ends */
+		private void serve(DataInputStream in, int window) throws IOException, InterruptedException
+		{
+			View view = request.getView();
+			List<Tile> next = new ArrayList<Tile>(window);
+			Tile t;
+
+			for(;;)
+			{
+				synchronized(TileCoordinator.this)
+				{
+					for(;;)
+					{
+						if(remaining == 0 || closed)
+							return;
+						while(held.size() < window && (t = assign(this)) != null)
+							next.add(t);
+						if(!held.isEmpty())
+							break;
+						// Idle, so check again for returned or overdue tiles now and then
+						TileCoordinator.this.wait(HEARTBEAT_INTERVAL);
+					}
+				}
+
+				if(!next.isEmpty())
+				{
+					synchronized(out)
+					{
+						for(Tile n : next)
+						{
+							out.writeByte(TILE);
+							writeTile(out, n);
+						}
+						out.flush();
+					}
+					next.clear();
+				}
+
+				byte op = in.readByte();
+				switch(op)
+				{
+				case RESULT:
+					t = readTile(in, view);
+					int length = in.readInt();
+					if(length < 0 || length > 16L*t.getArea() + 1024)
+						throw new IOException("Invalid tile block length: " + length);
+					byte[] block = new byte[length];
+					in.readFully(block);
+					complete(this, t, block);
+					break;
+				case DROPPED:
+					t = readTile(in, view);
+					synchronized(TileCoordinator.this)
+					{
+						// A tile that failed is still held by this worker alone, and goes back to the queue
+						if(held.remove(t))
+							release(this, t);
+					}
+					break;
+				case HEARTBEAT:
+					break;
+				default:
+					throw new IOException("Unknown message from worker: " + op);
+				}
+			}
+		}
+
+		/** Tells the worker that a tile it holds is no longer needed */
+		void cancel(Tile tile)
+		{
+			DataOutputStream o = out;
+			if(o == null)
+				return;
+			try {
+				synchronized(o)
+				{
+					if(socket.isOutputShutdown())
+						return;
+					o.writeByte(CANCEL);
+					writeTile(o, tile);
+					o.flush();
+				}
+			}catch(IOException e)
+			{
+				close();
+			}
+		}
+
+		/**
+		 * Tells the worker that the render is complete, and that nothing more
+		 * will be sent. A worker that has not been sent the job yet is simply
+		 * disconnected
+		 */
+		void end()
+		{
+			DataOutputStream o = out;
+			if(o == null)
+			{
+				close();
+				return;
+			}
+			try {
+				synchronized(o)
+				{
+					if(socket.isOutputShutdown())
+						return;
+					o.writeByte(END);
+					o.flush();
+					socket.shutdownOutput();
+				}
+			}catch(IOException e)
+			{
+				close();
+			}
+		}
+
+		private void close()
+		{
+			try {
+				socket.close();
+			}catch(IOException e)
+			{
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+
+/**
+ * Receives the tiles of a {@link RenderJob} as they are completed
+ * <p>
+ * Listeners are called on the worker thread that rendered the tile, so they
+ * should be quick and must be thread-safe. The arrays are only valid for the
+ * duration of the call
+ */
+public interface TileListener
+{
+	/**
+	 * Called once each tile has been rendered and written to the image of the job,
+	 * if it has one
+	 *
+	 * @param job		The job that the tile belongs to
+	 * @param tile		The tile that was completed, in pixel coordinates of the view
+	 * @param smooth	The row-major smooth iteration values of the tile
+	 * @param argb		The row-major colors of the tile, or {@code null} if the request has no palette
+	 */
+	void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb);
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An order to render the tiles of a view in, planned from a low resolution
+ * probe of the iteration counts across the view
+ * <p>
+ * The probe samples one pixel per {@value #PROBE_BLOCK}&times;{@value #PROBE_BLOCK}
+ * block, and the cost of a tile is predicted from the iterations of the
+ * samples that fall in it. Tiles predicted to take more than a small share of
+ * the render are split into quarters, so that no one tile holds up the end of
+ * the render, and the tiles are then ordered from the most to the least
+ * expensive. The long tiles start first, and the short ones fill in around them
+ */
+public final class TilePlan
+{
+	/** Edge length of the block of pixels each probe sample stands for */
+	private static final int PROBE_BLOCK = 8;
+	/** Tiles are split until each is predicted to take at most 1/(SHARE&times;threads) of the render */
+	private static final int SHARE = 4;
+	/** Edge length below which tiles are not split */
+	private static final int MIN_TILE = 16;
+
+	private final List<Tile> tiles;
+	private final Map<Tile,Double> cost;
+	private final double totalCost;
+
+	private TilePlan(List<Tile> tiles, Map<Tile,Double> cost, double totalCost)
+	{
+		this.tiles = Collections.unmodifiableList(tiles);
+		this.cost = cost;
+		this.totalCost = totalCost;
+	}
+
+	/**
+	 * Probes a view on an engine, and plans the order of the given tiles of
+	 * it, splitting them for the number of workers of the engine
+	 *
+	 * @param engine	The engine to probe on, and that the tiles will be rendered on
+	 * @param formula	The formula to render
+	 * @param view		The view to render
+	 * @param grid		The tiles to plan
+	 * @return			The plan
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 * @throws ExecutionException If the probe fails
+	 */
+	public static TilePlan probe(RenderEngine engine, Formula formula, View view, List<Tile> grid)
+			throws InterruptedException, ExecutionException
+	{
+		View coarse = view.coarsen(PROBE_BLOCK);
+		final int cols = coarse.getWidth();
+		final int rows = coarse.getHeight();
+		final int maxIteration = view.getMaxIteration();
+		final float[] samples = new float[cols*rows];
+
+		engine.stream(new RenderRequest(formula, coarse, null, coarse.selectPrecision(),
+				Tile.grid(cols, rows, RenderRequest.DEFAULT_TILE_SIZE), 0, Long.MAX_VALUE), new TileListener() {
+			@Override
+			public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+			{
+				for(int r = 0; r < tile.getHeight(); r++)
+					for(int c = 0; c < tile.getWidth(); c++)
+					{
+						// Every pixel costs at least one pass, even if it escapes at once
+						float s = smooth[r*tile.getWidth() + c];
+						samples[(tile.getY() + r)*cols + tile.getX() + c] = 1 + (s > 0 ? Math.min(s, maxIteration) : 0);
+					}
+			}
+		}).get();
+
+		double total = 0;
+		for(Tile t : grid)
+			total += estimate(t, samples, cols, rows);
+		double limit = total/(SHARE*engine.getThreadCount());
+
+		List<Tile> tiles = new ArrayList<Tile>(grid.size());
+		final Map<Tile,Double> cost = new HashMap<Tile,Double>(grid.size()*2);
+		ArrayDeque<Tile> pending = new ArrayDeque<Tile>(grid);
+		while(!pending.isEmpty())
+		{
+			Tile t = pending.poll();
+			double c = estimate(t, samples, cols, rows);
+			if(c > limit && t.getWidth() >= 2*MIN_TILE && t.getHeight() >= 2*MIN_TILE)
+			{
+				int w = t.getWidth()/2, h = t.getHeight()/2;
+				pending.addFirst(new Tile(t.getX() + w, t.getY() + h, t.getWidth() - w, t.getHeight() - h));
+				pending.addFirst(new Tile(t.getX(), t.getY() + h, w, t.getHeight() - h));
+				pending.addFirst(new Tile(t.getX() + w, t.getY(), t.getWidth() - w, h));
+				pending.addFirst(new Tile(t.getX(), t.getY(), w, h));
+				continue;
+			}
+			tiles.add(t);
+			cost.put(t, c);
+		}
+
+		Collections.sort(tiles, new Comparator<Tile>() {
+			@Override
+			public int compare(Tile a, Tile b)
+			{
+				return Double.compare(cost.get(b), cost.get(a));
+			}
+		});
+		return new TilePlan(tiles, cost, total);
+	}
+
+	/**
+	 * Predicts the cost of a tile as its area times the mean cost of the
+	 * samples in it, or of the sample nearest to its corner if it holds none
+	 */
+	private static double estimate(Tile t, float[] samples, int cols, int rows)
+	{
+		int c0 = (t.getX() + PROBE_BLOCK - 1)/PROBE_BLOCK, c1 = (t.getX() + t.getWidth() - 1)/PROBE_BLOCK;
+		int r0 = (t.getY() + PROBE_BLOCK - 1)/PROBE_BLOCK, r1 = (t.getY() + t.getHeight() - 1)/PROBE_BLOCK;
+		if(c0 > c1 || r0 > r1)
+			return (double)t.getArea()*samples[Math.min(t.getY()/PROBE_BLOCK, rows - 1)*cols
+					+ Math.min(t.getX()/PROBE_BLOCK, cols - 1)];
+
+		double sum = 0;
+		for(int r = r0; r <= r1; r++)
+			for(int c = c0; c <= c1; c++)
+				sum += samples[r*cols + c];
+		return sum*t.getArea()/((c1 - c0 + 1)*(r1 - r0 + 1));
+	}
+
+	/** @return	The tiles to render, in the order they should be started */
+	public List<Tile> getTiles()
+	{
+		return tiles;
+	}
+
+	/**
+	 * @param tile	One of the tiles of this plan
+	 * @return		The predicted cost of the tile, in iterations
+	 */
+	public double getCost(Tile tile)
+	{
+		Double c = cost.get(tile);
+		return c == null ? 0.0 : c;
+	}
+
+	/** @return	The predicted cost of every tile of this plan, in iterations */
+	public double getTotalCost()
+	{
+		return totalCost;
+	}
+}
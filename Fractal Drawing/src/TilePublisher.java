@@ -0,0 +1,253 @@
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the tiles of a render as they complete, to subscribers that
+ * take them at their own pace
+ * <p>
+ * Every subscription renders the request on its own, and a tile is only
+ * started when the subscriber has asked for it. The tiles being rendered and
+ * those waiting to be delivered never number more than the subscriber has
+ * requested and not yet received, so a slow subscriber holds up the render
+ * rather than letting completed tiles pile up, and the memory of a
+ * subscription is bounded by its demand however large the view is. At most
+ * a window of tiles is rendered at once, so that unbounded demand does not
+ * flood the engine.
+ * <p>
+ * Each tile is rendered as a job of its own on a {@link RenderEngine}, in the
+ * order of the request, and is delivered in the order tiles complete.
+ * Cancelling a subscription cancels the tiles it has in flight. If a tile
+ * fails, the rest are cancelled and the subscriber is given the error
+ */
+public final class TilePublisher implements Flow.Publisher<TileResult>
+{
+	private final RenderEngine engine;
+	private final RenderRequest request;
+	private final int window;
+
+	/**
+	 * Creates a publisher that renders up to two tiles per worker of the
+	 * engine at once
+	 *
+	 * @see #TilePublisher(RenderEngine, RenderRequest, int)
+	 */
+	public TilePublisher(RenderEngine engine, RenderRequest request)
+	{
+		this(engine, request, 2*engine.getThreadCount());
+	}
+
+	/**
+	 * @param engine	The engine to render on
+	 * @param request	The request whose tiles to publish, which may have no palette
+	 * @param window	The most tiles of one subscription to render at once
+	 * @throws IllegalArgumentException If the window is not positive
+	 */
+	public TilePublisher(RenderEngine engine, RenderRequest request, int window)
+	{
+		if(window <= 0)
+			throw new IllegalArgumentException("Invalid Window: " + window);
+		this.engine = engine;
+		this.request = request;
+		this.window = window;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super TileResult> subscriber)
+	{
+		Subscription s = new Subscription(Objects.requireNonNull(subscriber));
+		subscriber.onSubscribe(s);
+		s.drain();
+	}
+
+	private final class Subscription implements Flow.Subscription, TileListener
+	{
+		private final Flow.Subscriber<? super TileResult> subscriber;
+		private final List<Tile> tiles = request.getTiles();
+
+		/** The completed tiles not yet delivered. Guarded by this */
+		private final ArrayDeque<TileResult> ready = new ArrayDeque<TileResult>();
+		/** The jobs of the tiles being rendered. Guarded by this */
+		private final Set<RenderJob> running = new HashSet<RenderJob>();
+		/** Guarded by this */
+		private int next;
+		/** The number of tiles requested and not yet delivered. Guarded by this */
+		private long demand;
+		/** Guarded by this */
+		private Throwable failure;
+		/** Guarded by this */
+		private boolean draining, again, terminated;
+
+		Subscription(Flow.Subscriber<? super TileResult> subscriber)
+		{
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n)
+		{
+			synchronized(this)
+			{
+				if(n <= 0)
+				{
+					if(failure == null)
+						failure = new IllegalArgumentException("Invalid Demand: " + n);
+				}
+				else
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel()
+		{
+			RenderJob[] jobs;
+			synchronized(this)
+			{
+				terminated = true;
+				ready.clear();
+				jobs = running.toArray(new RenderJob[0]);
+			}
+			for(RenderJob j : jobs)
+				j.cancel(false);
+		}
+
+		/** Copies a completed tile out of the worker's arrays, to be delivered */
+		@Override
+		public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+		{
+			TileResult result = new TileResult(tile, smooth.clone(), argb == null ? null : argb.clone());
+			synchronized(this)
+			{
+				if(!terminated)
+					ready.add(result);
+			}
+			drain();
+		}
+
+		/** Drops a finished job, keeping the error it failed with */
+		private void jobDone(RenderJob job)
+		{
+			synchronized(this)
+			{
+				running.remove(job);
+				if(!job.isCancelled())
+				{
+					try {
+						job.get();
+					}catch(ExecutionException e)
+					{
+						if(failure == null)
+							failure = e.getCause();
+					}catch(InterruptedException | CancellationException e)
+					{
+					}
+				}
+			}
+			drain();
+		}
+
+		/**
+		 * Starts as many tiles as the demand and the window allow, with this
+		 * locked. Tiles already rendering or waiting count against the demand
+		 */
+		private void startTiles()
+		{
+			while(next < tiles.size() && running.size() < window && running.size() + ready.size() < demand)
+			{
+				final RenderJob job = engine.stream(request.withTiles(Collections.singletonList(tiles.get(next++))), this);
+				running.add(job);
+				job.whenDone(new Runnable() {
+					@Override
+					public void run()
+					{
+						jobDone(job);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Delivers what can be delivered and starts what can be started. Only
+		 * one thread delivers at a time, and a thread that finds another
+		 * delivering leaves it to loop again
+		 */
+		void drain()
+		{
+			synchronized(this)
+			{
+				if(draining)
+				{
+					again = true;
+					return;
+				}
+				draining = true;
+			}
+
+			for(;;)
+			{
+				TileResult item = null;
+				Throwable error = null;
+				boolean complete = false;
+				RenderJob[] cancel = null;
+				synchronized(this)
+				{
+					again = false;
+					if(!terminated)
+					{
+						if(failure != null)
+						{
+							error = failure;
+							terminated = true;
+							ready.clear();
+							cancel = running.toArray(new RenderJob[0]);
+						}else if(demand > 0 && !ready.isEmpty())
+						{
+							item = ready.poll();
+							if(demand != Long.MAX_VALUE)
+								demand--;
+						}else if(ready.isEmpty() && running.isEmpty() && next == tiles.size())
+						{
+							complete = true;
+							terminated = true;
+						}else
+							startTiles();
+					}
+					if(item == null && error == null && !complete && !again)
+					{
+						draining = false;
+						return;
+					}
+				}
+
+				try {
+					if(error != null)
+					{
+						for(RenderJob j : cancel)
+							j.cancel(false);
+						subscriber.onError(error);
+					}
+					else if(item != null)
+						subscriber.onNext(item);
+					else if(complete)
+						subscriber.onComplete();
+				}catch(RuntimeException | Error e)
+				{
+					synchronized(this)
+					{
+						draining = false;
+					}
+					cancel();
+					throw e;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a render as a Deep Zoom (DZI) tile pyramid, for viewers that load
+ * only the tiles of the part of the image on screen
+ * <p>
+ * Only the finest level is rendered. Each of its tiles is written as it
+ * completes, and is also shrunk by 2&times;2 averaging into a quarter of its
+ * parent tile on the level above. Once every child of a parent has arrived
+ * the parent is written and shrunk into its own parent in turn, so all the
+ * coarser levels together cost about a third of the pixels of the finest one
+ * to average, and nothing to iterate. This happens on whichever render worker
+ * completes the last child, so the levels are built in parallel.
+ * <p>
+ * The finest tiles are rendered in Z-order, so the four children of a parent
+ * complete close together, and only a handful of partly filled parents on
+ * each level are held in memory at once, however large the image
+ */
+public final class TilePyramid implements TileListener
+{
+	/** Edge length of every tile of the pyramid */
+	public static final int TILE = 256;
+
+	private final File files;
+	private final int width, height;
+	/** The highest level, whose size is that of the full image */
+	private final int maxLevel;
+	private final PngWriter png;
+	private final Map<String,Parent> pending = new HashMap<String,Parent>();
+	private int written;
+	private IOException failure;
+
+	/** A tile of a coarser level that is filled in by its children */
+	private static final class Parent
+	{
+		final int[] argb;
+		final int width, height, children;
+		int arrived;
+
+		Parent(int width, int height, int children)
+		{
+			argb = new int[width*height];
+			this.width = width;
+			this.height = height;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * Creates a pyramid, writing its descriptor and the directory its tiles go in
+	 *
+	 * @param dzi			The descriptor file, whose tiles go in a directory named
+	 * 						after it ending in {@code _files}
+	 * @param width			The width of the full image
+	 * @param height		The height of the full image
+	 * @param compression	The deflate level of the tiles, from 0 to 9 or -1 for the default
+	 * @throws IOException If the descriptor or the directory cannot be written
+	 */
+	public TilePyramid(File dzi, int width, int height, int compression) throws IOException
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid Size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		maxLevel = 32 - Integer.numberOfLeadingZeros(Math.max(width, height) - 1);
+		// Tiles are small enough to write in one strip on the worker that completes them
+		png = new PngWriter(compression, Runnable::run, 1);
+
+		String name = dzi.getName();
+		int dot = name.lastIndexOf('.');
+		files = new File(dzi.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + "_files");
+		for(int level = 0; level <= maxLevel; level++)
+		{
+			File dir = new File(files, String.valueOf(level));
+			if(!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Cannot create directory: " + dir.getAbsolutePath());
+		}
+
+		String descriptor = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + System.lineSeparator()
+				+ "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\"" + TILE + "\">" + System.lineSeparator()
+				+ "\t<Size Width=\"" + width + "\" Height=\"" + height + "\"/>" + System.lineSeparator()
+				+ "</Image>" + System.lineSeparator();
+		Files.write(dzi.toPath(), descriptor.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** @return	The tiles of the finest level, in the Z-order they should be rendered in */
+	public List<Tile> getTiles()
+	{
+		List<Tile> tiles = Tile.grid(width, height, TILE);
+		Collections.sort(tiles, new Comparator<Tile>() {
+			@Override
+			public int compare(Tile a, Tile b)
+			{
+				return Long.compare(morton(a.getX()/TILE, a.getY()/TILE), morton(b.getX()/TILE, b.getY()/TILE));
+			}
+		});
+		return tiles;
+	}
+
+	/** Interleaves the bits of a column and row, the column taking the even bits */
+	private static long morton(int col, int row)
+	{
+		long code = 0;
+		for(int bit = 0; bit < 31; bit++)
+			code |= (long)((col >>> bit) & 1) << 2*bit | (long)((row >>> bit) & 1) << 2*bit + 1;
+		return code;
+	}
+
+	/** @return	The number of levels in the pyramid, from a single pixel up to the full image */
+	public int getLevels()
+	{
+		return maxLevel + 1;
+	}
+
+	/** @return	The number of tiles written so far, over every level */
+	public synchronized int getTilesWritten()
+	{
+		return written;
+	}
+
+	/** Writes a tile of the finest level, and every parent tile that it completes */
+	@Override
+	public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+	{
+		int col = tile.getX()/TILE, row = tile.getY()/TILE;
+		int w = tile.getWidth(), h = tile.getHeight();
+
+		for(int level = maxLevel; ; level--)
+		{
+			try {
+				write(level, col, row, argb, w, h);
+			}catch(IOException e)
+			{
+				synchronized(this)
+				{
+					if(failure == null)
+						failure = e;
+				}
+				return;
+			}
+			if(level == 0)
+				return;
+
+			Parent parent = parentOf(level, col, row);
+			shrink(argb, w, h, parent, (col % 2)*TILE/2, (row % 2)*TILE/2);
+			synchronized(this)
+			{
+				if(++parent.arrived < parent.children)
+					return;
+				pending.remove((level - 1) + "/" + col/2 + "_" + row/2);
+			}
+
+			argb = parent.argb;
+			w = parent.width;
+			h = parent.height;
+			col /= 2;
+			row /= 2;
+		}
+	}
+
+	/**
+	 * Checks that every tile of the pyramid was written
+	 *
+	 * @throws IOException If a tile could not be written, or the render did not complete every tile
+	 */
+	public synchronized void finish() throws IOException
+	{
+		if(failure != null)
+			throw new IOException("Exception Writing Tile:\t" + failure.getMessage(), failure);
+		if(!pending.isEmpty())
+			throw new IOException(pending.size() + " tiles of the pyramid were never completed");
+	}
+
+	private void write(int level, int col, int row, int[] argb, int w, int h) throws IOException
+	{
+		BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		img.setRGB(0, 0, w, h, argb, 0, w);
+		png.write(img, new File(files, level + File.separator + col + "_" + row + ".png"));
+		synchronized(this)
+		{
+			written++;
+		}
+	}
+
+	/** Gives the parent of a tile, creating it when its first child arrives */
+	private synchronized Parent parentOf(int level, int col, int row)
+	{
+		String key = (level - 1) + "/" + col/2 + "_" + row/2;
+		Parent parent = pending.get(key);
+		if(parent == null)
+		{
+			int cols = tiles(levelSize(width, level)), rows = tiles(levelSize(height, level));
+			int pc = col/2, pr = row/2;
+			int children = (Math.min(2*pc + 2, cols) - 2*pc)*(Math.min(2*pr + 2, rows) - 2*pr);
+			parent = new Parent(Math.min(TILE, levelSize(width, level - 1) - pc*TILE),
+					Math.min(TILE, levelSize(height, level - 1) - pr*TILE), children);
+			pending.put(key, parent);
+		}
+		return parent;
+	}
+
+	/** Gives the size of the image along one axis at a level, rounding up at each halving */
+	private int levelSize(int size, int level)
+	{
+		int shift = maxLevel - level;
+		return (int)(((long)size + (1L << shift) - 1) >> shift);
+	}
+
+	private static int tiles(int size)
+	{
+		return (size + TILE - 1)/TILE;
+	}
+
+	/**
+	 * Averages each 2&times;2 block of a tile into one pixel of a quarter of its
+	 * parent, with blocks cut off by the edge of the image averaging the pixels they have
+	 */
+	private static void shrink(int[] argb, int w, int h, Parent parent, int x0, int y0)
+	{
+		int qw = (w + 1)/2, qh = (h + 1)/2;
+		for(int y = 0; y < qh; y++)
+		{
+			int y1 = 2*y, y2 = Math.min(2*y + 1, h - 1);
+			for(int x = 0; x < qw; x++)
+			{
+				int x1 = 2*x, x2 = Math.min(2*x + 1, w - 1);
+				int a = argb[y1*w + x1], b = argb[y1*w + x2], c = argb[y2*w + x1], d = argb[y2*w + x2];
+				parent.argb[(y0 + y)*parent.width + x0 + x] = 0xFF000000
+						| average(a, b, c, d, 16) << 16 | average(a, b, c, d, 8) << 8 | average(a, b, c, d, 0);
+			}
+		}
+	}
+
+	/** Gives the rounded mean of one channel of four pixels */
+	private static int average(int a, int b, int c, int d, int shift)
+	{
+		return (((a >> shift) & 0xFF) + ((b >> shift) & 0xFF) + ((c >> shift) & 0xFF) + ((d >> shift) & 0xFF) + 2) >> 2;
+	}
+}
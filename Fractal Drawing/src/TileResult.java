@@ -0,0 +1,43 @@
+/**
+ * A completed tile of a render, with its own copies of the values and colors
+ * of its pixels, so that it can be kept after the worker that rendered it
+ * has moved on
+ *
+ * @see TilePublisher
+ */
+public final class TileResult
+{
+	private final Tile tile;
+	private final float[] smooth;
+	private final int[] argb;
+
+	/**
+	 * @param tile		The tile, in pixel coordinates of the view
+	 * @param smooth	The row-major smooth iteration values of the tile
+	 * @param argb		The row-major colors of the tile, or {@code null} if the render has no palette
+	 */
+	public TileResult(Tile tile, float[] smooth, int[] argb)
+	{
+		this.tile = tile;
+		this.smooth = smooth;
+		this.argb = argb;
+	}
+
+	/** @return	The tile, in pixel coordinates of the view */
+	public Tile getTile()
+	{
+		return tile;
+	}
+
+	/** @return	The row-major smooth iteration values of the tile */
+	public float[] getSmooth()
+	{
+		return smooth;
+	}
+
+	/** @return	The row-major colors of the tile, or {@code null} if the render has no palette */
+	public int[] getArgb()
+	{
+		return argb;
+	}
+}
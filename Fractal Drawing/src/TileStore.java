@@ -0,0 +1,267 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * Holds a render in memory as compressed tiles, so that images far larger
+ * than would fit in the heap as a {@code BufferedImage} can still be kept for
+ * display, saving and recoloring
+ * <p>
+ * Each tile is compressed on the worker that completes it. The bytes of its
+ * colors are split into one plane per channel and deflated at the fastest
+ * level, which shrinks the long runs of equal colors in a fractal to a small
+ * fraction of their size. The smooth iteration values can be kept as well, so
+ * that the image can be recolored without rendering it again, though they
+ * compress far less well than the colors.
+ * <p>
+ * Rows are read by decompressing the tiles that they cross. The tiles read
+ * most recently are kept decompressed in a small cache, so reading the rows of
+ * a tile in turn decompresses it only once
+ */
+public final class TileStore implements TileListener, RowSource
+{
+	/** Number of rows in each band of the index of tiles by row */
+	private static final int BAND = 64;
+
+	private final int width, height;
+	private final boolean keepSmooth;
+	private final long cachePixels;
+	private final Map<Tile,Block> blocks = new ConcurrentHashMap<Tile,Block>();
+	/** The tiles that cross each band of rows. Guarded by this */
+	private final List<List<Tile>> bands;
+	/** The decompressed colors of the tiles read most recently, in the order they were read */
+	private final LinkedHashMap<Tile,int[]> cache = new LinkedHashMap<Tile,int[]>(64, 0.75f, true);
+	/** Guarded by {@link #cache} */
+	private long cached;
+	/** Guarded by this */
+	private long compressedBytes;
+
+	/** The compressed colors, and perhaps smooth iteration values, of a tile */
+	private static final class Block
+	{
+		volatile byte[] argb;
+		final byte[] smooth;
+
+		Block(byte[] argb, byte[] smooth)
+		{
+			this.argb = argb;
+			this.smooth = smooth;
+		}
+
+		long size()
+		{
+			return argb.length + (smooth == null ? 0 : smooth.length);
+		}
+	}
+
+	/**
+	 * Creates a store with a cache large enough for every thread of the common
+	 * pool to read a different band of default sized tiles at once
+	 *
+	 * @see #TileStore(int, int, boolean, long)
+	 */
+	public TileStore(int width, int height, boolean keepSmooth)
+	{
+		this(width, height, keepSmooth,
+				(long)width*RenderRequest.DEFAULT_TILE_SIZE*(ForkJoinPool.getCommonPoolParallelism() + 2));
+	}
+
+	/**
+	 * @param width			The width of the image
+	 * @param height		The height of the image
+	 * @param keepSmooth	Whether to keep the smooth iteration values, so that the image can be recolored
+	 * @param cachePixels	The number of pixels of decompressed tiles to cache, which should cover
+	 * 						a band of tiles across the image for every thread that reads rows at once
+	 * @throws IllegalArgumentException If the size or cache size is not positive
+	 */
+	public TileStore(int width, int height, boolean keepSmooth, long cachePixels)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid Size: " + width + "x" + height);
+		if(cachePixels <= 0)
+			throw new IllegalArgumentException("Invalid Cache Size: " + cachePixels);
+		this.width = width;
+		this.height = height;
+		this.keepSmooth = keepSmooth;
+		this.cachePixels = cachePixels;
+		bands = new ArrayList<List<Tile>>((height + BAND - 1)/BAND);
+		for(int b = 0; b < (height + BAND - 1)/BAND; b++)
+			bands.add(new ArrayList<Tile>());
+	}
+
+	/**
+	 * Compresses and stores a completed tile, replacing it if it was stored before
+	 *
+	 * @throws IllegalArgumentException If the request has no palette, or the tile does not lie inside the image
+	 */
+	@Override
+	public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+	{
+		if(argb == null)
+			throw new IllegalArgumentException("A tile store needs the colors of its tiles");
+		if(tile.getX() + tile.getWidth() > width || tile.getY() + tile.getHeight() > height)
+			throw new IllegalArgumentException("Tile outside of image: " + tile);
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		Block block;
+		try {
+			block = new Block(IterationArchive.encode(argb, tile.getArea(), deflater),
+					keepSmooth ? IterationArchive.encode(smooth, tile.getArea(), deflater) : null);
+		}finally
+		{
+			deflater.end();
+		}
+
+		Block old = blocks.put(tile, block);
+		synchronized(this)
+		{
+			compressedBytes += block.size() - (old == null ? 0 : old.size());
+			if(old == null)
+				for(int b = tile.getY()/BAND; b <= (tile.getY() + tile.getHeight() - 1)/BAND; b++)
+					bands.get(b).add(tile);
+		}
+		if(old != null)
+			synchronized(cache)
+			{
+				if(cache.remove(tile) != null)
+					cached -= tile.getArea();
+			}
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/** @return	{@code false}, the colors of a render are always opaque */
+	@Override
+	public boolean hasAlpha()
+	{
+		return false;
+	}
+
+	/**
+	 * Reads one row of the image, with the pixels of tiles that were never
+	 * stored left black
+	 */
+	@Override
+	public void readRow(int y, int[] argb)
+	{
+		Tile[] crossing;
+		synchronized(this)
+		{
+			crossing = bands.get(y/BAND).toArray(new Tile[0]);
+		}
+
+		Arrays.fill(argb, 0, width, 0xFF000000);
+		for(Tile t : crossing)
+			if(y >= t.getY() && y < t.getY() + t.getHeight())
+				System.arraycopy(colors(t), (y - t.getY())*t.getWidth(), argb, t.getX(), t.getWidth());
+	}
+
+	/**
+	 * Recolors every tile of the store from its smooth iteration values. Rows
+	 * must not be read, nor tiles stored, while the store is recolored
+	 *
+	 * @param palette	The palette to color the image with
+	 * @throws IllegalStateException If the store does not keep smooth iteration values
+	 */
+	public void recolor(final Palette palette)
+	{
+		if(!keepSmooth)
+			throw new IllegalStateException("Cannot recolor a store without smooth iteration values");
+
+		blocks.entrySet().parallelStream().forEach(e -> {
+			Tile t = e.getKey();
+			Block block = e.getValue();
+			float[] smooth = new float[t.getArea()];
+			try {
+				IterationArchive.decode(ByteBuffer.wrap(block.smooth), smooth);
+			}catch(DataFormatException ex)
+			{
+				throw new IllegalStateException("Corrupt tile in store: " + t, ex);
+			}
+			int[] argb = new int[t.getArea()];
+			palette.color(smooth, argb, argb.length);
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				byte[] colors = IterationArchive.encode(argb, argb.length, deflater);
+				synchronized(this)
+				{
+					compressedBytes += colors.length - block.argb.length;
+				}
+				block.argb = colors;
+			}finally
+			{
+				deflater.end();
+			}
+		});
+
+		synchronized(cache)
+		{
+			cache.clear();
+			cached = 0;
+		}
+	}
+
+	/** @return	The number of tiles in the store */
+	public int getTileCount()
+	{
+		return blocks.size();
+	}
+
+	/** @return	The number of bytes the compressed tiles take up, not counting the cache */
+	public synchronized long getCompressedBytes()
+	{
+		return compressedBytes;
+	}
+
+	/** Gives the colors of a tile, from the cache if they were read recently */
+	private int[] colors(Tile t)
+	{
+		int[] argb;
+		synchronized(cache)
+		{
+			argb = cache.get(t);
+		}
+		if(argb != null)
+			return argb;
+
+		argb = new int[t.getArea()];
+		try {
+			IterationArchive.decode(ByteBuffer.wrap(blocks.get(t).argb), argb);
+		}catch(DataFormatException e)
+		{
+			throw new IllegalStateException("Corrupt tile in store: " + t, e);
+		}
+
+		synchronized(cache)
+		{
+			if(cache.put(t, argb) == null)
+				cached += argb.length;
+			Iterator<Map.Entry<Tile,int[]>> eldest = cache.entrySet().iterator();
+			while(cached > cachePixels && cache.size() > 1)
+			{
+				cached -= eldest.next().getValue().length;
+				eldest.remove();
+			}
+		}
+		return argb;
+	}
+}
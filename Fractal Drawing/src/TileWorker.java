@@ -0,0 +1,276 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Deflater;
+
+/**
+ * Renders tiles for a {@link TileCoordinator} in another process, on a local
+ * {@link RenderEngine}
+ * <p>
+ * Each tile that arrives is streamed on the engine as its own job, so the
+ * worker never holds an image of the view, and its smooth iteration values
+ * are deflated and sent back as soon as it completes. A tile that fails is
+ * dropped, so that the coordinator hands it out again. A heartbeat is sent
+ * while the worker is connected so that the coordinator can tell a busy
+ * worker from a dead one
+ */
+public final class TileWorker
+{
+	private final RenderEngine engine;
+
+	/**
+	 * @param engine	The engine to render tiles on
+	 */
+	public TileWorker(RenderEngine engine)
+	{
+		this.engine = engine;
+	}
+
+	/**
+	 * Connects to a coordinator and renders the tiles it hands out, until it
+	 * ends the render
+	 *
+	 * @param host	The host of the coordinator
+	 * @param port	The port of the coordinator
+	 * @return		The number of tiles this worker sent back
+	 * @throws IOException If the connection fails, or the coordinator sends something invalid
+	 */
+	public int run(String host, int port) throws IOException
+	{
+		final Socket socket = new Socket(host, port);
+		final Map<Tile,RenderJob> jobs = new HashMap<Tile,RenderJob>();
+		final int[] sent = new int[1];
+		Thread heartbeat = null;
+
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			out.writeInt(TileCoordinator.MAGIC);
+			out.writeInt(TileCoordinator.VERSION);
+			out.writeInt(engine.getThreadCount());
+			out.flush();
+
+			Formula formula;
+			Precision precision;
+			try {
+				formula = Formula.forName(in.readUTF());
+				precision = Precision.valueOf(in.readUTF());
+			}catch(IllegalArgumentException e)
+			{
+				throw new IOException("Unsupported job: " + e.getMessage(), e);
+			}
+			DDComplex center = new DDComplex(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+			double zoom = in.readDouble();
+			int width = in.readInt(), height = in.readInt();
+			double aspect = in.readDouble();
+			int frameWidth = in.readInt(), frameHeight = in.readInt(), cropX = in.readInt(), cropY = in.readInt();
+			double exponent = in.readDouble(), bailout = in.readDouble();
+			int maxIteration = in.readInt();
+			if(width <= 0 || height <= 0 || maxIteration < 0)
+				throw new IOException("Invalid job: " + width + "x" + height + ", " + maxIteration + " iterations");
+			View view;
+			try {
+				view = new View(center, zoom, aspect, frameWidth, frameHeight, exponent, bailout, maxIteration)
+						.crop(cropX, cropY, width, height);
+			}catch(IllegalArgumentException e)
+			{
+				throw new IOException("Invalid job: " + e.getMessage(), e);
+			}
+
+			System.out.println("Rendering " + formula.getName() + " " + width + "x" + height
+					+ " in " + precision + " Precision for " + socket.getRemoteSocketAddress());
+
+			heartbeat = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						for(;;)
+						{
+							Thread.sleep(TileCoordinator.HEARTBEAT_INTERVAL);
+							synchronized(out)
+							{
+								out.writeByte(TileCoordinator.HEARTBEAT);
+								out.flush();
+							}
+						}
+					}catch(InterruptedException e)
+					{
+					}catch(IOException e)
+					{
+						// The read loop finds out whether the coordinator is gone
+					}
+				}
+			}, "Tile Worker Heartbeat");
+			heartbeat.setDaemon(true);
+			heartbeat.start();
+
+			TileListener listener = new TileListener() {
+				@Override
+				public void tileCompleted(RenderJob job, Tile tile, float[] smooth, int[] argb)
+				{
+					synchronized(jobs)
+					{
+						if(jobs.remove(tile) == null)
+							return;
+					}
+
+					Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+					byte[] block;
+					try {
+						block = IterationArchive.encode(smooth, tile.getArea(), deflater);
+					}finally
+					{
+						deflater.end();
+					}
+
+					try {
+						synchronized(out)
+						{
+							out.writeByte(TileCoordinator.RESULT);
+							TileCoordinator.writeTile(out, tile);
+							out.writeInt(block.length);
+							out.write(block);
+							out.flush();
+							sent[0]++;
+						}
+					}catch(IOException e)
+					{
+						// The read loop finds out whether the coordinator is gone
+					}
+				}
+			};
+
+			for(;;)
+			{
+				byte op;
+				try {
+					op = in.readByte();
+				}catch(EOFException e)
+				{
+					throw new IOException("Coordinator closed the connection before the render ended", e);
+				}
+				switch(op)
+				{
+				case TileCoordinator.TILE:
+					final Tile tile = TileCoordinator.readTile(in, view);
+					final RenderJob started;
+					synchronized(jobs)
+					{
+						if(jobs.containsKey(tile))
+							throw new IOException("Tile given twice: " + tile);
+						started = engine.stream(new RenderRequest(formula, view, null, precision,
+								Collections.singletonList(tile), 0, Long.MAX_VALUE), listener);
+						jobs.put(tile, started);
+					}
+					started.whenDone(new Runnable() {
+						@Override
+						public void run()
+						{
+							failed(started, tile, jobs, out);
+						}
+					});
+					break;
+				case TileCoordinator.CANCEL:
+					Tile cancelled = TileCoordinator.readTile(in, view);
+					RenderJob job;
+					synchronized(jobs)
+					{
+						job = jobs.remove(cancelled);
+					}
+					if(job == null)
+						break;
+					job.cancel(false);
+					try {
+						synchronized(out)
+						{
+							out.writeByte(TileCoordinator.DROPPED);
+							TileCoordinator.writeTile(out, cancelled);
+							out.flush();
+						}
+					}catch(IOException e)
+					{
+						// The coordinator may have ended the render already, which is read next
+					}
+					break;
+				case TileCoordinator.END:
+					synchronized(out)
+					{
+						return sent[0];
+					}
+				default:
+					throw new IOException("Unknown message from coordinator: " + op);
+				}
+			}
+		}finally
+		{
+			if(heartbeat != null)
+				heartbeat.interrupt();
+			synchronized(jobs)
+			{
+				for(RenderJob j : jobs.values())
+					j.cancel(false);
+				jobs.clear();
+			}
+			close(socket);
+		}
+	}
+
+	/**
+	 * Drops the tile of a job that failed rather than being cancelled, so
+	 * that the coordinator can hand it out again
+	 */
+	private static void failed(RenderJob job, Tile tile, Map<Tile,RenderJob> jobs, DataOutputStream out)
+	{
+		if(job.isCancelled())
+			return;
+		Throwable cause;
+		try {
+			job.get();
+			return;
+		}catch(ExecutionException e)
+		{
+			cause = e.getCause();
+		}catch(InterruptedException e)
+		{
+			return;
+		}
+
+		synchronized(jobs)
+		{
+			if(jobs.get(tile) == job)
+				jobs.remove(tile);
+		}
+		System.out.println("Tile Failed: " + tile + " - " + cause);
+		try {
+			synchronized(out)
+			{
+				out.writeByte(TileCoordinator.DROPPED);
+				TileCoordinator.writeTile(out, tile);
+				out.flush();
+			}
+		}catch(IOException e)
+		{
+			// The read loop finds out whether the coordinator is gone
+		}
+	}
+
+	private static void close(Socket socket)
+	{
+		try {
+			socket.close();
+		}catch(IOException e)
+		{
+		}
+	}
+}
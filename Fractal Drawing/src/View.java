@@ -0,0 +1,338 @@
+
+/**
+ * The region of the complex plane that an image covers, along with the
+ * parameters of the generation equation that every formula shares
+ * <p>
+ * Pixel ({@code x},&nbsp;{@code y}) of the image lies at
+ * {@link #re(int) re(x)}&nbsp;+&nbsp;<i>i</i>{@link #im(int) im(y)},
+ * with the origin of the image at the top left
+ * <p>
+ * A view can be {@linkplain #crop(int, int, int, int) cropped} to a rectangle
+ * of a larger frame. Its pixels are then numbered from the corner of the
+ * rectangle, but lie exactly where the same pixels of the whole frame do, and
+ * are iterated at the same precision, so a crop renders exactly the pixels
+ * that the whole frame would have there
+ */
+public final class View
+{
+	private final DDComplex center;
+	private final double zoom, aspect;
+	private final int width, height;
+	/** The whole view this one is cropped from, or this view if it is not cropped */
+	private final View frame;
+	private final int cropX, cropY;
+	/** The corner and scale of the frame, which the coordinates of every pixel are formed from */
+	private final double xMin, yMin, xScale, yScale;
+	private final double exp, bail;
+	private final int maxIteration;
+
+	/**
+	 * Creates a view of a 16:9 span of the plane, two units tall at a zoom of 1,
+	 * centered on {@code center} and sampled at {@code width}&times;{@code height} pixels
+	 *
+	 * @param center		The point at the middle of the image
+	 * @param zoom			The zoom factor, the actual zoom rather than its magnitude
+	 * @param width			The width of the image in pixels
+	 * @param height		The height of the image in pixels
+	 * @param exponent		The exponent of the generation equation
+	 * @param bailout		The bailout limit of the generation equation
+	 * @param maxIteration	The maximum number of iterations per pixel
+	 */
+	public View(DDComplex center, double zoom, int width, int height,
+			double exponent, double bailout, int maxIteration)
+	{
+		this(center, zoom, 16d/9d, width, height, exponent, bailout, maxIteration);
+	}
+
+	/**
+	 * Creates a view of a span of the plane two units tall at a zoom of 1 and
+	 * {@code aspect} times as wide, centered on {@code center} and sampled at
+	 * {@code width}&times;{@code height} pixels. The pixels are square when the
+	 * aspect ratio is that of the image
+	 *
+	 * @param center		The point at the middle of the image
+	 * @param zoom			The zoom factor, the actual zoom rather than its magnitude
+	 * @param aspect		The width of the span over its height
+	 * @param width			The width of the image in pixels
+	 * @param height		The height of the image in pixels
+	 * @param exponent		The exponent of the generation equation
+	 * @param bailout		The bailout limit of the generation equation
+	 * @param maxIteration	The maximum number of iterations per pixel
+	 * @throws IllegalArgumentException If the size or aspect ratio is not positive
+	 */
+	public View(DDComplex center, double zoom, double aspect, int width, int height,
+			double exponent, double bailout, int maxIteration)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid Size: " + width + "x" + height);
+		if(!(aspect > 0) || Double.isInfinite(aspect))
+			throw new IllegalArgumentException("Invalid Aspect Ratio: " + aspect);
+		this.center = center;
+		this.zoom = zoom;
+		this.aspect = aspect;
+		this.width = width;
+		this.height = height;
+		this.exp = exponent;
+		this.bail = bailout;
+		this.maxIteration = maxIteration;
+		frame = this;
+		cropX = cropY = 0;
+
+		xMin = center.Re() - aspect / zoom;
+		yMin = center.Im() + 1d / zoom;
+
+		// The scales are formed from the span itself rather than by subtracting
+		// the edges, which are too close together to tell apart at deep zooms
+		xScale = 2*aspect / (zoom*width);
+		yScale = -2d / (zoom*height);
+	}
+
+	/** Creates a cropped view of a frame */
+	private View(View frame, int cropX, int cropY, int width, int height)
+	{
+		this.center = frame.center;
+		this.zoom = frame.zoom;
+		this.aspect = frame.aspect;
+		this.width = width;
+		this.height = height;
+		this.exp = frame.exp;
+		this.bail = frame.bail;
+		this.maxIteration = frame.maxIteration;
+		this.frame = frame;
+		this.cropX = cropX;
+		this.cropY = cropY;
+		xMin = frame.xMin;
+		yMin = frame.yMin;
+		xScale = frame.xScale;
+		yScale = frame.yScale;
+	}
+
+	/**
+	 * Gives the rectangle of this view with its top left pixel at
+	 * ({@code x},&nbsp;{@code y}), as a view of its own. The pixels of the
+	 * rectangle are exactly those of this view, and it is cropped from the
+	 * same frame
+	 *
+	 * @param x			The leftmost column of the rectangle
+	 * @param y			The topmost row of the rectangle
+	 * @param width		The width of the rectangle
+	 * @param height	The height of the rectangle
+	 * @return			The cropped view
+	 * @throws IllegalArgumentException If the rectangle does not lie inside this view
+	 */
+	public View crop(int x, int y, int width, int height)
+	{
+		if(x < 0 || y < 0 || width <= 0 || height <= 0
+				|| (long)x + width > this.width || (long)y + height > this.height)
+			throw new IllegalArgumentException("Crop " + width + "x" + height + " at (" + x + ", " + y
+					+ ") outside of view: " + this.width + "x" + this.height);
+		if(x == 0 && y == 0 && width == this.width && height == this.height)
+			return this;
+		return new View(frame, cropX + x, cropY + y, width, height);
+	}
+
+	/**
+	 * Gives this view with another iteration limit, keeping its span and crop
+	 *
+	 * @param maxIteration	The maximum number of iterations per pixel
+	 * @return				The view
+	 */
+	public View withMaxIteration(int maxIteration)
+	{
+		View full = new View(center, zoom, aspect, frame.width, frame.height, exp, bail, maxIteration);
+		return isCropped() ? full.crop(cropX, cropY, width, height) : full;
+	}
+
+	/**
+	 * Gives the view of the same region at {@code factor} times the resolution
+	 * along each axis, so that each pixel of this view covers a
+	 * {@code factor}&times;{@code factor} block of pixels of the finer one
+	 *
+	 * @param factor	The number of pixels of the finer view along each axis of a pixel of this one
+	 * @return			The finer view, cropped to this view's rectangle of its frame
+	 * @throws IllegalArgumentException If the factor is not positive, or the finer frame is too large
+	 */
+	public View scale(int factor)
+	{
+		if(factor <= 0)
+			throw new IllegalArgumentException("Invalid Scale Factor: " + factor);
+		if(factor == 1)
+			return this;
+		if((long)frame.width*factor > Integer.MAX_VALUE || (long)frame.height*factor > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("View too large to scale by " + factor);
+		View fine = new View(center, zoom, aspect, frame.width*factor, frame.height*factor, exp, bail, maxIteration);
+		return fine.crop(cropX*factor, cropY*factor, width*factor, height*factor);
+	}
+
+	/**
+	 * Gives a view of about the same region with one pixel for each
+	 * {@code block}&times;{@code block} block of pixels of this one, for
+	 * estimates and previews. Pixel ({@code x},&nbsp;{@code y}) of the coarse
+	 * view lies in the block of the frame that holds pixel
+	 * ({@code x*block},&nbsp;{@code y*block}) of this view, so the blocks
+	 * only line up exactly when the crop starts on a whole block
+	 *
+	 * @param block	The edge length of the block of pixels of this view that each coarse pixel stands for
+	 * @return		The coarse view, {@code ceil(width/block)}&times;{@code ceil(height/block)} pixels
+	 * @throws IllegalArgumentException If the block size is not positive
+	 */
+	public View coarsen(int block)
+	{
+		if(block <= 0)
+			throw new IllegalArgumentException("Invalid Block Size: " + block);
+		View coarse = new View(center, zoom, aspect, (frame.width + block - 1)/block, (frame.height + block - 1)/block,
+				exp, bail, maxIteration);
+		return coarse.crop(cropX/block, cropY/block, (width + block - 1)/block, (height + block - 1)/block);
+	}
+
+	/** @return	The real coordinate of column {@code x} of the image */
+	public double re(int x)
+	{
+		return (cropX + x)*xScale + xMin;
+	}
+
+	/** @return	The imaginary coordinate of row {@code y} of the image */
+	public double im(int y)
+	{
+		return (cropY + y)*yScale + yMin;
+	}
+
+	/**
+	 * Gives the distance between adjacent pixels, the smaller of the
+	 * distances along each axis
+	 *
+	 * @return	The pixel spacing of this view
+	 */
+	public double getPixelSpacing()
+	{
+		return Math.min(Math.abs(xScale), Math.abs(yScale));
+	}
+
+	/**
+	 * Gives the largest absolute coordinate that the iteration will meet in
+	 * the frame of this view, which is at least 2 since orbits reach that far
+	 * before escaping. The whole frame is measured, so that a crop is
+	 * iterated at the same precision as the frame
+	 *
+	 * @return	The coordinate magnitude that precision has to be kept at
+	 */
+	public double getMagnitude()
+	{
+		double magnitude = Math.max(Math.max(Math.abs(xMin), Math.abs(frame.width*xScale + xMin)),
+				Math.max(Math.abs(yMin), Math.abs(frame.height*yScale + yMin)));
+		return Math.max(magnitude, 2.0);
+	}
+
+	/**
+	 * Picks the cheapest precision tier that resolves adjacent pixels of this view
+	 * through every iteration up to its limit, never picking {@link Precision#FLOAT}
+	 *
+	 * @return	The precision tier to render this view in
+	 */
+	public Precision selectPrecision()
+	{
+		return selectPrecision(false);
+	}
+
+	/**
+	 * Picks the cheapest precision tier that resolves adjacent pixels of this view
+	 * through every iteration up to its limit
+	 *
+	 * @param allowFloat	Whether {@link Precision#FLOAT} may be picked, for renders
+	 * 						that can trade pixels near the boundary for speed
+	 * @return				The precision tier to render this view in
+	 */
+	public Precision selectPrecision(boolean allowFloat)
+	{
+		return Precision.select(getPixelSpacing(), getMagnitude(), maxIteration, allowFloat);
+	}
+
+	public DDComplex getCenter()
+	{
+		return center;
+	}
+
+	public double getZoom()
+	{
+		return zoom;
+	}
+
+	/** @return	The width of the span of the frame over its height */
+	public double getAspect()
+	{
+		return aspect;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/** @return	The whole view that this one is cropped from, or this view if it is not cropped */
+	public View getFrame()
+	{
+		return frame;
+	}
+
+	/** @return	Whether this view is a rectangle of a larger frame */
+	public boolean isCropped()
+	{
+		return frame != this;
+	}
+
+	/** @return	The column of the frame that column 0 of this view is */
+	public int getCropX()
+	{
+		return cropX;
+	}
+
+	/** @return	The row of the frame that row 0 of this view is */
+	public int getCropY()
+	{
+		return cropY;
+	}
+
+	/** @return	The real coordinate of the left edge of the frame */
+	public double getXMin()
+	{
+		return xMin;
+	}
+
+	/** @return	The imaginary coordinate of the top edge of the frame */
+	public double getYMin()
+	{
+		return yMin;
+	}
+
+	/** @return	The distance between adjacent columns, on the real axis */
+	public double getXScale()
+	{
+		return xScale;
+	}
+
+	/** @return	The distance between adjacent rows, on the imaginary axis, which is negative since rows go down */
+	public double getYScale()
+	{
+		return yScale;
+	}
+
+	public double getExponent()
+	{
+		return exp;
+	}
+
+	public double getBailout()
+	{
+		return bail;
+	}
+
+	public int getMaxIteration()
+	{
+		return maxIteration;
+	}
+}